@@ -0,0 +1,14 @@
+package com.nennig.life.wheel;
+
+import android.app.Application;
+
+/**
+ * Application class for LifeWheel. It exists to mark the start of the process as early as
+ * possible for {@link StartupTrace}.
+ */
+public class LifeWheelApplication extends Application {
+
+    public LifeWheelApplication() {
+        StartupTrace.mark(StartupTrace.PROCESS_START);
+    }
+}
@@ -15,42 +15,128 @@
 
 package com.nennig.life.wheel;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 import android.app.Activity;
 import android.content.res.Resources;
 import android.os.Bundle;
+import android.util.DisplayMetrics;
 import android.util.Log;
 import android.view.View;
 import android.view.WindowManager;
 import android.widget.AdapterView;
 import android.widget.Button;
 import android.widget.AdapterView.OnItemSelectedListener;
+import android.widget.AutoCompleteTextView;
+import android.widget.GridView;
 import android.widget.Spinner;
+import android.widget.TextView;
 import android.widget.Toast;
 
 import com.nennig.life.wheel.R;
+import com.nennig.life.wheel.charting.CacheManager;
+import com.nennig.life.wheel.charting.CategoryAdapter;
+import com.nennig.life.wheel.charting.MiniWheelRenderer;
 import com.nennig.life.wheel.charting.PieChart;
+import com.nennig.life.wheel.charting.PieConstants;
+import com.nennig.life.wheel.charting.WheelHistoryAdapter;
+import com.nennig.life.wheel.data.CategoryCatalog;
+import com.nennig.life.wheel.data.CategorySketches;
+import com.nennig.life.wheel.data.WheelHistory;
+import com.nennig.life.wheel.data.WheelSnapshot;
+import com.nennig.life.wheel.data.WheelVersion;
+import com.nennig.life.wheel.data.WindowedStats;
 
 public class MainActivity extends Activity {
     
-    private int itemCount = 0;
     private static final String TAG = "lifewheel.MainActivity";
     
     private String lifeType = "Sleeping";
+    private int lifeTypeId = 1;
     private float scaleValue = 0;
+
+    //Built-in and user categories; user categories are saved in the app's files
+    private static final String CATEGORY_FILE = "categories.txt";
+    private static boolean categoriesLoaded = false;
+    private CategoryCatalog catalog;
+    private AutoCompleteTextView nameSearch;
+
+    //Moving statistics of every category's scores, by category id
+    //The windows count Add presses, not calendar days
+    private static final int SHORT_WINDOW = 7;
+    private static final int LONG_WINDOW = 30;
+    private WindowedStats weekStats;
+    private WindowedStats monthStats;
+    private final WindowedStats.Summary weekSummary = new WindowedStats.Summary();
+    private final WindowedStats.Summary monthSummary = new WindowedStats.Summary();
+    private TextView trendText;
+
+    //The long term distribution of every category's scores
+    private CategorySketches sketches;
+
+    //Every score checked in this session, with the history position it was made at. The
+    //statistics above cover only those at or before the current position, so undoing a
+    //check-in takes it out of the trend as well
+    private ArrayList<CheckIn> checkIns;
+
+    //Every version of the wheel this session, for undo and redo
+    private WheelHistory history;
+    private PieChart pie;
+    private Button undoButton;
+    private Button redoButton;
+
+    //Thumbnails of every version in the history; tapping one goes back to it
+    private static final int HISTORY_WHEEL_DP = 48;
+    private static final int HISTORY_POOL = 16;
+    private GridView historyGrid;
+    private MiniWheelRenderer historyRenderer;
+    //One snapshot per version, kept in step with the history as versions are committed,
+    //so a tap never converts or rehashes the versions that didn't change
+    private ArrayList<WheelSnapshot> historyWheels;
+    private WheelHistoryAdapter historyAdapter;
 	
 	/**
      * Called when the activity is first created.
      */
     @Override
     public void onCreate(Bundle savedInstanceState) {
+        StartupTrace.mark(StartupTrace.ACTIVITY_CREATE);
         super.onCreate(savedInstanceState);
+        CacheManager.getInstance().setBudgetFromMemoryClass(this);
+        catalog = PieConstants.getCatalog(getResources());
+        if (!categoriesLoaded) {
+            categoriesLoaded = true;
+            try {
+                catalog.load(new File(getFilesDir(), CATEGORY_FILE));
+            } catch (IOException e) {
+                Log.w(TAG, "Can't load user categories", e);
+            }
+        }
 
-        itemList.add(new Slice(lifeType, 3f));
+        // After a configuration change the wheel comes back from the previous instance
+        // instead of being seeded again.
+        RetainedState retained = (RetainedState) getLastNonConfigurationInstance();
+        if (retained != null) {
+            history = retained.history;
+            checkIns = retained.checkIns;
+            historyWheels = retained.historyWheels;
+            weekStats = retained.weekStats;
+            monthStats = retained.monthStats;
+            sketches = retained.sketches;
+        } else {
+            history = new WheelHistory(WheelVersion.EMPTY.put(lifeType, 3f));
+            checkIns = new ArrayList<CheckIn>();
+            historyWheels = new ArrayList<WheelSnapshot>();
+            historyWheels.add(history.getCurrent().toSnapshot());
+            int categories = catalog.getIdLimit();
+            weekStats = new WindowedStats(categories, SHORT_WINDOW);
+            monthStats = new WindowedStats(categories, LONG_WINDOW);
+            sketches = new CategorySketches(categories);
+        }
 //        itemList.add(new Slice("Work", 4f/pieScale, res.getColor(R.color.yellow), res.getColor(R.color.yellow_light)));
 //        itemList.add(new Slice("Social", 5f/pieScale, res.getColor(R.color.blue), res.getColor(R.color.blue_light)));
 //        itemList.add(new Slice("Personal", 6f/pieScale, res.getColor(R.color.green), res.getColor(R.color.green_light)));
@@ -67,11 +153,30 @@ public class MainActivity extends Activity {
         
         
         setContentView(R.layout.main);
-        final PieChart pie = (PieChart) this.findViewById(R.id.Pie);
-        Slice _slice;
-        _slice =itemList.get(itemCount);
-        pie.addItem(_slice.label,_slice.cPercent);
-        itemCount++;
+        pie = (PieChart) this.findViewById(R.id.Pie);
+        trendText = (TextView) findViewById(R.id.main_trend_text);
+        pie.setOnFirstDrawListener(new PieChart.OnFirstDrawListener() {
+            public void onFirstDraw(PieChart source) {
+                StartupTrace.mark(StartupTrace.FIRST_DRAW);
+                // Anything posted now runs once the first frame has been handed off and
+                // the UI thread is free to take input again.
+                source.post(new Runnable() {
+                    public void run() {
+                        StartupTrace.mark(StartupTrace.FIRST_INTERACTIVE);
+                        StartupTrace.log();
+                    }
+                });
+            }
+        });
+        if (retained != null) {
+            pie.restoreState(retained.pieState);
+        } else {
+            showVersion(WheelVersion.EMPTY, history.getCurrent());
+
+            // Lay out the first frame while the rest of the activity is still starting.
+            DisplayMetrics metrics = getResources().getDisplayMetrics();
+            pie.warmUp(metrics.widthPixels, metrics.heightPixels);
+        }
 //        _slice =itemList.get(itemCount);
 //        pie.addItem(_slice.label,_slice.cPercent,_slice.sliceColor,_slice.itemColor);
 //        itemCount++;
@@ -79,36 +184,24 @@ public class MainActivity extends Activity {
         //Add Button
         ((Button) findViewById(R.id.main_add_button)).setOnClickListener(new View.OnClickListener() {
             public void onClick(View view) {
-            	Log.d(TAG, "BEFORE>>List: " + itemList.toString());
-            	Slice s = new Slice(lifeType, scaleValue);
-            	if(itemList.contains(s)){
-            		Log.d(TAG, "UPDATING!");
-            		pie.updateItem(s.label, s.cPercent);
-            	}
-            	else
-            	{
-	            	itemList.add(s);
-	            	if(itemCount < itemList.size())
-	            	{
-		            	Slice _slice;
-		            	_slice =itemList.get(itemCount);
-		                pie.addItem(_slice.label,_slice.cPercent);
-		                itemCount++;
-	            	}
-            	}
-            	Log.d(TAG, "AFTER>>List: " + itemList.toString());
+            	if (!selectTypedCategory(true)) return;
+            	Log.d(TAG, "BEFORE>>Wheel: " + history.getCurrent().toSnapshot());
+            	commit(history.getCurrent().put(lifeType, scaleValue));
+            	checkIn(lifeTypeId, scaleValue);
+            	Log.d(TAG, "AFTER>>Wheel: " + history.getCurrent().toSnapshot());
             }
         });
         
         //Delete Button
         ((Button) findViewById(R.id.main_delete_button)).setOnClickListener(new View.OnClickListener() {
             public void onClick(View view) {
-            	Slice s = new Slice(lifeType, scaleValue);
-            	if(itemList.contains(s)){
-            		if(itemList.size() == 1)
+            	if (!selectTypedCategory(false)) return;
+            	WheelVersion current = history.getCurrent();
+            	if(current.contains(lifeType)){
+            		if(current.size() == 1)
             			Toast.makeText(MainActivity.this, "Cannot delete last slice of the wheel", Toast.LENGTH_SHORT).show();
             		else
-            			pie.removeItem(s.label);	
+            			commit(current.remove(lifeType));
             	}
             	else
             	{
@@ -128,16 +221,56 @@ public class MainActivity extends Activity {
             }
         });
         
-        ((Spinner) findViewById(R.id.main_name_spinner)).setOnItemSelectedListener(new OnItemSelectedListener() 
-        {    
-	         @Override
-	         public void onItemSelected(AdapterView adapter, View v, int i, long lng) {
-	        	 lifeType = adapter.getItemAtPosition(i).toString();
-	        	 Log.d(TAG,"lifeType Changed to: "	+lifeType);	 
-	         }	 
-	          @Override     
-	          public void onNothingSelected(AdapterView<?> parentView) {} 
-          });
+        //Undo and Redo Buttons
+        undoButton = (Button) findViewById(R.id.main_undo_button);
+        undoButton.setOnClickListener(new View.OnClickListener() {
+            public void onClick(View view) {
+                if (history.canUndo()) {
+                    WheelVersion previous = history.getCurrent();
+                    history.undo();
+                    showHistoryVersion(previous);
+                }
+            }
+        });
+        redoButton = (Button) findViewById(R.id.main_redo_button);
+        redoButton.setOnClickListener(new View.OnClickListener() {
+            public void onClick(View view) {
+                if (history.canRedo()) {
+                    WheelVersion previous = history.getCurrent();
+                    history.redo();
+                    showHistoryVersion(previous);
+                }
+            }
+        });
+
+        //History grid
+        historyRenderer = new MiniWheelRenderer(getResources(),
+                (int) (HISTORY_WHEEL_DP * getResources().getDisplayMetrics().density),
+                pie.getHighlightStrength(), HISTORY_POOL);
+        historyAdapter = new WheelHistoryAdapter(this, historyWheels, historyRenderer);
+        historyGrid = (GridView) findViewById(R.id.main_history_grid);
+        historyGrid.setAdapter(historyAdapter);
+        historyGrid.setRecyclerListener(historyAdapter);
+        historyGrid.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+            public void onItemClick(AdapterView<?> adapter, View v, int i, long id) {
+                if (i != history.getCurrentIndex()) {
+                    WheelVersion previous = history.getCurrent();
+                    history.moveTo(i);
+                    showHistoryVersion(previous);
+                }
+            }
+        });
+        updateHistoryControls();
+        
+        //Category type-ahead; the text is set before the adapter so it doesn't pop up
+        nameSearch = (AutoCompleteTextView) findViewById(R.id.main_name_search);
+        nameSearch.setText(lifeType);
+        nameSearch.setAdapter(new CategoryAdapter(this, catalog));
+        nameSearch.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+            public void onItemClick(AdapterView<?> adapter, View v, int i, long id) {
+                selectCategory((int) id);
+            }
+        });
         ((Spinner) findViewById(R.id.main_scale_spinner)).setOnItemSelectedListener(new OnItemSelectedListener() 
         {    
 	         @Override
@@ -150,38 +283,185 @@ public class MainActivity extends Activity {
           });
     }
     
-    public static List<Slice> itemList = new ArrayList<Slice>();
-
-    //This is a simple slice class to manage the data that is changing by the user
-    private class Slice {
-        public String label; //Name of the slice
-//        public int itemColor; //item color that fills part of the slice
-//        public int sliceColor; //slice color that shows behind the item
-        public float cPercent; //
-        public Slice(String l, float p) {
-       	 label = l;
-       	 cPercent = p;
-       }
-        @Override
-        public boolean equals(Object obj){
-        	if (obj == null) return false;
-        	if (!(obj instanceof Slice))return false;
-        	Slice s = (Slice) obj;
-        	if(s.label.equals(label))
-        		return true;
-        	return false;
+    //Makes the category in the search box current. A new name becomes a user category if
+    //create is set; otherwise it is rejected and false returned.
+    private boolean selectTypedCategory(boolean create) {
+        String name = nameSearch.getText().toString().trim();
+        if (name.length() == 0) {
+            Toast.makeText(MainActivity.this, "Type a category first", Toast.LENGTH_SHORT).show();
+            return false;
+        }
+        int id = catalog.getId(name);
+        if (id == -1) {
+            if (!create) {
+                Toast.makeText(MainActivity.this, "Unknown category: " + name, Toast.LENGTH_SHORT).show();
+                return false;
+            }
+            id = catalog.add(name);
+            try {
+                catalog.save(new File(getFilesDir(), CATEGORY_FILE));
+            } catch (IOException e) {
+                Log.w(TAG, "Can't save user categories", e);
+            }
+        }
+        selectCategory(id);
+        return true;
+    }
+
+    private void selectCategory(int id) {
+        lifeTypeId = id;
+        lifeType = catalog.getLabel(id);
+        int categories = catalog.getIdLimit();
+        weekStats.ensureCategoryCount(categories);
+        monthStats.ensureCategoryCount(categories);
+        sketches.ensureCategoryCount(categories);
+        updateTrend();
+        Log.d(TAG,"lifeType Changed to: "	+lifeType);
+    }
+
+    //Makes a new version of the wheel current and shows it
+    private void commit(WheelVersion version) {
+        WheelVersion previous = history.getCurrent();
+        int current = history.getCurrentIndex();
+        history.commit(version);
+        if (version != previous) {
+            //The versions that could have been redone are dropped, with their check-ins and
+            //thumbnails
+            for (int i = checkIns.size() - 1; i >= 0; i--) {
+                if (checkIns.get(i).version > current) checkIns.remove(i);
+            }
+            historyWheels.subList(current + 1, historyWheels.size()).clear();
+            historyWheels.add(version.toSnapshot());
+            historyAdapter.notifyDataSetChanged();
         }
-        @Override
-        public String toString(){
-        	return label + " <" + cPercent + ">";
+        showVersion(previous, version);
+        updateHistoryControls();
+    }
+
+    //Records a score against the current version and adds it to the statistics
+    private void checkIn(int categoryId, float score) {
+        checkIns.add(new CheckIn(history.getCurrentIndex(), categoryId, score));
+        weekStats.record(categoryId, score);
+        monthStats.record(categoryId, score);
+        sketches.add(categoryId, score);
+        updateTrend();
+    }
+
+    //Shows the version undo, redo or the history grid made current, with the statistics
+    //as they were at that version
+    private void showHistoryVersion(WheelVersion previous) {
+        showVersion(previous, history.getCurrent());
+        int categories = catalog.getIdLimit();
+        weekStats = new WindowedStats(categories, SHORT_WINDOW);
+        monthStats = new WindowedStats(categories, LONG_WINDOW);
+        sketches = new CategorySketches(categories);
+        int current = history.getCurrentIndex();
+        for (CheckIn c : checkIns) {
+            if (c.version > current) continue;
+            weekStats.record(c.categoryId, c.score);
+            monthStats.record(c.categoryId, c.score);
+            sketches.add(c.categoryId, c.score);
         }
-//        public Slice(String l, float p, int sColor, int iColor) {
-//        	 label = l;
-//        	 cPercent = p;
-//        	 sliceColor = sColor;
-//        	 itemColor = iColor;
-//        }
+        updateTrend();
+        updateHistoryControls();
     }
+
+    //Applies only the differences between two versions to the chart
+    private void showVersion(WheelVersion from, WheelVersion to) {
+        from.diff(to, new WheelVersion.Changes() {
+            public void onAdded(String label, float score) {
+                pie.addItem(label, score);
+            }
+
+            public void onRemoved(String label, float score) {
+                pie.removeItem(label);
+            }
+
+            public void onChanged(String label, float oldScore, float newScore) {
+                pie.updateItem(label, newScore);
+            }
+        });
+    }
+
+    //Enables undo and redo and shows every version in the history grid
+    private void updateHistoryControls() {
+        undoButton.setEnabled(history.canUndo());
+        redoButton.setEnabled(history.canRedo());
+        historyGrid.setSelection(history.getCurrentIndex());
+    }
+
+    //Shows the moving averages of the selected category
+    private void updateTrend() {
+        weekStats.read(lifeTypeId, weekSummary);
+        monthStats.read(lifeTypeId, monthSummary);
+        if (weekSummary.count == 0) {
+            trendText.setText(getString(R.string.trend_empty, lifeType));
+        } else {
+            trendText.setText(getString(R.string.trend_format, lifeType,
+                    weekSummary.mean, weekSummary.getStandardDeviation(),
+                    monthSummary.mean, sketches.quantile(lifeTypeId, 0.25),
+                    sketches.quantile(lifeTypeId, 0.75)));
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        historyRenderer.shutdown();
+    }
+
+    @Override
+    public Object onRetainNonConfigurationInstance() {
+        // Measure the relaunch from here to the first frame of the new instance.
+        StartupTrace.reset();
+        StartupTrace.mark(StartupTrace.CONFIG_CHANGE);
+        RetainedState state = new RetainedState();
+        state.history = history;
+        state.checkIns = checkIns;
+        state.historyWheels = historyWheels;
+        state.weekStats = weekStats;
+        state.monthStats = monthStats;
+        state.sketches = sketches;
+        state.pieState = pie.retainState();
+        return state;
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        CacheManager.getInstance().onTrimMemory(level);
+    }
+
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        CacheManager.getInstance().onLowMemory();
+    }
+
+    //A score from the Add button and the position in the history it was made at
+    private static class CheckIn {
+        final int version;
+        final int categoryId;
+        final float score;
+
+        CheckIn(int version, int categoryId, float score) {
+            this.version = version;
+            this.categoryId = categoryId;
+            this.score = score;
+        }
+    }
+
+    //The wheel state carried from one instance to the next across a configuration change
+    private static class RetainedState {
+        WheelHistory history;
+        ArrayList<CheckIn> checkIns;
+        ArrayList<WheelSnapshot> historyWheels;
+        WindowedStats weekStats;
+        WindowedStats monthStats;
+        CategorySketches sketches;
+        PieChart.RetainedState pieState;
+    }
+
     
 
     
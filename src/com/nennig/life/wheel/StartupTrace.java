@@ -0,0 +1,104 @@
+package com.nennig.life.wheel;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Records the time of the milestones of a cold start, or of the relaunch after a
+ * configuration change, so either can be measured on a device or from a test. Each trace
+ * point is recorded once; later marks of the same point are ignored until {@link #reset()}
+ * is called.
+ */
+public final class StartupTrace {
+    private static final String TAG = "lifewheel.StartupTrace";
+
+    /**
+     * The process (and with it the {@link LifeWheelApplication}) was created.
+     */
+    public static final int PROCESS_START = 0;
+
+    /**
+     * {@link MainActivity#onCreate} was entered.
+     */
+    public static final int ACTIVITY_CREATE = 1;
+
+    /**
+     * The pie chart drew for the first time.
+     */
+    public static final int FIRST_DRAW = 2;
+
+    /**
+     * The UI thread was free to handle input after the first draw.
+     */
+    public static final int FIRST_INTERACTIVE = 3;
+
+    /**
+     * The activity was about to be destroyed for a configuration change. When this point is
+     * set, the other points measure the relaunch rather than the cold start.
+     */
+    public static final int CONFIG_CHANGE = 4;
+
+    private static final String[] NAMES = {
+            "processStart", "onCreate", "firstDraw", "firstInteractive", "configChange"
+    };
+
+    // Uptime in milliseconds for each trace point, or 0 if it has not been reached.
+    private static final long[] sMarks = new long[NAMES.length];
+
+    private StartupTrace() {
+    }
+
+    /**
+     * Record that a trace point was reached. Only the first mark of each point counts.
+     *
+     * @param point One of the trace point constants.
+     */
+    public static synchronized void mark(int point) {
+        if (sMarks[point] == 0) {
+            sMarks[point] = SystemClock.uptimeMillis();
+        }
+    }
+
+    /**
+     * Returns the uptime at which a trace point was reached.
+     *
+     * @param point One of the trace point constants.
+     * @return The uptime in milliseconds, or 0 if the point has not been reached.
+     */
+    public static synchronized long getMark(int point) {
+        return sMarks[point];
+    }
+
+    /**
+     * Returns the time that passed between two trace points.
+     *
+     * @return The difference in milliseconds, or -1 if either point has not been reached.
+     */
+    public static synchronized long getElapsed(int from, int to) {
+        if (sMarks[from] == 0 || sMarks[to] == 0) return -1;
+        return sMarks[to] - sMarks[from];
+    }
+
+    /**
+     * Forget all trace points except the process start.
+     */
+    public static synchronized void reset() {
+        for (int i = ACTIVITY_CREATE; i < sMarks.length; i++) {
+            sMarks[i] = 0;
+        }
+    }
+
+    /**
+     * Write every recorded trace point to the log, relative to the process start, or to
+     * the configuration change if the activity was relaunched.
+     */
+    public static synchronized void log() {
+        boolean relaunch = sMarks[CONFIG_CHANGE] != 0;
+        int origin = relaunch ? CONFIG_CHANGE : PROCESS_START;
+        StringBuilder sb = new StringBuilder(relaunch ? "Relaunch:" : "Startup:");
+        for (int i = ACTIVITY_CREATE; i <= FIRST_INTERACTIVE; i++) {
+            sb.append(' ').append(NAMES[i]).append('=').append(getElapsed(origin, i)).append("ms");
+        }
+        Log.i(TAG, sb.toString());
+    }
+}
@@ -0,0 +1,120 @@
+/* Copyright (C) 2012 The Android Open Source Project
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+
+package com.nennig.life.wheel;
+
+import android.app.Activity;
+import android.content.Intent;
+import android.os.Bundle;
+import android.util.Log;
+import android.widget.TextView;
+
+import com.nennig.life.wheel.R;
+import com.nennig.life.wheel.charting.PieChart;
+import com.nennig.life.wheel.charting.StressRunner;
+
+/**
+ * Runs a {@link StressRunner} load against a full screen pie chart and shows the report,
+ * which is also logged. It isn't exported, so other apps can't start it; the
+ * StressInstrumentation of the test project starts it with the load as extras and returns
+ * the report:
+ * <pre>
+ * adb shell am instrument -w -e slices 5000 -e mutationRate 60 -e flingRate 1 \
+ *     -e rotationSpeed 180 -e duration 20000 -e seed 7 -e pipelined true \
+ *     com.nennig.life.wheel.tests/com.nennig.life.wheel.StressInstrumentation
+ * </pre>
+ * Extras that are left out keep the {@link StressRunner.Config} defaults.
+ */
+public class StressActivity extends Activity {
+
+    private static final String TAG = "lifewheel.StressActivity";
+
+    public static final String EXTRA_SLICES = "slices";
+    public static final String EXTRA_MUTATION_RATE = "mutationRate";
+    public static final String EXTRA_FLING_RATE = "flingRate";
+    public static final String EXTRA_FLING_VELOCITY = "flingVelocity";
+    public static final String EXTRA_ROTATION_SPEED = "rotationSpeed";
+    public static final String EXTRA_DURATION = "duration";
+    public static final String EXTRA_SEED = "seed";
+    public static final String EXTRA_PIPELINED = "pipelined";
+
+    private PieChart pie;
+    private TextView reportText;
+    private StressRunner runner;
+    private volatile StressRunner.Report report;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.stress);
+        pie = (PieChart) findViewById(R.id.stress_pie);
+        reportText = (TextView) findViewById(R.id.stress_report);
+
+        Intent intent = getIntent();
+        StressRunner.Config config = new StressRunner.Config();
+        config.slices = intent.getIntExtra(EXTRA_SLICES, config.slices);
+        config.mutationRate = intent.getFloatExtra(EXTRA_MUTATION_RATE, config.mutationRate);
+        config.flingRate = intent.getFloatExtra(EXTRA_FLING_RATE, config.flingRate);
+        config.flingVelocity = intent.getIntExtra(EXTRA_FLING_VELOCITY, config.flingVelocity);
+        config.rotationSpeed = intent.getFloatExtra(EXTRA_ROTATION_SPEED, config.rotationSpeed);
+        config.durationMillis = intent.getLongExtra(EXTRA_DURATION, config.durationMillis);
+        config.seed = intent.getLongExtra(EXTRA_SEED, config.seed);
+        pie.setPipelinedLayout(intent.getBooleanExtra(EXTRA_PIPELINED, pie.isPipelinedLayout()));
+
+        reportText.setText(getString(R.string.stress_running, config));
+        Log.i(TAG, "Starting " + config);
+        runner = new StressRunner(pie, config);
+        runner.setListener(new StressRunner.Listener() {
+            @Override
+            public void onStressFinished(StressRunner r, StressRunner.Report result) {
+                Log.i(TAG, "Finished\n" + result);
+                reportText.setText(result.toString());
+                report = result;
+            }
+        });
+
+        //Start once the chart has its size, outside of its draw
+        pie.setOnFirstDrawListener(new PieChart.OnFirstDrawListener() {
+            @Override
+            public void onFirstDraw(PieChart chart) {
+                chart.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (runner != null) runner.start();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Returns the report of the run, or null until it has finished. Safe to call from any
+     * thread.
+     */
+    public StressRunner.Report getReport() {
+        return report;
+    }
+
+    @Override
+    protected void onDestroy() {
+        //A run cut short by leaving is not reported
+        if (runner != null) {
+            runner.setListener(null);
+            runner.stop();
+            runner = null;
+        }
+        super.onDestroy();
+    }
+}
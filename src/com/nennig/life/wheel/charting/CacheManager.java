@@ -0,0 +1,180 @@
+/* Copyright (C) 2012 The Android Open Source Project
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+package com.nennig.life.wheel.charting;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.util.Log;
+
+import java.util.ArrayList;
+
+/**
+ * Keeps every registered {@link ManagedCache} within one global memory budget, and sheds
+ * them in priority order when the system reports memory pressure. Forward
+ * {@code onTrimMemory} and {@code onLowMemory} from an activity or the application to
+ * {@link #onTrimMemory(int)} and {@link #onLowMemory()}.
+ */
+public final class CacheManager {
+    private static final String TAG = "lifewheel.CacheManager";
+
+    /**
+     * The share of the app's heap (its memory class) the caches may use together.
+     */
+    private static final int BUDGET_DIVISOR = 8;
+
+    private static final long DEFAULT_BUDGET = 2 * 1024 * 1024;
+
+    private static final CacheManager sInstance = new CacheManager();
+
+    // Kept sorted by ascending priority, i.e. in the order caches are shed.
+    private final ArrayList<ManagedCache> mCaches = new ArrayList<ManagedCache>();
+    private long mBudget = DEFAULT_BUDGET;
+
+    private CacheManager() {
+    }
+
+    public static CacheManager getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Size the global budget from the device's memory class.
+     */
+    public synchronized void setBudgetFromMemoryClass(Context context) {
+        ActivityManager am = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        setBudget((long) am.getMemoryClass() * 1024 * 1024 / BUDGET_DIVISOR);
+    }
+
+    /**
+     * Set the global budget for all caches together, in bytes.
+     */
+    public synchronized void setBudget(long budgetBytes) {
+        mBudget = budgetBytes;
+        enforceBudget();
+    }
+
+    public synchronized long getBudget() {
+        return mBudget;
+    }
+
+    public synchronized void register(ManagedCache cache) {
+        if (mCaches.contains(cache)) return;
+        int i = 0;
+        while (i < mCaches.size() && mCaches.get(i).getPriority() <= cache.getPriority()) i++;
+        mCaches.add(i, cache);
+    }
+
+    public synchronized void unregister(ManagedCache cache) {
+        mCaches.remove(cache);
+    }
+
+    /**
+     * Returns the memory held by all caches together, in bytes.
+     */
+    public synchronized long getTotalSizeBytes() {
+        long total = 0;
+        for (int i = 0; i < mCaches.size(); i++) {
+            total += mCaches.get(i).getSizeBytes();
+        }
+        return total;
+    }
+
+    /**
+     * Shed caches, lowest priority first, until they fit in the budget. Caches call this
+     * after they grow.
+     */
+    public synchronized void enforceBudget() {
+        shed(getTotalSizeBytes() - mBudget);
+    }
+
+    /**
+     * Respond to {@link ComponentCallbacks2#onTrimMemory(int)}.
+     */
+    public synchronized void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            // We are likely to be killed soon; give back everything.
+            trimAll(0);
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            shed(getTotalSizeBytes());
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            // Nothing is on screen, so nothing needs to be cached for the next frame.
+            shedBelow(ManagedCache.PRIORITY_HIGH);
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            shed(getTotalSizeBytes() - mBudget / 4);
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE) {
+            shed(getTotalSizeBytes() - mBudget / 2);
+        }
+        Log.d(TAG, "onTrimMemory(" + level + ") " + getStats());
+    }
+
+    /**
+     * Respond to {@link ComponentCallbacks2#onLowMemory()}.
+     */
+    public synchronized void onLowMemory() {
+        trimAll(0);
+    }
+
+    /**
+     * Returns a one-line summary of each cache: size, hit rate and evictions.
+     */
+    public synchronized String getStats() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("budget=").append(mBudget).append(" total=").append(getTotalSizeBytes());
+        for (int i = 0; i < mCaches.size(); i++) {
+            ManagedCache c = mCaches.get(i);
+            sb.append(" | ").append(c.getName())
+                    .append(" size=").append(c.getSizeBytes())
+                    .append(" hitRate=").append(getHitRate(c))
+                    .append(" evictions=").append(c.getEvictionCount());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns the fraction of lookups in a cache that were hits, or 0 if there were none.
+     */
+    public static float getHitRate(ManagedCache cache) {
+        long hits = cache.getHitCount();
+        long lookups = hits + cache.getMissCount();
+        return lookups == 0 ? 0.0f : (float) hits / lookups;
+    }
+
+    /**
+     * Free at least the given number of bytes, shedding low priority caches first.
+     */
+    private void shed(long excess) {
+        for (int i = 0; i < mCaches.size() && excess > 0; i++) {
+            ManagedCache c = mCaches.get(i);
+            long before = c.getSizeBytes();
+            c.trimToSize(Math.max(before - excess, 0));
+            excess -= before - c.getSizeBytes();
+        }
+    }
+
+    private void shedBelow(int priority) {
+        for (int i = 0; i < mCaches.size(); i++) {
+            if (mCaches.get(i).getPriority() < priority) {
+                mCaches.get(i).trimToSize(0);
+            }
+        }
+    }
+
+    private void trimAll(long maxBytes) {
+        for (int i = 0; i < mCaches.size(); i++) {
+            mCaches.get(i).trimToSize(maxBytes);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/* Copyright (C) 2012 The Android Open Source Project
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+package com.nennig.life.wheel.charting;
+
+import android.content.Context;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.AutoCompleteTextView;
+import android.widget.BaseAdapter;
+import android.widget.Filter;
+import android.widget.Filterable;
+import android.widget.TextView;
+
+import com.nennig.life.wheel.data.CategoryCatalog;
+
+/**
+ * Type-ahead suggestions for an {@link AutoCompleteTextView}: the categories of a
+ * {@link CategoryCatalog} whose labels start with what has been typed. Each keystroke is
+ * an incremental {@link CategoryCatalog.Query prefix query}, so suggestions keep up with
+ * typing however many categories the user has. Item ids are category ids.
+ */
+public class CategoryAdapter extends BaseAdapter implements Filterable {
+    // More suggestions than this don't fit the dropdown anyway.
+    private static final int MAX_SUGGESTIONS = 50;
+
+    private final CategoryCatalog mCatalog;
+    private final LayoutInflater mInflater;
+    private final CategoryFilter mFilter = new CategoryFilter();
+
+    // The ids shown, only touched on the UI thread.
+    private int[] mIds = new int[0];
+
+    public CategoryAdapter(Context context, CategoryCatalog catalog) {
+        mCatalog = catalog;
+        mInflater = LayoutInflater.from(context);
+    }
+
+    public int getCount() {
+        return mIds.length;
+    }
+
+    public String getItem(int position) {
+        return mCatalog.getLabel(mIds[position]);
+    }
+
+    public long getItemId(int position) {
+        return mIds[position];
+    }
+
+    @Override
+    public boolean hasStableIds() {
+        return true;
+    }
+
+    public View getView(int position, View convertView, ViewGroup parent) {
+        TextView view = (TextView) convertView;
+        if (view == null) {
+            view = (TextView) mInflater.inflate(
+                    android.R.layout.simple_dropdown_item_1line, parent, false);
+        }
+        view.setText(getItem(position));
+        return view;
+    }
+
+    public Filter getFilter() {
+        return mFilter;
+    }
+
+    private class CategoryFilter extends Filter {
+        // Filtering runs on one worker thread, so the query and its buffer are only
+        // touched there.
+        private final CategoryCatalog.Query mQuery = new CategoryCatalog.Query(mCatalog);
+        private final int[] mBuffer = new int[MAX_SUGGESTIONS];
+
+        @Override
+        protected FilterResults performFiltering(CharSequence prefix) {
+            int count = mQuery.search(prefix == null ? "" : prefix, mBuffer);
+            int[] ids = new int[count];
+            System.arraycopy(mBuffer, 0, ids, 0, count);
+            FilterResults results = new FilterResults();
+            results.values = ids;
+            results.count = count;
+            return results;
+        }
+
+        @Override
+        protected void publishResults(CharSequence prefix, FilterResults results) {
+            mIds = (int[]) results.values;
+            if (results.count > 0) {
+                notifyDataSetChanged();
+            } else {
+                notifyDataSetInvalidated();
+            }
+        }
+
+        @Override
+        public CharSequence convertResultToString(Object result) {
+            return (String) result;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/* Copyright (C) 2012 The Android Open Source Project
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+package com.nennig.life.wheel.charting;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.support.v4.util.LruCache;
+
+/**
+ * Cache of rendered label text. Each entry holds the measured width of a label and the
+ * label rasterized into an alpha-only bitmap, so drawing it again is a single bitmap blit
+ * tinted by the paint's color. Entries are keyed by the label and the paint settings that
+ * affect its shape, and the cache is bounded by an LRU on the bitmaps' byte size so that
+ * any number of distinct labels can pass through it.
+ */
+final class LabelCache implements ManagedCache {
+    /**
+     * Default budget for all cached label bitmaps, in bytes.
+     */
+    static final int DEFAULT_MAX_BYTES = 256 * 1024;
+
+    private static final LabelCache sShared = new LabelCache(DEFAULT_MAX_BYTES);
+
+    static {
+        CacheManager.getInstance().register(sShared);
+    }
+
+    private final LruCache<Key, Entry> mCache;
+
+    // Labels dropped by trimToSize(). LruCache only counts the evictions it makes itself,
+    // not removals, so these are added to its count.
+    private long mTrimmed = 0;
+
+    /**
+     * A pre-measured, pre-rendered label.
+     */
+    static final class Entry {
+        final float width;
+        final float ascent;
+        final Bitmap bitmap;
+
+        Entry(float width, float ascent, Bitmap bitmap) {
+            this.width = width;
+            this.ascent = ascent;
+            this.bitmap = bitmap;
+        }
+
+        /**
+         * Draw the label the way {@link Canvas#drawText(String, float, float, Paint)} would,
+         * honoring the paint's alignment and color.
+         */
+        void draw(Canvas canvas, float x, float y, Paint paint) {
+            if (bitmap == null) return;
+            if (paint.getTextAlign() == Paint.Align.RIGHT) {
+                x -= width;
+            } else if (paint.getTextAlign() == Paint.Align.CENTER) {
+                x -= width / 2;
+            }
+            canvas.drawBitmap(bitmap, x, y + ascent, paint);
+        }
+    }
+
+    private static final class Key {
+        final String label;
+        final float textSize;
+        final Typeface typeface;
+
+        Key(String label, float textSize, Typeface typeface) {
+            this.label = label;
+            this.textSize = textSize;
+            this.typeface = typeface;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) return false;
+            Key k = (Key) obj;
+            return k.textSize == textSize && k.typeface == typeface && k.label.equals(label);
+        }
+
+        @Override
+        public int hashCode() {
+            int h = label.hashCode();
+            h = 31 * h + Float.floatToIntBits(textSize);
+            h = 31 * h + (typeface == null ? 0 : typeface.hashCode());
+            return h;
+        }
+    }
+
+    LabelCache(int maxBytes) {
+        mCache = new LruCache<Key, Entry>(maxBytes) {
+            @Override
+            protected int sizeOf(Key key, Entry entry) {
+                // Count empty labels as one byte so they still age out.
+                if (entry.bitmap == null) return 1;
+                return entry.bitmap.getRowBytes() * entry.bitmap.getHeight();
+            }
+        };
+    }
+
+    /**
+     * Returns the cache shared by every chart in the process.
+     */
+    static LabelCache getShared() {
+        return sShared;
+    }
+
+    /**
+     * Returns the rendered label for the given text and paint, rendering it on a miss.
+     */
+    Entry get(String label, Paint paint) {
+        Key key = new Key(label, paint.getTextSize(), paint.getTypeface());
+        Entry entry = mCache.get(key);
+        if (entry == null) {
+            entry = render(label, paint);
+            mCache.put(key, entry);
+            CacheManager.getInstance().enforceBudget();
+        }
+        return entry;
+    }
+
+    /**
+     * Drop every cached label.
+     */
+    void clear() {
+        mCache.evictAll();
+    }
+
+    public String getName() {
+        return "labels";
+    }
+
+    public int getPriority() {
+        // Cheap to rebuild, but the current label is redrawn on every frame.
+        return PRIORITY_NORMAL;
+    }
+
+    public long getSizeBytes() {
+        return mCache.size();
+    }
+
+    /**
+     * Evicts the least recently used labels first.
+     */
+    public synchronized void trimToSize(long maxBytes) {
+        if (maxBytes <= 0) {
+            mCache.evictAll();
+            return;
+        }
+        // The snapshot is ordered from least to most recently used.
+        for (Key key : mCache.snapshot().keySet()) {
+            if (mCache.size() <= maxBytes) break;
+            if (mCache.remove(key) != null) mTrimmed++;
+        }
+    }
+
+    public long getHitCount() {
+        return mCache.hitCount();
+    }
+
+    public long getMissCount() {
+        return mCache.missCount();
+    }
+
+    public synchronized long getEvictionCount() {
+        return mTrimmed + mCache.evictionCount();
+    }
+
+    private static Entry render(String label, Paint paint) {
+        float width = paint.measureText(label);
+        float ascent = paint.ascent();
+        int w = (int) Math.ceil(width);
+        int h = (int) Math.ceil(paint.descent() - ascent);
+        if (w <= 0 || h <= 0) {
+            return new Entry(width, ascent, null);
+        }
+
+        Bitmap bitmap = Bitmap.createBitmap(w, h, Bitmap.Config.ALPHA_8);
+        Paint p = new Paint(paint);
+        p.setTextAlign(Paint.Align.LEFT);
+        new Canvas(bitmap).drawText(label, 0, -ascent, p);
+        return new Entry(width, ascent, bitmap);
+    }
+}
@@ -0,0 +1,54 @@
+/* Copyright (C) 2012 The Android Open Source Project
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+package com.nennig.life.wheel.charting;
+
+/**
+ * A cache whose memory is governed by {@link CacheManager}. The cache reports what it
+ * costs and decides for itself what to drop when it is asked to shrink.
+ */
+public interface ManagedCache {
+    /**
+     * Caches with a lower priority are shed first under memory pressure.
+     */
+    int PRIORITY_LOW = 0;
+    int PRIORITY_NORMAL = 1;
+    int PRIORITY_HIGH = 2;
+
+    /**
+     * Returns a short name for logs and statistics.
+     */
+    String getName();
+
+    /**
+     * Returns one of the PRIORITY constants.
+     */
+    int getPriority();
+
+    /**
+     * Returns the memory currently held by the cache, in bytes.
+     */
+    long getSizeBytes();
+
+    /**
+     * Evict entries, by the cache's own policy, until it holds at most maxBytes.
+     */
+    void trimToSize(long maxBytes);
+
+    long getHitCount();
+
+    long getMissCount();
+
+    long getEvictionCount();
+}
@@ -0,0 +1,287 @@
+/* Copyright (C) 2012 The Android Open Source Project
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+package com.nennig.life.wheel.charting;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.util.LruCache;
+
+import com.nennig.life.wheel.data.WheelHash;
+import com.nennig.life.wheel.data.WheelSnapshot;
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Renders read-only wheels into bitmaps on background threads, for {@link MiniWheelView}.
+ * All bitmaps are the same size and come from a pool, so scrolling through any number of
+ * wheels reuses a handful of bitmaps instead of allocating one per row.
+ * <p>
+ * Wheels are drawn with their slices in canonical order, so equal wheels look the same
+ * and share one thumbnail. Recent thumbnails are cached by {@link WheelHash}; a history
+ * where most days repeat the day before renders each distinct wheel once and copies the
+ * cached pixels for the rest.
+ */
+public class MiniWheelRenderer implements ManagedCache {
+    private static final int THREADS = 2;
+    private static final int DEFAULT_THUMBNAILS = 32;
+
+    private final Resources mResources;
+    private final int mSize;
+    private final float mHighlightStrength;
+    private final int mMaxPooled;
+    private final ArrayList<Bitmap> mPool = new ArrayList<Bitmap>();
+    private long mHits = 0;
+    private long mMisses = 0;
+    private long mEvictions = 0;
+    private final LruCache<WheelHash, Bitmap> mThumbnails;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService mExecutor = Executors.newFixedThreadPool(THREADS,
+            new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "MiniWheelRenderer");
+                    t.setDaemon(true);
+                    t.setPriority(Thread.MIN_PRIORITY);
+                    return t;
+                }
+            });
+
+    /**
+     * Callback for a finished render. Always invoked on the main thread.
+     */
+    public interface Callback {
+        void onRendered(Request request, Bitmap bitmap);
+    }
+
+    /**
+     * An in-flight render. Cancelling it stops the render if it hasn't started and
+     * suppresses the callback if it has.
+     */
+    public final class Request implements Runnable {
+        private final WheelSnapshot mWheel;
+        private final Callback mCallback;
+        private volatile boolean mCanceled = false;
+        private Future<?> mFuture;
+
+        private Request(WheelSnapshot wheel, Callback callback) {
+            mWheel = wheel;
+            mCallback = callback;
+        }
+
+        public WheelSnapshot getWheel() {
+            return mWheel;
+        }
+
+        public void cancel() {
+            mCanceled = true;
+            if (mFuture != null) {
+                mFuture.cancel(false);
+            }
+        }
+
+        public boolean isCanceled() {
+            return mCanceled;
+        }
+
+        public void run() {
+            if (mCanceled) return;
+            final Bitmap bitmap = draw(mWheel);
+            mMainHandler.post(new Runnable() {
+                public void run() {
+                    if (mCanceled) {
+                        release(bitmap);
+                    } else {
+                        mCallback.onRendered(Request.this, bitmap);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * @param resources         Used to resolve the slice colors.
+     * @param size              Width and height of the rendered wheels, in pixels.
+     * @param highlightStrength The highlight strength, as in
+     *                          {@link PieChart#setHighlightStrength(float)}.
+     * @param maxPooled         The most bitmaps to keep around for reuse.
+     */
+    public MiniWheelRenderer(Resources resources, int size, float highlightStrength,
+                             int maxPooled) {
+        mResources = resources;
+        mSize = size;
+        mHighlightStrength = highlightStrength;
+        mMaxPooled = maxPooled;
+        mThumbnails = new LruCache<WheelHash, Bitmap>(
+                (int) Math.min(DEFAULT_THUMBNAILS * bytesPerBitmap(), Integer.MAX_VALUE)) {
+            @Override
+            protected int sizeOf(WheelHash key, Bitmap value) {
+                return (int) bytesPerBitmap();
+            }
+        };
+        CacheManager.getInstance().register(this);
+    }
+
+    /**
+     * Stop rendering, drop the pool and detach from the {@link CacheManager}. The renderer
+     * can't be used afterwards.
+     */
+    public void shutdown() {
+        mExecutor.shutdownNow();
+        CacheManager.getInstance().unregister(this);
+        trimPool();
+    }
+
+    /**
+     * Returns the width and height of the rendered wheels, in pixels.
+     */
+    public int getSize() {
+        return mSize;
+    }
+
+    /**
+     * Queue a wheel for rendering. Must be called on the main thread.
+     */
+    public Request render(WheelSnapshot wheel, Callback callback) {
+        Request request = new Request(wheel, callback);
+        request.mFuture = mExecutor.submit(request);
+        return request;
+    }
+
+    /**
+     * Return a bitmap from a finished render to the pool once it is no longer shown.
+     */
+    public void release(Bitmap bitmap) {
+        synchronized (mPool) {
+            if (mPool.size() < mMaxPooled) {
+                mPool.add(bitmap);
+            } else {
+                mEvictions++;
+            }
+        }
+    }
+
+    /**
+     * Empty the pool of unused bitmaps.
+     */
+    public void trimPool() {
+        trimToSize(0);
+    }
+
+    public String getName() {
+        return "miniWheelBitmaps";
+    }
+
+    public int getPriority() {
+        // Pooled bitmaps and cached thumbnails are not on screen; they only save work.
+        return PRIORITY_LOW;
+    }
+
+    public long getSizeBytes() {
+        synchronized (mPool) {
+            return (long) mPool.size() * bytesPerBitmap() + mThumbnails.size();
+        }
+    }
+
+    /**
+     * Drops pooled bitmaps first, then the least recently used thumbnails. Bitmaps on
+     * screen are not part of either and are kept.
+     */
+    public void trimToSize(long maxBytes) {
+        synchronized (mPool) {
+            while (!mPool.isEmpty()
+                    && (long) mPool.size() * bytesPerBitmap() + mThumbnails.size() > maxBytes) {
+                mPool.remove(mPool.size() - 1);
+                mEvictions++;
+            }
+            if (mThumbnails.size() > maxBytes) {
+                // The snapshot is ordered from least to most recently used.
+                for (WheelHash hash : mThumbnails.snapshot().keySet()) {
+                    if (mThumbnails.size() <= maxBytes) break;
+                    // LruCache doesn't count removals as evictions.
+                    if (mThumbnails.remove(hash) != null) mEvictions++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of renders served by a pooled bitmap or a cached thumbnail.
+     */
+    public long getHitCount() {
+        synchronized (mPool) {
+            return mHits + mThumbnails.hitCount();
+        }
+    }
+
+    public long getMissCount() {
+        synchronized (mPool) {
+            return mMisses + mThumbnails.missCount();
+        }
+    }
+
+    public long getEvictionCount() {
+        synchronized (mPool) {
+            return mEvictions + mThumbnails.evictionCount();
+        }
+    }
+
+    private long bytesPerBitmap() {
+        // ARGB_8888
+        return (long) mSize * mSize * 4;
+    }
+
+    private Bitmap obtain() {
+        synchronized (mPool) {
+            int last = mPool.size() - 1;
+            if (last >= 0) {
+                mHits++;
+                return mPool.remove(last);
+            }
+            mMisses++;
+        }
+        return Bitmap.createBitmap(mSize, mSize, Bitmap.Config.ARGB_8888);
+    }
+
+    private Bitmap draw(WheelSnapshot wheel) {
+        WheelHash hash = wheel.getHash();
+        Bitmap cached = mThumbnails.get(hash);
+        Bitmap bitmap = obtain();
+        bitmap.eraseColor(0);
+        if (cached != null) {
+            // The cached thumbnail is never handed out itself, so pooling stays safe.
+            new Canvas(bitmap).drawBitmap(cached, 0, 0, null);
+            return bitmap;
+        }
+
+        PieFrame frame = PieFrame.compute(PieFrame.Spec.of(wheel.canonical(), mResources,
+                mHighlightStrength, mSize, mSize));
+
+        Paint itemPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        itemPaint.setStyle(Paint.Style.FILL);
+        Paint slicePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        slicePaint.setStyle(Paint.Style.FILL);
+        frame.draw(new Canvas(bitmap), itemPaint, slicePaint, null);
+        mThumbnails.put(hash, bitmap.copy(Bitmap.Config.ARGB_8888, false));
+        CacheManager.getInstance().enforceBudget();
+        return bitmap;
+    }
+}
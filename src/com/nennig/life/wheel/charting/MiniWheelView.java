@@ -0,0 +1,131 @@
+/* Copyright (C) 2012 The Android Open Source Project
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+package com.nennig.life.wheel.charting;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.util.AttributeSet;
+import android.view.View;
+
+import com.nennig.life.wheel.data.WheelSnapshot;
+
+/**
+ * A small, read-only wheel. Unlike {@link PieChart} it has no gestures, animators, label or
+ * pointer: it shows a placeholder disc until {@link MiniWheelRenderer} has drawn its wheel
+ * in the background, then blits the finished bitmap.
+ */
+public class MiniWheelView extends View implements MiniWheelRenderer.Callback {
+    private static final int PLACEHOLDER_COLOR = 0xffe0e0e0;
+
+    private MiniWheelRenderer mRenderer;
+    private MiniWheelRenderer.Request mRequest;
+    private WheelSnapshot mWheel;
+    private Bitmap mBitmap;
+
+    private final Paint mBitmapPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Paint mPlaceholderPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final RectF mBounds = new RectF();
+
+    public MiniWheelView(Context context) {
+        super(context);
+        mPlaceholderPaint.setColor(PLACEHOLDER_COLOR);
+    }
+
+    public MiniWheelView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        mPlaceholderPaint.setColor(PLACEHOLDER_COLOR);
+    }
+
+    /**
+     * Show a wheel. Any render still in flight for the previous wheel is cancelled and its
+     * bitmap goes back to the pool, so rebinding a recycled view while scrolling never
+     * waits on, or draws, a stale wheel.
+     */
+    public void setWheel(WheelSnapshot wheel, MiniWheelRenderer renderer) {
+        if (wheel.equals(mWheel) && renderer == mRenderer && (mBitmap != null || mRequest != null)) {
+            return;
+        }
+        recycle();
+        mWheel = wheel;
+        mRenderer = renderer;
+        mRequest = renderer.render(wheel, this);
+        invalidate();
+    }
+
+    /**
+     * Cancel any pending render and give the bitmap back to the renderer's pool. The view
+     * shows the placeholder until it is given a wheel again.
+     */
+    public void recycle() {
+        releaseRender();
+        mWheel = null;
+    }
+
+    private void releaseRender() {
+        if (mRequest != null) {
+            mRequest.cancel();
+            mRequest = null;
+        }
+        if (mBitmap != null) {
+            mRenderer.release(mBitmap);
+            mBitmap = null;
+        }
+    }
+
+    public void onRendered(MiniWheelRenderer.Request request, Bitmap bitmap) {
+        if (request != mRequest) {
+            mRenderer.release(bitmap);
+            return;
+        }
+        mRequest = null;
+        mBitmap = bitmap;
+        invalidate();
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        // Lists detach and reattach their cells routinely; the wheel is kept for this.
+        if (mWheel != null && mBitmap == null && mRequest == null) {
+            mRequest = mRenderer.render(mWheel, this);
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        // Only the bitmap is given up, so the wheel can be rendered again if the view is
+        // attached again.
+        releaseRender();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        float size = Math.min(getWidth() - getPaddingLeft() - getPaddingRight(),
+                getHeight() - getPaddingTop() - getPaddingBottom());
+        float left = getPaddingLeft() + (getWidth() - getPaddingLeft() - getPaddingRight() - size) / 2;
+        float top = getPaddingTop() + (getHeight() - getPaddingTop() - getPaddingBottom() - size) / 2;
+        mBounds.set(left, top, left + size, top + size);
+
+        if (mBitmap == null) {
+            canvas.drawOval(mBounds, mPlaceholderPaint);
+        } else {
+            canvas.drawBitmap(mBitmap, null, mBounds, mBitmapPaint);
+        }
+    }
+}
@@ -0,0 +1,362 @@
+/* Copyright (C) 2012 The Android Open Source Project
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+package com.nennig.life.wheel.charting;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Writes wheels as a PDF document, one or more wheels per page. Pages are streamed: only
+ * the page being written is held in memory, and once it ends all that is kept of it is
+ * the byte offsets of its two objects for the cross-reference table. A report of
+ * thousands of wheels can be written straight to a file.
+ * <pre>
+ * PdfExporter pdf = new PdfExporter(out);
+ * for (VectorWheel wheel : wheels) {
+ *     pdf.beginPage(wheel.getWidth(), wheel.getHeight());
+ *     pdf.write(wheel, 0, 0);
+ * }
+ * pdf.finish();
+ * </pre>
+ * Coordinates are in pixels, which become points on the page. Arcs are drawn as cubic
+ * Bezier curves, at most a quarter circle each. Labels use the standard Helvetica font;
+ * characters it can't show are written as '?'.
+ */
+public class PdfExporter extends VectorExporter {
+    // Objects 1 to 3 are the catalog, the page tree and the font. The catalog and the page
+    // tree are written last, when the pages are known.
+    private static final int CATALOG = 1;
+    private static final int PAGES = 2;
+    private static final int FONT = 3;
+
+    private final OutputStream mOut;
+    private long mOffset = 0;
+
+    // The byte offset of every object, indexed by object number.
+    private long[] mObjectOffsets = new long[64];
+    private int mNextObject = FONT + 1;
+    private int mPageCount = 0;
+
+    // The page being written: its content, the shadings it uses, and the path being built.
+    private boolean mPageOpen = false;
+    private float mPageWidth;
+    private float mPageHeight;
+    private final StringBuilder mContent = new StringBuilder(4096);
+    private final StringBuilder mShadings = new StringBuilder(4096);
+    private int mShadingCount = 0;
+    private final StringBuilder mPath = new StringBuilder(256);
+    private boolean mSubpathOpen = false;
+
+    private boolean mFinished = false;
+
+    public PdfExporter(OutputStream out) throws IOException {
+        mOut = out;
+        // The comment of high bytes marks the file as binary for transfer programs.
+        writeAscii("%PDF-1.4\n%\u00e2\u00e3\u00cf\u00d3\n");
+        beginObject(FONT);
+        writeAscii("<< /Type /Font /Subtype /Type1 /BaseFont /Helvetica"
+                + " /Encoding /WinAnsiEncoding >>\nendobj\n");
+    }
+
+    /**
+     * Write a single wheel as a document with one page of its own size.
+     */
+    public static void export(VectorWheel wheel, OutputStream out) throws IOException {
+        PdfExporter pdf = new PdfExporter(out);
+        pdf.beginPage(wheel.getWidth(), wheel.getHeight());
+        pdf.write(wheel, 0, 0);
+        pdf.finish();
+    }
+
+    /**
+     * End the current page, if any, and start a new one.
+     */
+    public void beginPage(float width, float height) throws IOException {
+        if (mFinished) {
+            throw new IllegalStateException("document is finished");
+        }
+        endPage();
+        mPageOpen = true;
+        mPageWidth = width;
+        mPageHeight = height;
+        // Flip the page so y grows downwards, as on a canvas.
+        mContent.append("1 0 0 -1 0 ");
+        appendNumber(mContent, height);
+        mContent.append(" cm\n");
+    }
+
+    /**
+     * Write a wheel with its top left corner at a point of the current page.
+     */
+    public void write(VectorWheel wheel, float x, float y) throws IOException {
+        if (!mPageOpen) {
+            throw new IllegalStateException("no page; call beginPage() first");
+        }
+        writeWheel(wheel, x, y);
+    }
+
+    /**
+     * End the document and flush the stream. The stream is not closed.
+     */
+    public void finish() throws IOException {
+        if (mFinished) return;
+        endPage();
+        mFinished = true;
+
+        beginObject(PAGES);
+        StringBuilder sb = new StringBuilder(64);
+        sb.append("<< /Type /Pages /Count ").append(mPageCount).append(" /Kids [");
+        writeAscii(sb);
+        // Each page is a content stream followed by the page object.
+        for (int i = 0; i < mPageCount; i++) {
+            sb.setLength(0);
+            sb.append(FONT + 2 + 2 * i).append(" 0 R ");
+            writeAscii(sb);
+        }
+        writeAscii("] >>\nendobj\n");
+
+        beginObject(CATALOG);
+        writeAscii("<< /Type /Catalog /Pages " + PAGES + " 0 R >>\nendobj\n");
+
+        long xref = mOffset;
+        sb.setLength(0);
+        sb.append("xref\n0 ").append(mNextObject).append("\n0000000000 65535 f \n");
+        writeAscii(sb);
+        for (int i = 1; i < mNextObject; i++) {
+            sb.setLength(0);
+            String offset = Long.toString(mObjectOffsets[i]);
+            for (int pad = offset.length(); pad < 10; pad++) sb.append('0');
+            sb.append(offset).append(" 00000 n \n");
+            writeAscii(sb);
+        }
+        sb.setLength(0);
+        sb.append("trailer\n<< /Size ").append(mNextObject).append(" /Root ").append(CATALOG)
+                .append(" 0 R >>\nstartxref\n").append(xref).append("\n%%EOF\n");
+        writeAscii(sb);
+        mOut.flush();
+    }
+
+    private void endPage() throws IOException {
+        if (!mPageOpen) return;
+        mPageOpen = false;
+
+        int contents = mNextObject++;
+        beginObject(contents);
+        writeAscii("<< /Length " + mContent.length() + " >>\nstream\n");
+        writeAscii(mContent);
+        writeAscii("\nendstream\nendobj\n");
+
+        beginObject(mNextObject++);
+        StringBuilder sb = new StringBuilder(128);
+        sb.append("<< /Type /Page /Parent ").append(PAGES).append(" 0 R /MediaBox [0 0 ");
+        appendNumber(sb, mPageWidth);
+        sb.append(' ');
+        appendNumber(sb, mPageHeight);
+        sb.append("] /Contents ").append(contents).append(" 0 R /Resources << /Font << /F1 ")
+                .append(FONT).append(" 0 R >> /Shading << ");
+        writeAscii(sb);
+        writeAscii(mShadings);
+        writeAscii(">> >> >>\nendobj\n");
+        mPageCount++;
+
+        mContent.setLength(0);
+        mShadings.setLength(0);
+        mShadingCount = 0;
+    }
+
+    @Override
+    void beginPie(float left, float top, float width, float height, float rotation) {
+        StringBuilder sb = mContent;
+        sb.append("q 1 0 0 1 ");
+        appendNumber(sb, left);
+        sb.append(' ');
+        appendNumber(sb, top);
+        sb.append(" cm\n");
+        if (rotation != 0) {
+            // Rotate about the center of the pie.
+            double a = Math.toRadians(rotation);
+            float cos = (float) Math.cos(a);
+            float sin = (float) Math.sin(a);
+            float cx = width / 2.0f;
+            float cy = height / 2.0f;
+            // The matrix needs more precision than coordinates do.
+            appendNumber(sb, cos, 5);
+            sb.append(' ');
+            appendNumber(sb, sin, 5);
+            sb.append(' ');
+            appendNumber(sb, -sin, 5);
+            sb.append(' ');
+            appendNumber(sb, cos, 5);
+            sb.append(' ');
+            appendPoint(sb, cx - cx * cos + cy * sin, cy - cx * sin - cy * cos);
+            sb.append(" cm\n");
+        }
+    }
+
+    @Override
+    void endPie() {
+        mContent.append("Q\n");
+    }
+
+    @Override
+    void moveTo(float x, float y) {
+        appendPoint(mPath, x, y);
+        mPath.append(" m ");
+        mSubpathOpen = true;
+    }
+
+    @Override
+    void arc(float cx, float cy, float rx, float ry, float startAngle, float sweep) {
+        StringBuilder sb = mPath;
+        double a0 = Math.toRadians(startAngle);
+        appendPoint(sb, cx + rx * (float) Math.cos(a0), cy + ry * (float) Math.sin(a0));
+        sb.append(mSubpathOpen ? " l " : " m ");
+        mSubpathOpen = true;
+
+        int parts = Math.max(1, (int) Math.ceil(Math.abs(sweep) / 90.0f));
+        double step = Math.toRadians(sweep) / parts;
+        // The control points sit on the tangents at the ends of each part.
+        float k = (float) (4.0 / 3.0 * Math.tan(step / 4.0));
+        for (int i = 0; i < parts; i++) {
+            double a1 = a0 + step;
+            float cos0 = (float) Math.cos(a0);
+            float sin0 = (float) Math.sin(a0);
+            float cos1 = (float) Math.cos(a1);
+            float sin1 = (float) Math.sin(a1);
+            appendPoint(sb, cx + rx * (cos0 - k * sin0), cy + ry * (sin0 + k * cos0));
+            sb.append(' ');
+            appendPoint(sb, cx + rx * (cos1 + k * sin1), cy + ry * (sin1 - k * cos1));
+            sb.append(' ');
+            appendPoint(sb, cx + rx * cos1, cy + ry * sin1);
+            sb.append(" c ");
+            a0 = a1;
+        }
+    }
+
+    @Override
+    void closePath() {
+        mPath.append("h ");
+        mSubpathOpen = false;
+    }
+
+    @Override
+    void fill(boolean evenOdd, float x1, float y1, int color1, float x2, float y2,
+              int color2) {
+        int id = mShadingCount++;
+        StringBuilder sh = mShadings;
+        sh.append("/Sh").append(id).append(" << /ShadingType 2 /ColorSpace /DeviceRGB /Coords [");
+        appendPoint(sh, x1, y1);
+        sh.append(' ');
+        appendPoint(sh, x2, y2);
+        sh.append("] /Function << /FunctionType 2 /Domain [0 1] /C0 [");
+        appendColor(sh, color1);
+        sh.append("] /C1 [");
+        appendColor(sh, color2);
+        sh.append("] /N 1 >> /Extend [true true] >>\n");
+
+        // Clip to the path and paint the shading through it.
+        mContent.append("q ").append(mPath).append(evenOdd ? "W* n /Sh" : "W n /Sh")
+                .append(id).append(" sh Q\n");
+        mPath.setLength(0);
+        mSubpathOpen = false;
+    }
+
+    @Override
+    void drawPointer(float x1, float y1, float x2, float y2, float radius, int color) {
+        StringBuilder sb = mContent;
+        sb.append("q ");
+        appendColor(sb, color);
+        sb.append(" RG ");
+        appendColor(sb, color);
+        sb.append(" rg 1 w ");
+        appendPoint(sb, x1, y1);
+        sb.append(" m ");
+        appendPoint(sb, x2, y2);
+        sb.append(" l S\n");
+        arc(x2, y2, radius, radius, 0, 360);
+        closePath();
+        sb.append(mPath).append("f Q\n");
+        mPath.setLength(0);
+        mSubpathOpen = false;
+    }
+
+    @Override
+    void drawLabel(String label, float x, float baseline, boolean alignRight, float textSize,
+                   float textWidth, int color) {
+        StringBuilder sb = mContent;
+        sb.append("BT /F1 ");
+        appendNumber(sb, textSize);
+        sb.append(" Tf ");
+        appendColor(sb, color);
+        sb.append(" rg ");
+        // The page is flipped, so the text matrix flips the glyphs back upright.
+        sb.append("1 0 0 -1 ");
+        appendPoint(sb, alignRight ? x - textWidth : x, baseline);
+        sb.append(" Tm (");
+        for (int i = 0; i < label.length(); i++) {
+            char c = label.charAt(i);
+            if (c == '(' || c == ')' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < ' ' || c > 0xff) {
+                sb.append('?');
+            } else {
+                sb.append(c);
+            }
+        }
+        sb.append(") Tj ET\n");
+    }
+
+    private static void appendPoint(StringBuilder sb, float x, float y) {
+        appendNumber(sb, x);
+        sb.append(' ');
+        appendNumber(sb, y);
+    }
+
+    /**
+     * Append the red, green and blue of a color, each from 0 to 1.
+     */
+    private static void appendColor(StringBuilder sb, int color) {
+        for (int shift = 16; shift >= 0; shift -= 8) {
+            appendNumber(sb, ((color >> shift) & 0xff) / 255.0, 3);
+            if (shift > 0) sb.append(' ');
+        }
+    }
+
+    private void beginObject(int number) throws IOException {
+        if (number >= mObjectOffsets.length) {
+            mObjectOffsets = Arrays.copyOf(mObjectOffsets, number * 2);
+        }
+        mObjectOffsets[number] = mOffset;
+        writeAscii(number + " 0 obj\n");
+    }
+
+    /**
+     * Write characters as single bytes. Everything written is ASCII apart from label
+     * characters, which are Latin-1 and match the font's encoding.
+     */
+    private void writeAscii(CharSequence s) throws IOException {
+        int length = s.length();
+        byte[] bytes = new byte[Math.min(length, 8192)];
+        for (int start = 0; start < length; start += bytes.length) {
+            int n = Math.min(bytes.length, length - start);
+            for (int i = 0; i < n; i++) {
+                bytes[i] = (byte) s.charAt(start + i);
+            }
+            mOut.write(bytes, 0, n);
+            mOffset += n;
+        }
+    }
+}
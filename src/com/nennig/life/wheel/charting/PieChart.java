@@ -33,7 +33,12 @@ import java.lang.Math;
 import java.lang.Override;
 import java.lang.String;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Custom view that shows a pie chart and, optionally, a label.
@@ -41,14 +46,66 @@ import java.util.List;
 public class PieChart extends ViewGroup {
     private List<Item> mData = new ArrayList<Item>();
 
+    // Scores of rings 1 and up by label. Ring 0 is mData itself.
+    private List<HashMap<String, Float>> mRings = new ArrayList<HashMap<String, Float>>();
+
+    // The frame that is currently on screen. It is replaced as a whole whenever a layout
+    // completes, so drawing never sees a half computed model.
+    private PieFrame mFrame = PieFrame.EMPTY;
+    private boolean mPipelinedLayout = false;
+    private volatile int mLayoutGeneration = 0;
+
+    // Written by the layout worker during warm-up, read on the UI thread in onSizeChanged.
+    private volatile PieFrame mWarmFrame = null;
+    private volatile long mWarmUpNanos = -1;
+
+    // A frame carried over from the view this one replaced after a configuration change.
+    private PieFrame mRetainedFrame = null;
+    private int mRetainedGeneration = 0;
+    private boolean mFirstFrameWarm = false;
+
+    private int mLastDrawCallCount = 0;
+
+    // Every layout computed since the chart was created, on whichever thread ran it.
+    private final AtomicLong mLayoutCount = new AtomicLong();
+    private final AtomicLong mLayoutNanos = new AtomicLong();
+
+    // Value transitions. One animator interpolates the score of every slice at once,
+    // between two primitive arrays indexed like the frame on screen.
+    private ValueAnimator mValueAnimator;
+    private boolean mValueAnimating = false;
+    private boolean mValueAnimCanceled = false;
+    private float[] mAnimFrom = new float[0];
+    private float[] mAnimTo = new float[0];
+    private float[] mAnimPercents = new float[0];
+
+    // The rendered label currently on screen, from LabelCache.
+    private LabelCache.Entry mLabelEntry = null;
+    private String mLabelEntryText = null;
+    private float mLabelEntryTextSize = 0.0f;
+
+    // Area, in pixels, invalidated since the last draw and during the last drawn frame.
+    private final Rect mDirtyRect = new Rect();
+    private long mPendingInvalidatedArea = 0;
+    private long mLastInvalidatedArea = 0;
+
     private RectF mPieBounds = new RectF();
 
+    // Derived state that is stale, as DIRTY_ flags. See markDirty() and resolveDirty().
+    private int mDirty = 0;
+
     private Paint mPiePaint;
     private Paint mTextPaint;
     private Paint mShadowPaint;
 
     private boolean mShowText = false;
 
+    // Labels for every slice around the rim, laid out once per frame or size change.
+    private boolean mShowRimLabels = false;
+    private float mRimLabelWidth = 0.0f;
+    private RadialLabelLayout mRimLabels = null;
+    private Paint mRimLinePaint;
+
     private float mTextX = 0.0f;
     private float mTextY = 0.0f;
     private float mTextWidth = 0.0f;
@@ -64,8 +121,12 @@ public class PieChart extends ViewGroup {
     private int mPieRotation;
 
     private OnCurrentItemChangedListener mCurrentItemChangedListener = null;
+    private OnFirstDrawListener mFirstDrawListener = null;
+    private OnSliceTappedListener mSliceTappedListener = null;
+    private final HitResult mTapHit = new HitResult();
+    private boolean mFirstDrawDone = false;
 
-    private int mTextColor;
+    private int mTextColor = 0xff000000;
     private PieView mPieView;
     private Scroller mScroller;
     private ValueAnimator mScrollAnimator;
@@ -95,6 +156,21 @@ public class PieChart extends ViewGroup {
      */
     public static final int TEXTPOS_RIGHT = 1;
 
+    /**
+     * The point is outside the pie.
+     */
+    public static final int REGION_NONE = 0;
+
+    /**
+     * The point is inside a slice's score wedge.
+     */
+    public static final int REGION_SCORE = 1;
+
+    /**
+     * The point is inside a slice, but outside its score wedge.
+     */
+    public static final int REGION_RING = 2;
+
     /**
      * The initial fling velocity is divided by this amount.
      */
@@ -105,6 +181,49 @@ public class PieChart extends ViewGroup {
      */
     public static final int AUTOCENTER_ANIM_DURATION = 250;
 
+    /**
+     * Duration of the transition when slice values change, in milliseconds.
+     */
+    public static final int VALUE_ANIM_DURATION = 300;
+
+    /**
+     * Worker used for pipelined layouts. A single thread is enough: a newer layout always
+     * supersedes an older one, so there is never a reason to run two at once.
+     */
+    private static final ExecutorService LAYOUT_EXECUTOR = Executors.newSingleThreadExecutor(
+            new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "PieChart-layout");
+                    t.setDaemon(true);
+                    t.setPriority(Thread.MIN_PRIORITY);
+                    return t;
+                }
+            });
+
+    // Derived state, recomputed lazily by resolveDirty().
+    // The pie bounds, its shadow and the layout of the child views.
+    private static final int DIRTY_BOUNDS = 1;
+    // The label position, the pointer and the angle it points at.
+    private static final int DIRTY_POINTER = 1 << 1;
+    // The highlight colors and the shaders built from them.
+    private static final int DIRTY_HIGHLIGHTS = 1 << 2;
+    // The slice bounds, wedges and shaders of the frame, which depend on the pie size.
+    private static final int DIRTY_GEOMETRY = 1 << 3;
+    // The layout of the rim labels.
+    private static final int DIRTY_RIM_LABELS = 1 << 4;
+    // The text size of the label and slice paints, and the label rendered at it.
+    private static final int DIRTY_TEXT = 1 << 5;
+
+    // For each DIRTY_ flag, by bit index, the flags that are derived from it directly.
+    private static final int[] DIRTY_DEPENDENTS = {
+            DIRTY_POINTER | DIRTY_GEOMETRY | DIRTY_RIM_LABELS, // DIRTY_BOUNDS
+            0,                                                  // DIRTY_POINTER
+            0,                                                  // DIRTY_HIGHLIGHTS
+            0,                                                  // DIRTY_GEOMETRY
+            0,                                                  // DIRTY_RIM_LABELS
+            DIRTY_POINTER | DIRTY_RIM_LABELS,                   // DIRTY_TEXT
+    };
+
 	private static final String TAG = "lifewheel.PieChart";
 	private static final String NO_DATA_SLICE = "LifeWheel";
     /**
@@ -115,6 +234,58 @@ public class PieChart extends ViewGroup {
         void OnCurrentItemChanged(PieChart source, int currentItem);
     }
 
+    /**
+     * Interface definition for a callback to be invoked when a slice is tapped.
+     */
+    public interface OnSliceTappedListener {
+        /**
+         * @param source The chart that was tapped.
+         * @param index  The index of the tapped slice.
+         * @param ring   The index of the tapped ring.
+         * @param region {@link #REGION_SCORE} if the tap landed in the slice's score wedge,
+         *               {@link #REGION_RING} if it landed in the part of the slice outside it.
+         */
+        void onSliceTapped(PieChart source, int index, int ring, int region);
+    }
+
+    /**
+     * The result of {@link #hitTest(float, float, HitResult)}. Instances are meant to be
+     * allocated once and reused, so hit-testing can run on every touch or hover event.
+     */
+    public static final class HitResult {
+        /**
+         * The index of the slice that was hit, or -1.
+         */
+        public int index = -1;
+
+        /**
+         * The index of the concentric ring that was hit, or -1.
+         */
+        public int ring = -1;
+
+        /**
+         * One of REGION_NONE, REGION_SCORE or REGION_RING.
+         */
+        public int region = REGION_NONE;
+
+        /**
+         * The angle of the hit in the pie's own (unrotated) degrees.
+         */
+        public float angle;
+
+        /**
+         * The distance of the hit from the center of the pie, in pixels.
+         */
+        public float radius;
+    }
+
+    /**
+     * Interface definition for a callback to be invoked the first time the chart draws.
+     */
+    public interface OnFirstDrawListener {
+        void onFirstDraw(PieChart source);
+    }
+
     /**
      * Class constructor taking only a context. Use this constructor to create
      * {@link PieChart} objects from your own code.
@@ -169,6 +340,9 @@ public class PieChart extends ViewGroup {
             mPieRotation = a.getInt(R.styleable.PieChart_pieRotation, 0);
             mPointerRadius = a.getDimension(R.styleable.PieChart_pointerRadius, 2.0f);
             mAutoCenterInSlice = a.getBoolean(R.styleable.PieChart_autoCenterPointerInSlice, false);
+            mPipelinedLayout = a.getBoolean(R.styleable.PieChart_pipelinedLayout, false);
+            mShowRimLabels = a.getBoolean(R.styleable.PieChart_showRimLabels, false);
+            mRimLabelWidth = a.getDimension(R.styleable.PieChart_rimLabelWidth, mTextWidth);
         } finally {
             // release the TypedArray so that it can be reused.
             a.recycle();
@@ -195,7 +369,50 @@ public class PieChart extends ViewGroup {
      */
     public void setShowText(boolean showText) {
         mShowText = showText;
-        invalidate();
+        // The label's room comes out of the pie.
+        markDirty(DIRTY_BOUNDS);
+    }
+
+    /**
+     * Returns true if every slice is labelled around the rim of the pie.
+     *
+     * @return True if rim labels are shown, false otherwise.
+     */
+    public boolean getShowRimLabels() {
+        return mShowRimLabels;
+    }
+
+    /**
+     * Controls whether every slice gets a label around the rim of the pie, in addition to
+     * the label of the current item. The pie shrinks to leave room for the labels on all
+     * sides. Labels that would collide are spread apart, and if there are more slices than
+     * fit around the rim, the labels of the lowest scores are left out.
+     *
+     * @param showRimLabels true to label every slice, false otherwise.
+     */
+    public void setShowRimLabels(boolean showRimLabels) {
+        mShowRimLabels = showRimLabels;
+        markDirty(DIRTY_BOUNDS);
+    }
+
+    /**
+     * Returns the widest a rim label may be before it is ellipsized, in pixels.
+     *
+     * @return The maximum rim label width, in pixels.
+     */
+    public float getRimLabelWidth() {
+        return mRimLabelWidth;
+    }
+
+    /**
+     * Set the widest a rim label may be before it is ellipsized. This is also the room
+     * reserved for the labels around the pie.
+     *
+     * @param rimLabelWidth The maximum rim label width, in pixels.
+     */
+    public void setRimLabelWidth(float rimLabelWidth) {
+        mRimLabelWidth = rimLabelWidth;
+        markDirty(mShowRimLabels ? DIRTY_BOUNDS : DIRTY_RIM_LABELS);
     }
 
     /**
@@ -213,8 +430,10 @@ public class PieChart extends ViewGroup {
      * @param textY the Y position of the label text, in pixels.
      */
     public void setTextY(float textY) {
+        // The label moves, so both where it was and where it goes need redrawing.
+        invalidateLabel();
         mTextY = textY;
-        invalidate();
+        markDirty(DIRTY_POINTER);
     }
 
     /**
@@ -234,7 +453,7 @@ public class PieChart extends ViewGroup {
      */
     public void setTextWidth(float textWidth) {
         mTextWidth = textWidth;
-        invalidate();
+        markDirty(DIRTY_BOUNDS);
     }
 
     /**
@@ -253,7 +472,8 @@ public class PieChart extends ViewGroup {
      */
     public void setTextHeight(float textHeight) {
         mTextHeight = textHeight;
-        invalidate();
+        // The rim labels are spaced by the text height and inset the pie by half of it.
+        markDirty(DIRTY_TEXT | (mShowRimLabels ? DIRTY_BOUNDS : 0));
     }
 
     /**
@@ -278,8 +498,9 @@ public class PieChart extends ViewGroup {
             throw new IllegalArgumentException(
                     "TextPos must be one of TEXTPOS_LEFT or TEXTPOS_RIGHT");
         }
+        invalidateLabel();
         mTextPos = textPos;
-        invalidate();
+        markDirty(DIRTY_BOUNDS);
     }
 
     /**
@@ -307,7 +528,7 @@ public class PieChart extends ViewGroup {
                     "highlight strength cannot be negative");
         }
         mHighlightStrength = highlightStrength;
-        invalidate();
+        markDirty(DIRTY_HIGHLIGHTS);
     }
 
     /**
@@ -328,7 +549,7 @@ public class PieChart extends ViewGroup {
      */
     public void setPointerRadius(float pointerRadius) {
         mPointerRadius = pointerRadius;
-        invalidate();
+        invalidatePointer();
     }
 
     /**
@@ -350,10 +571,37 @@ public class PieChart extends ViewGroup {
         rotation = (rotation % 360 + 360) % 360;
         mPieRotation = rotation;
         mPieView.rotateTo(rotation);
+        if (mShowRimLabels) {
+            // The rim labels stay upright, so they are redrawn rather than rotated.
+            invalidate();
+        }
 
         calcCurrentItem();
     }
 
+    /**
+     * Returns true if layouts are computed on a worker thread.
+     *
+     * @return True if pipelined layout is enabled, false otherwise.
+     */
+    public boolean isPipelinedLayout() {
+        return mPipelinedLayout;
+    }
+
+    /**
+     * Controls where the pie is laid out after its data or size changes. By default the
+     * angles, highlight colors, shaders and slice bounds are computed synchronously inside
+     * the call that changed them. With pipelined layout enabled that work runs on a worker
+     * thread instead, and the finished frame is handed to the view on the UI thread. The
+     * previous frame keeps rendering until then, which keeps large wheels from stalling
+     * input.
+     *
+     * @param pipelinedLayout true to lay out on a worker thread, false to lay out inline.
+     */
+    public void setPipelinedLayout(boolean pipelinedLayout) {
+        mPipelinedLayout = pipelinedLayout;
+    }
+
     /**
      * Returns the index of the currently selected data item.
      *
@@ -390,7 +638,8 @@ public class PieChart extends ViewGroup {
         if (scrollIntoView) {
             centerOnCurrentItem();
         }
-        invalidate();
+        // Only the label depends on the current item; the pie itself is unchanged.
+        invalidateLabel();
     }
 
 
@@ -404,6 +653,120 @@ public class PieChart extends ViewGroup {
         mCurrentItemChangedListener = listener;
     }
 
+    /**
+     * Register a callback to be invoked the first time this view draws. This is meant
+     * for startup instrumentation.
+     *
+     * @param listener Can be null.
+     *                 The first draw listener to attach to this view.
+     */
+    public void setOnFirstDrawListener(OnFirstDrawListener listener) {
+        mFirstDrawListener = listener;
+    }
+
+    /**
+     * Returns the number of concentric rings in the chart. There is always at least one.
+     *
+     * @return The ring count.
+     */
+    public int getRingCount() {
+        return mRings.size() + 1;
+    }
+
+    /**
+     * Add a ring to the chart, outside the existing ones. Each ring is a separate series of
+     * scores for the same slices, e.g. this week, last week and last month. The radius of
+     * the pie is split evenly between the rings; ring 0, the series set through
+     * {@link #addItem(String, float)} and {@link #updateItem(String, float)}, is innermost.
+     *
+     * @return The index of the new ring.
+     */
+    public int addRing() {
+        mRings.add(new HashMap<String, Float>());
+        onDataChanged();
+        return mRings.size();
+    }
+
+    /**
+     * Set the score of a slice in a ring.
+     *
+     * @param ring  The ring index. Ring 0 is the same as {@link #updateItem(String, float)}.
+     * @param label The label of the slice.
+     * @param val   The score, on the same scale as {@link #addItem(String, float)}.
+     * @return 1 on success, -1 if the ring does not exist.
+     */
+    public int setRingValue(int ring, String label, float val) {
+        if (ring == 0) return updateItem(label, val);
+        if (ring < 0 || ring > mRings.size()) return -1;
+        mRings.get(ring - 1).put(label, PieConstants.getSliceItemPercentage(val));
+        onDataChanged();
+        return 1;
+    }
+
+    /**
+     * Remove a ring. Ring 0 can't be removed.
+     *
+     * @param ring The ring index.
+     * @return The new ring count, or -1 if the ring does not exist.
+     */
+    public int removeRing(int ring) {
+        if (ring < 1 || ring > mRings.size()) return -1;
+        mRings.remove(ring - 1);
+        onDataChanged();
+        return getRingCount();
+    }
+
+    /**
+     * Register a callback to be invoked when a slice is tapped. Tapping a slice also
+     * makes it the current item.
+     *
+     * @param listener Can be null.
+     *                 The slice tapped listener to attach to this view.
+     */
+    public void setOnSliceTappedListener(OnSliceTappedListener listener) {
+        mSliceTappedListener = listener;
+    }
+
+    /**
+     * Find the slice under a point. The point is converted to polar coordinates around
+     * the center of the pie, corrected for the pie's rotation, and the slice is found by a
+     * binary search over the slice angles. Nothing is allocated, so this is cheap enough
+     * for hover and drag tracking.
+     *
+     * @param x   The x coordinate, relative to this view.
+     * @param y   The y coordinate, relative to this view.
+     * @param out Receives the result.
+     * @return True if the point is over a slice, false otherwise.
+     */
+    public boolean hitTest(float x, float y, HitResult out) {
+        PieFrame frame = mFrame;
+        float dx = x - mPieBounds.centerX();
+        float dy = y - mPieBounds.centerY();
+        float pieRadius = frame.width / 2.0f;
+
+        out.radius = (float) Math.sqrt(dx * dx + dy * dy);
+        // Screen y grows downwards, slice angles grow counterclockwise.
+        float angle = (float) Math.toDegrees(Math.atan2(-dy, dx)) + mPieRotation;
+        out.angle = ((angle % 360) + 360) % 360;
+        out.index = -1;
+        out.ring = -1;
+        out.region = REGION_NONE;
+
+        if (out.radius > pieRadius) return false;
+        int index = frame.indexOfAngle(out.angle);
+        if (index == -1) return false;
+
+        // Each ring owns an equal band of the radius.
+        float band = pieRadius / frame.ringCount;
+        int ring = Math.min((int) (out.radius / band), frame.ringCount - 1);
+        float percent = ring == 0 ? frame.percents[index] : frame.ringPercents[ring - 1][index];
+
+        out.index = index;
+        out.ring = ring;
+        out.region = out.radius <= band * (ring + percent) ? REGION_SCORE : REGION_RING;
+        return true;
+    }
+
     public int addItem(Item item){
     	return addItem(item.mLabel, item.cPercent, item.cSliceColor, item.mItemColor);
     }
@@ -416,6 +779,23 @@ public class PieChart extends ViewGroup {
     			PieConstants.getItemColor(getResources(), label));
     }
     
+    /**
+     * Add a slice for a category of the {@link PieConstants#getCatalog(Resources) catalog}.
+     * The label and colors come from the category id, so no label lookup is needed.
+     *
+     * @param categoryId The id of the category.
+     * @param val        The score.
+     * @return The index of the newly added item, or -1 if there is no category with the id.
+     */
+    public int addItem(int categoryId, float val){
+    	String label = PieConstants.getCatalog(getResources()).getLabel(categoryId);
+    	if (label == null) return -1;
+    	return addItem(label,
+    			PieConstants.getSliceItemPercentage(val),
+    			PieConstants.getSliceColor(getResources(), categoryId),
+    			PieConstants.getItemColor(getResources(), categoryId));
+    }
+
     /**
      * Add a new data item to this view. Adding an item adds a slice to the pie whose
      * size is proportional to the item's value. As new items are added, the size of each
@@ -427,6 +807,17 @@ public class PieChart extends ViewGroup {
      * @return The index of the newly added item.
      */
     public int addItem(String label, float percent, int sliceColor, int itemColor) {
+        // Adding back a slice that is still animating out just revives it.
+        for (int i = 0; i < mData.size(); i++) {
+            Item it = mData.get(i);
+            if (it.mRemoving && it.mLabel.equals(label)) {
+                it.mRemoving = false;
+                it.cPercent = percent;
+                onDataChanged();
+                return i;
+            }
+        }
+
         Item it = createItem(label, percent, sliceColor, itemColor);
         mData.add(it);
         //TODO 0 Slices
@@ -442,9 +833,9 @@ public class PieChart extends ViewGroup {
     public int updateItem(String label, float val){
     	for(Item it : mData){
     		if(it.mLabel.equals(label)){
-    			int index = mData.indexOf(it);
-    			mData.remove(it);
-    			mData.add(index, createItem(label, val));
+    			// The colors depend only on the label, so the item is updated in place.
+    			it.cPercent = PieConstants.getSliceItemPercentage(val);
+    			it.mRemoving = false;
     			onDataChanged();
     			return 1;
     		}
@@ -452,13 +843,6 @@ public class PieChart extends ViewGroup {
     	return -1;
     }
     
-    private Item createItem(String label, float val){
-    	return createItem(label, 
-    			PieConstants.getSliceItemPercentage(val),
-    			PieConstants.getSliceColor(getResources(), label), 
-    			PieConstants.getItemColor(getResources(), label));
-    }
-    
     private Item createItem(String label, float percent, int sliceColor, int itemColor){
     	Item it = new Item();
         it.mLabel = label;
@@ -466,56 +850,98 @@ public class PieChart extends ViewGroup {
         it.cSliceColor = sliceColor;
         it.cPercent = percent;
 //        Log.d(TAG, "Percent for "+it.mLabel+": "+it.cPercent);
-
-
-        // Calculate the highlight color. Saturate at 0xff to make sure that high values
-        // don't result in aliasing.
-        it.mItemHighlight = Color.argb(
-                0xff,
-                Math.min((int) (mHighlightStrength * (float) Color.red(itemColor)), 0xff),
-                Math.min((int) (mHighlightStrength * (float) Color.green(itemColor)), 0xff),
-                Math.min((int) (mHighlightStrength * (float) Color.blue(itemColor)), 0xff)
-        );
-
-        it.cSliceHighlight = Color.argb(
-                0xff,
-                Math.min((int) (mHighlightStrength * (float) Color.red(sliceColor)), 0xff),
-                Math.min((int) (mHighlightStrength * (float) Color.green(sliceColor)), 0xff),
-                Math.min((int) (mHighlightStrength * (float) Color.blue(sliceColor)), 0xff)
-        );
-       
-        float centerX = mPieBounds.width() / 2;
-        float centerY = mPieBounds.height() / 2;
-    	float itemW = (mPieBounds.width() / 2) * it.cPercent;
-    	float itemH = (mPieBounds.height() / 2) * it.cPercent;
-    	it.cSliceBounds = new RectF(centerX - itemW,centerY - itemH, centerX + itemW, centerY + itemH);
-    	
     	return it;
     }
 
+    //Finds a slice by label without building a throwaway item to compare against
+    private int indexOfLabel(String label) {
+    	for (int i = 0; i < mData.size(); i++) {
+    		if (mData.get(i).mLabel.equals(label))
+    			return i;
+    	}
+    	return -1;
+    }
+
     /**
      * This removes an item from the wheel.
      * @param label - The desired label to be removed
      * @return returns the new size of the wheel or -1 if the item was not found
      */
     public int removeItem(String label) {
-    	Item it = createItem(label, 0);
-    	if(mData.contains(it)){
-    		mData.remove(it);
-    		onDataChanged();
-    		return mData.size() - 1;
+    	int index = indexOfLabel(label);
+    	if(index == -1 || mData.get(index).mRemoving){
+    		return -1;
     	}
-    	return -1;
+
+    	if (canAnimateValues()) {
+    		// Keep the slice while its score wedge shrinks away; it is dropped for good
+    		// in commitRemovals() once the transition ends.
+    		mData.get(index).mRemoving = true;
+    	} else {
+    		mData.remove(index);
+    	}
+    	onDataChanged();
+    	return liveItemCount() - 1;
+    }
+
+    private int liveItemCount() {
+        int count = 0;
+        for (int i = 0; i < mData.size(); i++) {
+            if (!mData.get(i).mRemoving) count++;
+        }
+        return count;
+    }
+
+    /**
+     * Drop the slices that were animating out. Called when a value transition ends.
+     */
+    private void commitRemovals() {
+        boolean removed = false;
+        for (int i = mData.size() - 1; i >= 0; i--) {
+            if (mData.get(i).mRemoving) {
+                mData.remove(i);
+                removed = true;
+            }
+        }
+        if (removed) {
+            onDataChanged();
+        }
     }
     
     /**
-     * This removes all items from the wheel.
+     * This removes all items from the wheel. The child views, paints and animators are
+     * kept and reused; only the slice state is dropped, so resetting is cheap no matter
+     * how often it happens.
      * @return returns the new size of the wheel
      */
     public int removeAll() {
-        init();
+        // Halt any motion without re-centering; there is nothing left to center on.
+        if (mScroller != null) {
+            mScroller.forceFinished(true);
+        }
+        if (Build.VERSION.SDK_INT >= 11) {
+            if (mScrollAnimator != null) mScrollAnimator.cancel();
+            if (mAutoCenterAnimator != null) mAutoCenterAnimator.cancel();
+            if (mValueAnimator != null) {
+                mValueAnimCanceled = true;
+                mValueAnimator.cancel();
+            }
+        }
+        mValueAnimating = false;
+        mPieView.decelerate();
+        mData.clear();
+        mRings.clear();
+
+        // Bumping the generation makes any pipelined layout still in flight stale, so it
+        // can't resurrect the old slices after the reset.
+        ++mLayoutGeneration;
+        mFrame = PieFrame.EMPTY;
+        mCurrentItem = 0;
+
+        invalidatePie();
+        invalidateLabel();
         return 0;
-    }    
+    }
     
 
     @Override
@@ -525,7 +951,7 @@ public class PieChart extends ViewGroup {
 //    	   return false;
     	
     	// Let the GestureDetector interpret this event
-        boolean result = mDetector.onTouchEvent(event);
+        boolean result = getDetector().onTouchEvent(event);
 
         // If the GestureDetector doesn't want this event, do some custom processing.
         // This code just tries to detect when the user is done scrolling by looking
@@ -543,39 +969,68 @@ public class PieChart extends ViewGroup {
 
     @Override
     protected void onLayout(boolean changed, int l, int t, int r, int b) {
-        // Do nothing. Do not call the superclass method--that would start a layout pass
-        // on this view's children. PieChart lays out its children in onSizeChanged().
+        // Do not call the superclass method--that would start a layout pass on this
+        // view's children. PieChart lays out its children in onSizeChanged(), and again
+        // here only if a property they depend on has changed.
+        resolveDirty();
     }
 
 
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
+        resolveDirty();
+        onLayerDrawn();
 
         // Draw the shadow
-        canvas.drawOval(mShadowBounds, mShadowPaint);
-
-        //TODO 0 Slices
-        String label = "";
-//        if(mData.size() > 0)
-        	label = mData.get(mCurrentItem).mLabel;
-//        else
-//        	label = NO_DATA_SLICE;
+        canvas.drawOval(mShadowBounds, getShadowPaint());
+
+        // The label comes from the frame on screen, not mData, so that it always matches
+        // the slices being drawn even while a pipelined layout is in flight.
+        PieFrame frame = mFrame;
+        String label;
+        if (mCurrentItem < frame.count)
+        	label = frame.labels[mCurrentItem];
+        else
+        	label = NO_DATA_SLICE;
         
-        // Draw the label text
+        if (mShowRimLabels && frame.count > 0) {
+            if (mRimLabels == null) {
+                mRimLabels = RadialLabelLayout.compute(frame, mTextPaint,
+                        mPieBounds.width() / 2.0f, mTextHeight / 2.0f, mRimLabelWidth);
+            }
+            mRimLabels.draw(canvas, mPieBounds.centerX(), mPieBounds.centerY(), mPieRotation,
+                    mTextPaint, getRimLinePaint());
+        }
+
+        // Draw the label text. The label only changes when the current item does, so the
+        // measured and rendered text is looked up once per change rather than every frame.
         if (getShowText()) {
-            canvas.drawText(label, mTextX, mTextY, mTextPaint);
+            if (mLabelEntry == null || !label.equals(mLabelEntryText)
+                    || mTextPaint.getTextSize() != mLabelEntryTextSize) {
+                mLabelEntry = LabelCache.getShared().get(label, mTextPaint);
+                mLabelEntryText = label;
+                mLabelEntryTextSize = mTextPaint.getTextSize();
+            }
+            mLabelEntry.draw(canvas, mTextX, mTextY, mTextPaint);
         }
 
         // If the API level is less than 11, we can't rely on the view animation system to
         // do the scrolling animation. Need to tick it here and call postInvalidate() until the scrolling is done.
         if (Build.VERSION.SDK_INT < 11) {
             tickScrollAnimation();
-            if (!mScroller.isFinished()) {
+            if (mScroller != null && !mScroller.isFinished()) {
                 postInvalidate();
             }
         }
-        
+
+        if (!mFirstDrawDone) {
+            mFirstDrawDone = true;
+            if (mFirstDrawListener != null) {
+                mFirstDrawListener.onFirstDraw(this);
+            }
+        }
+
     }
 
 
@@ -611,163 +1066,526 @@ public class PieChart extends ViewGroup {
     @Override
     protected void onSizeChanged(int w, int h, int oldw, int oldh) {
         super.onSizeChanged(w, h, oldw, oldh);
+        layoutChart(w, h);
+    }
+
+    /**
+     * Lay out the pie, label, pointer and shadow for a view of the given size.
+     */
+    private void layoutChart(int w, int h) {
         Log.d(TAG, "Slice Count: " + mData.size());
+        mRimLabels = null;
         if(mData.size() > 0)
         {
-	        //
-	        // Set dimensions for text, pie chart, etc
-	        //
-	        // Account for padding
-	        float xpad = (float) (getPaddingLeft() + getPaddingRight());
-	        float ypad = (float) (getPaddingTop() + getPaddingBottom());
-	
-	        // Account for the label
-	        if (mShowText) xpad += mTextWidth;
-	
-	        float ww = (float) w - xpad;
-	        float hh = (float) h - ypad;
-	
-	        // Figure out how big we can make the pie.
-	        float diameter = Math.min(ww, hh);
-	        mPieBounds = new RectF(
-	                0.0f,
-	                0.0f,
-	                diameter,
-	                diameter);
-	        mPieBounds.offsetTo(getPaddingLeft(), getPaddingTop());
-//	        Log.d(TAG, "mPieBounds>> "+mPieBounds);
-	        
-	        mPointerY = mTextY - (mTextHeight / 2.0f);
-	        float pointerOffset = mPieBounds.centerY() - mPointerY;
-	
-	        // Make adjustments based on text position
-	        if (mTextPos == TEXTPOS_LEFT) {
-	            mTextPaint.setTextAlign(Paint.Align.RIGHT);
-	            if (mShowText) mPieBounds.offset(mTextWidth, 0.0f);
-	            mTextX = mPieBounds.left;
-	
-	            if (pointerOffset < 0) {
-	                pointerOffset = -pointerOffset;
-	                mCurrentItemAngle = 225;
+	        layoutBounds(w, h);
+	        layoutPointer();
+	        // Everything derived from the size is recomputed below.
+	        mDirty = 0;
+
+	        // If a warm-up frame was laid out for exactly this size and nothing changed
+	        // since, use it rather than laying out again.
+	        PieFrame warm = mWarmFrame;
+	        mWarmFrame = null;
+	        if (warm != null) {
+	            mFirstFrameWarm = warm.generation == mLayoutGeneration
+	                    && warm.width == mPieBounds.width()
+	                    && warm.height == mPieBounds.height();
+	            Log.d(TAG, "Warm-up " + (mFirstFrameWarm ? "hit" : "missed") + " after "
+	                    + mWarmUpNanos / 1000 + "us");
+	        }
+	        // Likewise for a frame retained across a configuration change, as long as no
+	        // data changed since it was restored. A new size only needs new geometry.
+	        PieFrame retained = mRetainedFrame;
+	        mRetainedFrame = null;
+	        if (retained != null && mRetainedGeneration == mLayoutGeneration) {
+	            if (retained.width != mPieBounds.width()
+	                    || retained.height != mPieBounds.height()) {
+	                retained = retained.resize(mLayoutGeneration, mPieBounds.width(),
+	                        mPieBounds.height());
+	                Log.d(TAG, "Retained frame resized");
 	            } else {
-	                mCurrentItemAngle = 135;
+	                Log.d(TAG, "Retained frame reused");
 	            }
-	            mPointerX = mPieBounds.centerX() - pointerOffset;
 	        } else {
-	            mTextPaint.setTextAlign(Paint.Align.LEFT);
-	            mTextX = mPieBounds.right;
-	
-	            if (pointerOffset < 0) {
-	                pointerOffset = -pointerOffset;
-	                mCurrentItemAngle = 315;
-	            } else {
-	                mCurrentItemAngle = 45;
-	            }
-	            mPointerX = mPieBounds.centerX() + pointerOffset;
+	            retained = null;
+	        }
+
+	        if (warm != null && mFirstFrameWarm) {
+	            applyFrame(warm);
+	        } else if (retained != null) {
+	            applyFrame(retained);
+	        } else {
+	            onDataChanged();
 	        }
-	
-	        mShadowBounds = new RectF(
-	                mPieBounds.left + 10,
-	                mPieBounds.bottom + 10,
-	                mPieBounds.right - 10,
-	                mPieBounds.bottom + 20);
-	
-	        // Lay out the child view that actually draws the pie.
-	        mPieView.layout((int) mPieBounds.left,
-	                (int) mPieBounds.top,
-	                (int) mPieBounds.right,
-	                (int) mPieBounds.bottom);
-	        mPieView.setPivot(mPieBounds.width() / 2, mPieBounds.height() / 2);
-	
-	        mPointerView.layout(0, 0, w, h);
-	        onDataChanged();
         }
     }
 
+    /**
+     * Set dimensions for the pie, its shadow and its child views.
+     */
+    private void layoutBounds(int w, int h) {
+        mPieBounds = computePieBounds(w, h);
+
+        mShadowBounds = new RectF(
+                mPieBounds.left + 10,
+                mPieBounds.bottom + 10,
+                mPieBounds.right - 10,
+                mPieBounds.bottom + 20);
+
+        // Lay out the child view that actually draws the pie.
+        mPieView.layout((int) mPieBounds.left,
+                (int) mPieBounds.top,
+                (int) mPieBounds.right,
+                (int) mPieBounds.bottom);
+        mPieView.setPivot(mPieBounds.width() / 2, mPieBounds.height() / 2);
+
+        mPointerView.layout(0, 0, w, h);
+    }
+
+    /**
+     * Place the label and the pointer that joins it to the pie.
+     */
+    private void layoutPointer() {
+        mPointerY = mTextY - (mTextHeight / 2.0f);
+        float pointerOffset = mPieBounds.centerY() - mPointerY;
+
+        // Make adjustments based on text position
+        if (mTextPos == TEXTPOS_LEFT) {
+            mTextPaint.setTextAlign(Paint.Align.RIGHT);
+            mTextX = mPieBounds.left;
+
+            if (pointerOffset < 0) {
+                pointerOffset = -pointerOffset;
+                mCurrentItemAngle = 225;
+            } else {
+                mCurrentItemAngle = 135;
+            }
+            mPointerX = mPieBounds.centerX() - pointerOffset;
+        } else {
+            mTextPaint.setTextAlign(Paint.Align.LEFT);
+            mTextX = mPieBounds.right;
+
+            if (pointerOffset < 0) {
+                pointerOffset = -pointerOffset;
+                mCurrentItemAngle = 315;
+            } else {
+                mCurrentItemAngle = 45;
+            }
+            mPointerX = mPieBounds.centerX() + pointerOffset;
+        }
+    }
+
+    /**
+     * Mark derived state as stale, along with everything that depends on it. Nothing is
+     * recomputed here; {@link #resolveDirty()} does that before the next frame is drawn,
+     * so several property changes in a row cost one recomputation.
+     *
+     * @param flags A combination of the DIRTY_ flags.
+     */
+    private void markDirty(int flags) {
+        // Close over the dependency graph. It is acyclic and tiny, so this settles in a
+        // couple of passes.
+        int closed = flags;
+        do {
+            flags = closed;
+            for (int bit = 0; bit < DIRTY_DEPENDENTS.length; bit++) {
+                if ((flags & (1 << bit)) != 0) closed |= DIRTY_DEPENDENTS[bit];
+            }
+        } while (closed != flags);
+        mDirty |= closed;
+
+        if ((closed & DIRTY_BOUNDS) != 0) {
+            requestLayout();
+            invalidate();
+            return;
+        }
+        if ((closed & DIRTY_TEXT) != 0) {
+            // A bigger label reaches past the area invalidateLabel() knows about.
+            invalidate();
+        }
+        if ((closed & DIRTY_POINTER) != 0) {
+            invalidatePointer();
+            invalidateLabel();
+        }
+        if ((closed & (DIRTY_HIGHLIGHTS | DIRTY_GEOMETRY)) != 0) invalidatePie();
+        if ((closed & DIRTY_RIM_LABELS) != 0 && mShowRimLabels) invalidate();
+    }
+
+    /**
+     * Recompute whatever derived state is marked dirty, and only that. Called at the start
+     * of layout and of every layer's draw; once resolved it costs nothing until the next
+     * change, so calling it more than once per frame is harmless.
+     */
+    private void resolveDirty() {
+        int dirty = mDirty;
+        if (dirty == 0) return;
+        mDirty = 0;
+
+        if ((dirty & DIRTY_TEXT) != 0) {
+            mTextPaint.setTextSize(mTextHeight);
+            mPiePaint.setTextSize(mTextHeight);
+            // The label rendered at the old size is looked up again at the new one.
+            mLabelEntry = null;
+        }
+        if (mData.size() > 0 && getWidth() > 0) {
+            if ((dirty & DIRTY_BOUNDS) != 0) layoutBounds(getWidth(), getHeight());
+            if ((dirty & DIRTY_POINTER) != 0) layoutPointer();
+        } else {
+            // Nothing to lay out yet; keep the layout flags until there is.
+            mDirty = dirty & (DIRTY_BOUNDS | DIRTY_POINTER);
+        }
+
+        PieFrame frame = mFrame;
+        if (frame.count > 0) {
+            if ((dirty & DIRTY_GEOMETRY) != 0 && (frame.width != mPieBounds.width()
+                    || frame.height != mPieBounds.height())) {
+                frame = frame.resize(frame.generation, mPieBounds.width(),
+                        mPieBounds.height());
+            }
+            if ((dirty & DIRTY_HIGHLIGHTS) != 0 && frame.highlightStrength != mHighlightStrength) {
+                frame = frame.rehighlight(mHighlightStrength);
+            }
+            if (frame != mFrame) {
+                mFrame = frame;
+                invalidatePie();
+            }
+        }
+
+        if ((dirty & DIRTY_RIM_LABELS) != 0) mRimLabels = null;
+        if ((dirty & DIRTY_POINTER) != 0) calcCurrentItem();
+    }
+
+    /**
+     * Figure out how big the pie can be in a view of the given size, and where it goes.
+     */
+    private RectF computePieBounds(int w, int h) {
+        // Account for padding
+        float xpad = (float) (getPaddingLeft() + getPaddingRight());
+        float ypad = (float) (getPaddingTop() + getPaddingBottom());
+
+        // Account for the label
+        if (mShowText) xpad += mTextWidth;
+
+        float ww = (float) w - xpad;
+        float hh = (float) h - ypad;
+
+        // Leave room for the rim labels all the way around.
+        float rimInset = 0.0f;
+        if (mShowRimLabels) rimInset = mRimLabelWidth + mTextHeight / 2.0f;
+
+        // Figure out how big we can make the pie.
+        float diameter = Math.max(Math.min(ww, hh) - 2 * rimInset, 0.0f);
+        RectF bounds = new RectF(
+                0.0f,
+                0.0f,
+                diameter,
+                diameter);
+        bounds.offsetTo(getPaddingLeft() + rimInset, getPaddingTop() + rimInset);
+        if (mTextPos == TEXTPOS_LEFT && mShowText) bounds.offset(mTextWidth, 0.0f);
+        return bounds;
+    }
+
+    /**
+     * Returns what is on screen as vector graphics for {@link SvgExporter} and
+     * {@link PdfExporter}: the slices of the current frame with the pie's rotation, the
+     * pointer and, if text is shown, the current item's label. Rim labels are not
+     * included. Must be called on the UI thread.
+     */
+    public VectorWheel toVectorWheel() {
+        resolveDirty();
+        PieFrame frame = mFrame;
+        String label = null;
+        float labelWidth = 0.0f;
+        if (getShowText()) {
+            label = mCurrentItem < frame.count ? frame.labels[mCurrentItem] : NO_DATA_SLICE;
+            labelWidth = mTextPaint.measureText(label);
+        }
+        return new VectorWheel(frame, getWidth(), getHeight(), mPieBounds.left,
+                mPieBounds.top, mPieRotation, label, mTextX, mTextY,
+                mTextPaint.getTextAlign() == Paint.Align.RIGHT, mTextPaint.getTextSize(),
+                labelWidth, mTextPaint.getColor(), true, mPointerX, mPointerY,
+                mPointerRadius);
+    }
+
+    /**
+     * Returns everything needed to bring this chart back after a configuration change: the
+     * slices, rings, rotation, current item and the computed frame. Return it from
+     * {@code onRetainNonConfigurationInstance()} and hand it to
+     * {@link #restoreState(RetainedState)} on the chart of the new activity.
+     *
+     * @return The retained state. It holds no reference to this view or its context.
+     */
+    public RetainedState retainState() {
+        // Slices still animating out would never finish in the new view; drop them now.
+        ArrayList<Item> data = new ArrayList<Item>(mData.size());
+        boolean removing = false;
+        for (int i = 0; i < mData.size(); i++) {
+            Item it = mData.get(i);
+            if (it.mRemoving) {
+                removing = true;
+            } else {
+                data.add(it);
+            }
+        }
+        // The frame is only worth keeping if it is what the data looks like now.
+        boolean current = !removing && mFrame.generation == mLayoutGeneration;
+        return new RetainedState(data, mRings, current ? mFrame : null, mPieRotation,
+                mCurrentItem);
+    }
+
+    /**
+     * Restore the state retained from the chart of a previous activity. Call this before
+     * the view is laid out. If the new pie is the same size as the old one, the retained
+     * frame is put on screen as it is; otherwise only its size dependent geometry and
+     * shaders are built again.
+     *
+     * @param state The state returned by {@link #retainState()}.
+     */
+    public void restoreState(RetainedState state) {
+        mData = state.mData;
+        mRings = state.mRings;
+        mCurrentItem = state.mCurrentItem;
+        mPieRotation = state.mPieRotation;
+        mPieView.rotateTo(mPieRotation);
+
+        // Any warm-up was done for the seed data and no longer applies.
+        mWarmFrame = null;
+        mRetainedFrame = state.mFrame;
+        mRetainedGeneration = ++mLayoutGeneration;
+    }
+
+    /**
+     * Prepare the first frame ahead of time. This lays out the current data for the pie
+     * bounds the view is expected to get, creating every shader and slice bound, and draws
+     * it once offscreen to get the arc drawing code paths loaded. All of it happens on the
+     * layout worker, so this can be called from {@code onCreate} while the activity is
+     * still starting. If the view is then sized as expected and the data hasn't changed,
+     * the first real frame uses the warmed-up result instead of laying out again.
+     *
+     * @param width  The width this view is expected to be measured to, in pixels.
+     * @param height The height available to this view, in pixels.
+     */
+    public void warmUp(int width, int height) {
+        // Mirror the heuristic in onMeasure() so the guess matches what layout will do.
+        int minw = getPaddingLeft() + getPaddingRight() + getSuggestedMinimumWidth();
+        int w = Math.max(minw, width);
+        int h = Math.min(height, (w - (int) mTextWidth) + getPaddingBottom() + getPaddingTop());
+        RectF expected = computePieBounds(w, h);
+        if (expected.width() <= 0 || mData.size() == 0) return;
+
+        mWarmFrame = null;
+        mWarmUpNanos = -1;
+        // Tagged with the current generation rather than a new one: a warm-up changes no
+        // data, so it must not make a queued layout or the frame on screen look stale.
+        // Any data change after this bumps the generation and the warm frame is ignored.
+        final PieFrame.Spec spec = snapshotLayout(mLayoutGeneration, expected);
+        LAYOUT_EXECUTOR.execute(new Runnable() {
+            public void run() {
+                long start = System.nanoTime();
+                PieFrame frame = PieFrame.compute(spec);
+                frame.prime();
+                mWarmUpNanos = System.nanoTime() - start;
+                mWarmFrame = frame;
+            }
+        });
+    }
+
+    /**
+     * Returns how long the last {@link #warmUp(int, int)} took.
+     *
+     * @return The warm-up time in nanoseconds, or -1 if no warm-up has completed.
+     */
+    public long getWarmUpNanos() {
+        return mWarmUpNanos;
+    }
+
+    /**
+     * Returns the number of draw calls the pie issued the last time it was drawn. The
+     * shadow, label and pointer are not included.
+     *
+     * @return The draw call count of the last pie frame.
+     */
+    public int getLastDrawCallCount() {
+        return mLastDrawCallCount;
+    }
+
+    /**
+     * Spin the pie as if it had been flung, slowing down the same way. This is what a fling
+     * gesture does once its velocity is known, so scripted input can drive the same path.
+     *
+     * @param velocity The initial speed, in degrees per second. Positive spins clockwise.
+     */
+    public void fling(int velocity) {
+        Scroller scroller = getScroller();
+        scroller.fling(
+                0,
+                getPieRotation(),
+                0,
+                velocity,
+                0,
+                0,
+                Integer.MIN_VALUE,
+                Integer.MAX_VALUE);
+
+        // Start the animator and tell it to animate for the expected duration of the fling.
+        if (Build.VERSION.SDK_INT >= 11) {
+            ValueAnimator scrollAnimator = getScrollAnimator();
+            scrollAnimator.setDuration(scroller.getDuration());
+            scrollAnimator.start();
+        }
+    }
+
+    /**
+     * Returns the area that was invalidated for the last frame that was drawn. Changes
+     * invalidate only the layer they affect: the label rectangle, the pointer, or the pie,
+     * so this is a direct measure of how much redrawing each change costs.
+     *
+     * @return The invalidated area of the last frame, in square pixels.
+     */
+    public long getLastInvalidatedArea() {
+        return mLastInvalidatedArea;
+    }
+
+    /**
+     * Returns the number of times the pie was laid out after its data or size changed.
+     * Warm-up layouts are not included. Together with {@link #getLayoutNanos()} this gives
+     * the layout cost of a series of changes, wherever the layout ran.
+     *
+     * @return The layout count since this view was created.
+     */
+    public long getLayoutCount() {
+        return mLayoutCount.get();
+    }
+
+    /**
+     * Returns the total time spent laying out the pie, on the UI thread or, with pipelined
+     * layout, on the layout worker.
+     *
+     * @return The total layout time since this view was created, in nanoseconds.
+     */
+    public long getLayoutNanos() {
+        return mLayoutNanos.get();
+    }
+
+    /**
+     * Returns true if the first frame after the last size change was served from the
+     * warm-up cache.
+     *
+     * @return True on a warm-up hit, false on a miss or if no warm-up was done.
+     */
+    public boolean isFirstFrameWarm() {
+        return mFirstFrameWarm;
+    }
+
     /**
      * Calculate which pie slice is under the pointer, and set the current item
      * field accordingly.
      */
     private void calcCurrentItem() {
         int pointerAngle = (mCurrentItemAngle + 360 + mPieRotation) % 360;
-        for (int i = 0; i < mData.size(); ++i) {
-            Item it = mData.get(i);
-            if (it.mStartAngle <= pointerAngle && pointerAngle <= it.mEndAngle) {
-                if (i != mCurrentItem) {
-                    setCurrentItem(i, false);
-                }
-                break;
-            }
+        int i = mFrame.indexOfAngle(pointerAngle);
+        if (i != -1 && i != mCurrentItem) {
+            setCurrentItem(i, false);
         }
     }
 
     /**
-     * Do all of the recalculations needed when the data array changes.
+     * Do all of the recalculations needed when the data array changes. The data is
+     * snapshotted here; the layout itself runs either inline or, with pipelined layout
+     * enabled, on {@link #LAYOUT_EXECUTOR}.
      */
     private void onDataChanged() {
-    	int angle = 360 / mData.size();
-    	//This is the extra degrees that cannot be equally divided by the number of sides
-    	int extra = 360 % mData.size();
-    	
-        // When the data changes, we have to recalculate
-        // all of the angles.
-        int currentAngle = 0;
-        for (Item it : mData) {
-        	
-        	//Adds the extra degrees to the last slice to ensue no gaps
-        	if(mData.get(mData.size()-1).mLabel.equals(it.mLabel))
-        	{
-        		it.mEndAngle = currentAngle + angle + extra;
-        	}
-        	else
-        	{
-        		
-        		it.mEndAngle = currentAngle + angle;
-        	}
-        	it.mStartAngle = currentAngle;
-            currentAngle = it.mEndAngle;
-            
-            // Recalculate the gradient shaders. There are
-            // three values in this gradient, even though only
-            // two are necessary, in order to work around
-            // a bug in certain versions of the graphics engine
-            // that expects at least three values if the
-            // positions array is non-null.
-            //
-            it.mItemShader = new SweepGradient(
-                    mPieBounds.width() / 2.0f,
-                    mPieBounds.height() / 2.0f,
-                    new int[]{
-                            it.mItemHighlight,
-                            it.mItemHighlight,
-                            it.mItemColor,
-                            it.mItemColor,
-                    },
-                    new float[]{
-                            0,
-                            (float) (360 - it.mEndAngle) / 360.0f,
-                            (float) (360 - it.mStartAngle) / 360.0f,
-                            1.0f
-                    }
-            );
-            
-            it.cSliceShader = new SweepGradient(
-                    mPieBounds.width() / 2.0f,
-                    mPieBounds.height() / 2.0f,
-                    new int[]{
-                            it.cSliceHighlight,
-                            it.cSliceHighlight,
-                            it.cSliceColor,
-                            it.cSliceColor,
-                    },
-                    new float[]{
-                            0,
-                            (float) (360 - it.mEndAngle) / 360.0f,
-                            (float) (360 - it.mStartAngle) / 360.0f,
-                            1.0f
+        // The new frame is laid out against the pie bounds, so they must be current.
+        if ((mDirty & DIRTY_BOUNDS) != 0) resolveDirty();
+        final PieFrame.Spec spec = snapshotLayout(++mLayoutGeneration, mPieBounds);
+        if (!mPipelinedLayout) {
+            applyFrame(computeFrame(spec));
+            return;
+        }
+
+        LAYOUT_EXECUTOR.execute(new Runnable() {
+            public void run() {
+                // A newer change has already been queued; its layout supersedes this one.
+                if (spec.generation != mLayoutGeneration) return;
+
+                final PieFrame frame = computeFrame(spec);
+                post(new Runnable() {
+                    public void run() {
+                        if (frame.generation == mLayoutGeneration) {
+                            applyFrame(frame);
+                        }
                     }
-            );            
+                });
+            }
+        });
+    }
+
+    /**
+     * Lay out a frame, adding the time it took to the layout totals.
+     */
+    private PieFrame computeFrame(PieFrame.Spec spec) {
+        long start = System.nanoTime();
+        PieFrame frame = PieFrame.compute(spec);
+        mLayoutNanos.addAndGet(System.nanoTime() - start);
+        mLayoutCount.incrementAndGet();
+        return frame;
+    }
+
+    /**
+     * Copy everything the layout depends on, so the worker never reads mutable view state.
+     */
+    private PieFrame.Spec snapshotLayout(int generation, RectF pieBounds) {
+        int count = mData.size();
+        String[] labels = new String[count];
+        float[] percents = new float[count];
+        int[] sliceColors = new int[count];
+        int[] itemColors = new int[count];
+        for (int i = 0; i < count; i++) {
+            Item it = mData.get(i);
+            labels[i] = it.mLabel;
+            // A slice being removed animates its score down to nothing first.
+            percents[i] = it.mRemoving ? 0.0f : it.cPercent;
+            sliceColors[i] = it.cSliceColor;
+            itemColors[i] = it.mItemColor;
         }
+
+        // Rings beyond the first are stored by label; a slice without a value in a ring
+        // scores zero there.
+        float[][] ringPercents = new float[mRings.size()][count];
+        for (int r = 0; r < mRings.size(); r++) {
+            HashMap<String, Float> ring = mRings.get(r);
+            for (int i = 0; i < count; i++) {
+                Float p = ring.get(labels[i]);
+                ringPercents[r][i] = p == null ? 0.0f : p;
+            }
+        }
+        return new PieFrame.Spec(generation, count, labels, percents, ringPercents,
+                sliceColors, itemColors, mHighlightStrength, pieBounds.width(),
+                pieBounds.height());
+    }
+
+    /**
+     * Put a finished frame on screen. Must be called on the UI thread.
+     */
+    private void applyFrame(PieFrame frame) {
+        PieFrame previous = mFrame;
+        mFrame = frame;
+
+        // A pipelined frame was snapshotted before it got here; if the size or highlight
+        // strength changed in the meantime, patch up just that part of it.
+        if (frame.count > 0 && (frame.width != mPieBounds.width()
+                || frame.height != mPieBounds.height())) {
+            markDirty(DIRTY_GEOMETRY);
+        }
+        if (frame.highlightStrength != mHighlightStrength) markDirty(DIRTY_HIGHLIGHTS);
+        startValueTransition(previous, frame);
+        mRimLabels = null;
+        if (mShowRimLabels) invalidate();
+        if (mCurrentItem >= frame.count) {
+            mCurrentItem = Math.max(frame.count - 1, 0);
+        }
+        invalidatePie();
+        invalidateLabel();
         calcCurrentItem();
         onScrollFinished();
     }
@@ -798,11 +1616,6 @@ public class PieChart extends ViewGroup {
         cSlicePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
         cSlicePaint.setStyle(Paint.Style.FILL);
 
-        // Set up the paint for the shadow
-        mShadowPaint = new Paint(0);
-        mShadowPaint.setColor(0xff101010);
-        mShadowPaint.setMaskFilter(new BlurMaskFilter(8, BlurMaskFilter.Blur.NORMAL));
-
         // Add a child view to draw the pie. Putting this in a child view
         // makes it possible to draw it on a separate hardware layer that rotates
         // independently
@@ -815,9 +1628,42 @@ public class PieChart extends ViewGroup {
         mPointerView = new PointerView(getContext());
         addView(mPointerView);
 
-        // Set up an animator to animate the PieRotation property. This is used to
-        // correct the pie's orientation after the user lets go of it.
-        if (Build.VERSION.SDK_INT >= 11) {
+        // The shadow paint, the Scroller, both animators and the GestureDetector are not
+        // needed to draw the first frame, so they are created on first use. See
+        // getShadowPaint(), getScroller(), getScrollAnimator(), getAutoCenterAnimator()
+        // and getDetector().
+    }
+
+    /**
+     * Returns the paint for the rim label leader lines, creating it on first use.
+     */
+    private Paint getRimLinePaint() {
+        if (mRimLinePaint == null) {
+            mRimLinePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+            mRimLinePaint.setColor(mTextColor);
+            mRimLinePaint.setStyle(Paint.Style.STROKE);
+        }
+        return mRimLinePaint;
+    }
+
+    /**
+     * Returns the paint for the shadow, creating it (and its blur filter) on first use.
+     */
+    private Paint getShadowPaint() {
+        if (mShadowPaint == null) {
+            mShadowPaint = new Paint(0);
+            mShadowPaint.setColor(0xff101010);
+            mShadowPaint.setMaskFilter(new BlurMaskFilter(8, BlurMaskFilter.Blur.NORMAL));
+        }
+        return mShadowPaint;
+    }
+
+    /**
+     * Returns the animator for the PieRotation property, creating it on first use. This is
+     * used to correct the pie's orientation after the user lets go of it.
+     */
+    private ObjectAnimator getAutoCenterAnimator() {
+        if (mAutoCenterAnimator == null) {
             mAutoCenterAnimator = ObjectAnimator.ofInt(PieChart.this, "PieRotation", 0);
 
             // Add a listener to hook the onAnimationEnd event so that we can do
@@ -837,19 +1683,32 @@ public class PieChart extends ViewGroup {
                 }
             });
         }
+        return mAutoCenterAnimator;
+    }
 
-
-        // Create a Scroller to handle the fling gesture.
-        if (Build.VERSION.SDK_INT < 11) {
-            mScroller = new Scroller(getContext());
-        } else {
-            mScroller = new Scroller(getContext(), null, true);
+    /**
+     * Returns the Scroller that handles the fling gesture, creating it on first use.
+     */
+    private Scroller getScroller() {
+        if (mScroller == null) {
+            if (Build.VERSION.SDK_INT < 11) {
+                mScroller = new Scroller(getContext());
+            } else {
+                mScroller = new Scroller(getContext(), null, true);
+            }
         }
+        return mScroller;
+    }
+
+    /**
+     * Returns the animator that ticks the Scroller, creating it on first use.
+     */
+    private ValueAnimator getScrollAnimator() {
         // The scroller doesn't have any built-in animation functions--it just supplies
         // values when we ask it to. So we have to have a way to call it every frame
         // until the fling ends. This code (ab)uses a ValueAnimator object to generate
         // a callback on every animation frame. We don't use the animated value at all.
-        if (Build.VERSION.SDK_INT >= 11) {
+        if (mScrollAnimator == null) {
             mScrollAnimator = ValueAnimator.ofFloat(0, 1);
             mScrollAnimator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
                 public void onAnimationUpdate(ValueAnimator valueAnimator) {
@@ -857,28 +1716,174 @@ public class PieChart extends ViewGroup {
                 }
             });
         }
+        return mScrollAnimator;
+    }
+
+    /**
+     * Returns the animator for slice value transitions, creating it on first use. This one
+     * animator drives every slice; see startValueTransition().
+     */
+    private ValueAnimator getValueAnimator() {
+        if (mValueAnimator == null) {
+            mValueAnimator = ValueAnimator.ofFloat(0, 1);
+            mValueAnimator.setDuration(VALUE_ANIM_DURATION);
+            mValueAnimator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
+                public void onAnimationUpdate(ValueAnimator valueAnimator) {
+                    float t = valueAnimator.getAnimatedFraction();
+                    int count = mFrame.count;
+                    for (int i = 0; i < count; i++) {
+                        mAnimPercents[i] = mAnimFrom[i] + (mAnimTo[i] - mAnimFrom[i]) * t;
+                    }
+                    invalidatePie();
+                }
+            });
+            mValueAnimator.addListener(new Animator.AnimatorListener() {
+                public void onAnimationStart(Animator animator) {
+                }
+
+                public void onAnimationEnd(Animator animator) {
+                    // A cancel is followed by an end; only a transition that ran to the
+                    // end gets to drop the slices it was removing.
+                    if (mValueAnimCanceled) return;
+                    mValueAnimating = false;
+                    invalidatePie();
+                    commitRemovals();
+                }
+
+                public void onAnimationCancel(Animator animator) {
+                    mValueAnimCanceled = true;
+                }
+
+                public void onAnimationRepeat(Animator animator) {
+                }
+            });
+        }
+        return mValueAnimator;
+    }
+
+    private boolean canAnimateValues() {
+        return Build.VERSION.SDK_INT >= 11 && mFirstDrawDone;
+    }
+
+    /**
+     * Start animating the slice scores from what is on screen in the previous frame to the
+     * scores of the new one. Slices are matched by label; new slices grow from nothing.
+     * Angles are not animated, so a change in the number of slices snaps into place and
+     * only the score wedges move.
+     */
+    private void startValueTransition(PieFrame previous, PieFrame frame) {
+        int count = frame.count;
+
+        // What each slice of the previous frame currently shows.
+        float[] shown = mValueAnimating ? mAnimPercents : previous.percents;
+        if (mAnimPercents.length < count) {
+            int capacity = Math.max(count, mAnimPercents.length * 2);
+            mAnimFrom = new float[capacity];
+            mAnimTo = new float[capacity];
+            mAnimPercents = new float[capacity];
+        }
+
+        HashMap<String, Integer> previousIndex = new HashMap<String, Integer>(previous.count * 2);
+        for (int i = 0; i < previous.count; i++) {
+            previousIndex.put(previous.labels[i], i);
+        }
+
+        boolean changed = false;
+        for (int i = 0; i < count; i++) {
+            Integer j = previousIndex.get(frame.labels[i]);
+            mAnimFrom[i] = j == null ? 0.0f : shown[j];
+            changed |= mAnimFrom[i] != frame.percents[i];
+        }
 
-        // Create a gesture detector to handle onTouch messages
-        mDetector = new GestureDetector(PieChart.this.getContext(), new GestureListener());
+        if (mValueAnimator != null && mValueAnimating) {
+            mValueAnimCanceled = true;
+            mValueAnimator.cancel();
+        }
+        if (!changed || !canAnimateValues()) {
+            mValueAnimating = false;
+            commitRemovals();
+            return;
+        }
+
+        System.arraycopy(mAnimFrom, 0, mAnimPercents, 0, count);
+        System.arraycopy(frame.percents, 0, mAnimTo, 0, count);
+        mValueAnimating = true;
+        mValueAnimCanceled = false;
+        getValueAnimator().start();
+    }
 
-        // Turn off long press--this control doesn't use it, and if long press is enabled,
-        // you can't scroll for a bit, pause, then scroll some more (the pause is interpreted
-        // as a long press, apparently)
-        mDetector.setIsLongpressEnabled(false);
+    /**
+     * Returns the gesture detector that handles onTouch messages, creating it on first use.
+     */
+    private GestureDetector getDetector() {
+        if (mDetector == null) {
+            mDetector = new GestureDetector(PieChart.this.getContext(), new GestureListener());
+
+            // Turn off long press--this control doesn't use it, and if long press is enabled,
+            // you can't scroll for a bit, pause, then scroll some more (the pause is interpreted
+            // as a long press, apparently)
+            mDetector.setIsLongpressEnabled(false);
+        }
+        return mDetector;
     }
 
     private void tickScrollAnimation() {
-        if (!mScroller.isFinished()) {
+        if (mScroller != null && !mScroller.isFinished()) {
             mScroller.computeScrollOffset();
             setPieRotation(mScroller.getCurrY());
         } else {
-            if (Build.VERSION.SDK_INT >= 11) {
+            if (Build.VERSION.SDK_INT >= 11 && mScrollAnimator != null) {
                 mScrollAnimator.cancel();
             }
             onScrollFinished();
         }
     }
 
+    /**
+     * Invalidate only the rectangle the label is drawn in. The label may be wider than
+     * mTextWidth, so the rectangle runs from the pie to the edge of the view on the
+     * label's side.
+     */
+    private void invalidateLabel() {
+        if (getWidth() == 0) return;
+        int top = (int) Math.floor(mTextY + mTextPaint.ascent()) - 1;
+        int bottom = (int) Math.ceil(mTextY + mTextPaint.descent()) + 1;
+        if (mTextPos == TEXTPOS_LEFT) {
+            mDirtyRect.set(0, top, (int) Math.ceil(mTextX) + 1, bottom);
+        } else {
+            mDirtyRect.set((int) Math.floor(mTextX) - 1, top, getWidth(), bottom);
+        }
+        mPendingInvalidatedArea += (long) mDirtyRect.width() * mDirtyRect.height();
+        invalidate(mDirtyRect);
+    }
+
+    /**
+     * Invalidate the pointer layer only.
+     */
+    private void invalidatePointer() {
+        mPendingInvalidatedArea += (long) mPointerView.getWidth() * mPointerView.getHeight();
+        mPointerView.invalidate();
+    }
+
+    /**
+     * Invalidate the pie layer only.
+     */
+    private void invalidatePie() {
+        mPendingInvalidatedArea += (long) mPieView.getWidth() * mPieView.getHeight();
+        mPieView.invalidate();
+    }
+
+    /**
+     * Called by each layer as it draws. The first layer to draw closes the accounting
+     * for the invalidations that led to this frame.
+     */
+    private void onLayerDrawn() {
+        if (mPendingInvalidatedArea > 0) {
+            mLastInvalidatedArea = mPendingInvalidatedArea;
+            mPendingInvalidatedArea = 0;
+        }
+    }
+
     private void setLayerToSW(View v) {
         if (!v.isInEditMode() && Build.VERSION.SDK_INT >= 11) {
             setLayerType(View.LAYER_TYPE_SOFTWARE, null);
@@ -895,8 +1900,10 @@ public class PieChart extends ViewGroup {
      * Force a stop to all pie motion. Called when the user taps during a fling.
      */
     private void stopScrolling() {
-        mScroller.forceFinished(true);
-        if (Build.VERSION.SDK_INT >= 11) {
+        if (mScroller != null) {
+            mScroller.forceFinished(true);
+        }
+        if (Build.VERSION.SDK_INT >= 11 && mAutoCenterAnimator != null) {
             mAutoCenterAnimator.cancel();
         }
 
@@ -919,15 +1926,22 @@ public class PieChart extends ViewGroup {
      * pie slice of the currently selected item.
      */
     private void centerOnCurrentItem() {
-        Item current = mData.get(getCurrentItem());
-        int targetAngle = current.mStartAngle + (current.mEndAngle - current.mStartAngle) / 2;
+        PieFrame frame = mFrame;
+        int current = getCurrentItem();
+        if (current >= frame.count) return;
+        int targetAngle = frame.startAngles[current]
+                + (frame.endAngles[current] - frame.startAngles[current]) / 2;
         targetAngle -= mCurrentItemAngle;
         if (targetAngle < 90 && mPieRotation > 180) targetAngle += 360;
 
-        if (Build.VERSION.SDK_INT >= 11) {
+        if (!mFirstDrawDone) {
+            // Nothing is on screen yet, so there is nothing to animate.
+            setPieRotation(targetAngle);
+        } else if (Build.VERSION.SDK_INT >= 11) {
             // Fancy animated version
-            mAutoCenterAnimator.setIntValues(targetAngle);
-            mAutoCenterAnimator.setDuration(AUTOCENTER_ANIM_DURATION).start();
+            ObjectAnimator animator = getAutoCenterAnimator();
+            animator.setIntValues(targetAngle);
+            animator.setDuration(AUTOCENTER_ANIM_DURATION).start();
         } else {
             // Dull non-animated version
             //mPieView.rotateTo(targetAngle);
@@ -978,42 +1992,15 @@ public class PieChart extends ViewGroup {
                 canvas.setMatrix(mTransform);
             }
 
-            for (Item it : mData) {
-                mPiePaint.setShader(it.mItemShader);
-                cSlicePaint.setShader(it.cSliceShader);
-//                Log.d(TAG, "mBounds: " +mBounds);
-                canvas.drawArc(mBounds,
-                        360 - it.mEndAngle,
-                        it.mEndAngle - it.mStartAngle,
-                        true, mPiePaint);
-                Log.d(TAG, "Item Being Built: " +it.mLabel);
-                Log.d(TAG, "RectF: " + it.cSliceBounds);
-                Log.d(TAG, "StartAngle> "+it.mStartAngle+" EndAngle> "+it.mEndAngle);
-                canvas.drawArc(it.cSliceBounds,
-                        360 - it.mEndAngle,
-                        it.mEndAngle - it.mStartAngle,
-                        true, cSlicePaint);
-//                Log.d(TAG, "StartAngle> "+it.mStartAngle+" EndAngle> "+it.mEndAngle);
-            }         
-        }
+            resolveDirty();
+            onLayerDrawn();
 
-        @Override
-        protected void onSizeChanged(int w, int h, int oldw, int oldh) {
-            mBounds = new RectF(0, 0, w, h);
-            int centerX = w / 2;
-            int centerY = h / 2;
-//            Log.d(TAG, "INIT mBounds: " +mBounds);
-            for (Item it : mData) {
-//            	Log.d(TAG, "PercentVal: "+it.cPercent);
-            	float itemW = (w / 2) * it.cPercent;
-            	float itemH = (h / 2) * it.cPercent;
-            	it.cSliceBounds.set(centerX - itemW,centerY - itemH, centerX + itemW, centerY + itemH);
-//            	Log.d(TAG, "Slice Bounds>> " + it.cSliceBounds);
-            }
+            // Slice bounds and shaders live in the frame, which is laid out against
+            // mPieBounds, i.e. exactly this view's size.
+            mLastDrawCallCount = mFrame.draw(canvas, mPiePaint, cSlicePaint,
+                    mValueAnimating ? mAnimPercents : null);
         }
 
-        RectF mBounds;
-
         public void rotateTo(float pieRotation) {
             mRotation = pieRotation;
             if (Build.VERSION.SDK_INT >= 11) {
@@ -1051,32 +2038,47 @@ public class PieChart extends ViewGroup {
 
         @Override
         protected void onDraw(Canvas canvas) {
+            resolveDirty();
+            onLayerDrawn();
             canvas.drawLine(mTextX, mPointerY, mPointerX, mPointerY, mTextPaint);
             canvas.drawCircle(mPointerX, mPointerY, mPointerRadius, mTextPaint);
         }
     }
 
     /**
-     * Maintains the state for a data item.
+     * The state of a chart carried across a configuration change. See
+     * {@link PieChart#retainState()}.
      */
-    private class Item {
+    public static final class RetainedState {
+        private final List<Item> mData;
+        private final List<HashMap<String, Float>> mRings;
+        private final PieFrame mFrame;
+        private final int mPieRotation;
+        private final int mCurrentItem;
+
+        private RetainedState(List<Item> data, List<HashMap<String, Float>> rings,
+                              PieFrame frame, int pieRotation, int currentItem) {
+            mData = data;
+            mRings = rings;
+            mFrame = frame;
+            mPieRotation = pieRotation;
+            mCurrentItem = currentItem;
+        }
+    }
+
+    /**
+     * Maintains the state for a data item. Items are retained across configuration
+     * changes, so they must not hold on to the view.
+     */
+    private static class Item {
         public String mLabel;
         public int mItemColor;
         public float cPercent;
-        
+        public int cSliceColor;
 
-        // computed values
-        public int mStartAngle;
-        public int mEndAngle;
+        // True while the slice animates out after removeItem().
+        public boolean mRemoving;
 
-        public int mItemHighlight;
-        public Shader mItemShader;
-        
-        public int cSliceHighlight;
-        public Shader cSliceShader;
-        public int cSliceColor;
-        
-        public RectF cSliceBounds;
         @Override
         public boolean equals(Object obj){
         	if (obj == null) return false;
@@ -1117,20 +2119,21 @@ public class PieChart extends ViewGroup {
                     velocityY,
                     e2.getX() - mPieBounds.centerX(),
                     e2.getY() - mPieBounds.centerY());
-            mScroller.fling(
-                    0,
-                    (int) getPieRotation(),
-                    0,
-                    (int) scrollTheta / FLING_VELOCITY_DOWNSCALE,
-                    0,
-                    0,
-                    Integer.MIN_VALUE,
-                    Integer.MAX_VALUE);
-
-            // Start the animator and tell it to animate for the expected duration of the fling.
-            if (Build.VERSION.SDK_INT >= 11) {
-                mScrollAnimator.setDuration(mScroller.getDuration());
-                mScrollAnimator.start();
+            fling((int) scrollTheta / FLING_VELOCITY_DOWNSCALE);
+            return true;
+        }
+
+        @Override
+        public boolean onSingleTapUp(MotionEvent e) {
+            if (!hitTest(e.getX(), e.getY(), mTapHit)) {
+                return false;
+            }
+            if (mTapHit.index != mCurrentItem) {
+                setCurrentItem(mTapHit.index);
+            }
+            if (mSliceTappedListener != null) {
+                mSliceTappedListener.onSliceTapped(PieChart.this, mTapHit.index, mTapHit.ring,
+                        mTapHit.region);
             }
             return true;
         }
@@ -1148,7 +2151,9 @@ public class PieChart extends ViewGroup {
     }
 
     private boolean isAnimationRunning() {
-        return !mScroller.isFinished() || (Build.VERSION.SDK_INT >= 11 && mAutoCenterAnimator.isRunning());
+        return (mScroller != null && !mScroller.isFinished())
+                || (Build.VERSION.SDK_INT >= 11 && mAutoCenterAnimator != null
+                        && mAutoCenterAnimator.isRunning());
     }
 
     /**
@@ -3,6 +3,7 @@ package com.nennig.life.wheel.charting;
 import android.content.res.Resources;
 
 import com.nennig.life.wheel.R;
+import com.nennig.life.wheel.data.CategoryCatalog;
 
 public class PieConstants {
 	private static int pieScale = 10;
@@ -14,61 +15,55 @@ public class PieConstants {
     	return pieScale / pieScale;
     }
     
+    //The slice and item colors, by palette index. Built-in categories past the end of the
+    //palette have always been yellow; user categories cycle through it.
+    private static final int[] SLICE_COLORS = {
+    	R.color.yellow, R.color.red, R.color.orange, R.color.blue,
+    	R.color.black, R.color.purple, R.color.green
+    };
+    private static final int[] ITEM_COLORS = {
+    	R.color.yellow_light, R.color.red_light, R.color.orange_light, R.color.blue_light,
+    	R.color.black_light, R.color.purple_light, R.color.green_light
+    };
+    
+    private static CategoryCatalog sCatalog;
+    
+    /**
+     * Returns the catalog of every category, built from the category dropdown the first
+     * time it is asked for. User categories are added to it by the app.
+     */
+    public static synchronized CategoryCatalog getCatalog(Resources res){
+    	if(sCatalog == null)
+    		sCatalog = new CategoryCatalog(res.getStringArray(R.array.category_dropdown));
+    	return sCatalog;
+    }
+    
     //Simple color picker for each slice of the pie!
     public static int getSliceColor(Resources res, String str){
-    	String[] arr = res.getStringArray(R.array.category_dropdown);
-    	int colorCounter = 0;
-    	for(String cat : arr){
-    		if(str.equals(cat)){
-    			switch(colorCounter){
-    			case 0:
-    				return res.getColor(R.color.yellow);
-    			case 1:
-    				return res.getColor(R.color.red);
-    			case 2:
-    				return res.getColor(R.color.orange);
-    			case 3:
-    				return res.getColor(R.color.blue);
-    			case 4:
-    				return res.getColor(R.color.black);
-    			case 5:
-    				return res.getColor(R.color.purple);
-    			case 6:
-    				return res.getColor(R.color.green);
-    			default:
-    				return res.getColor(R.color.yellow);
-    			}	    			
-    		}
-    		colorCounter++;
-    	}
-    	return res.getColor(R.color.yellow);
+    	return getSliceColor(res, getCatalog(res).getId(str));
     }
     public static int getItemColor(Resources res, String str){
-    	String[] arr = res.getStringArray(R.array.category_dropdown);
-    	int colorCounter = 0;
-    	for(String cat : arr){
-    		if(str.equals(cat)){
-    			switch(colorCounter){
-	    			case 0:
-	    				return res.getColor(R.color.yellow_light);
-	    			case 1:
-	    				return res.getColor(R.color.red_light);
-	    			case 2:
-	    				return res.getColor(R.color.orange_light);
-	    			case 3:
-	    				return res.getColor(R.color.blue_light);
-	    			case 4:
-	    				return res.getColor(R.color.black_light);
-	    			case 5:
-	    				return res.getColor(R.color.purple_light);
-	    			case 6:
-	    				return res.getColor(R.color.green_light);
-	    			default:
-	    				return res.getColor(R.color.yellow_light);
-    			}	    			
-    		}
-    		colorCounter++;
-    	}
-    	return res.getColor(R.color.yellow_light);
+    	return getItemColor(res, getCatalog(res).getId(str));
+    }
+    
+    /**
+     * Returns the slice color of a category.
+     * 
+     * @param id The {@link CategoryCatalog} id of the category, or -1 for an unknown one.
+     */
+    public static int getSliceColor(Resources res, int id){
+    	return res.getColor(SLICE_COLORS[paletteIndex(res, id)]);
+    }
+    public static int getItemColor(Resources res, int id){
+    	return res.getColor(ITEM_COLORS[paletteIndex(res, id)]);
+    }
+    
+    private static int paletteIndex(Resources res, int id){
+    	CategoryCatalog catalog = getCatalog(res);
+    	if(id < 0)
+    		return 0;
+    	if(catalog.isBuiltIn(id))
+    		return id < SLICE_COLORS.length ? id : 0;
+    	return (id - catalog.getBuiltInCount()) % SLICE_COLORS.length;
     }
 }
@@ -0,0 +1,451 @@
+/* Copyright (C) 2012 The Android Open Source Project
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+package com.nennig.life.wheel.charting;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.RectF;
+import android.graphics.Shader;
+import android.graphics.SweepGradient;
+
+import com.nennig.life.wheel.data.WheelSnapshot;
+
+/**
+ * A fully computed frame model for {@link PieChart}. Everything the pie needs to draw a
+ * frame (angles, highlight colors, gradient shaders, slice bounds and the wedge geometry)
+ * is calculated up front
+ * by {@link #compute(Spec)}, which touches no view state and can therefore run on a worker
+ * thread. Once built a frame is never modified, so the view can keep drawing the previous
+ * frame while the next one is being laid out.
+ */
+final class PieFrame {
+    private static final int PRIME_SIZE = 64;
+
+    /**
+     * An empty frame, used before the first layout has completed.
+     */
+    static final PieFrame EMPTY = compute(new Spec(0, 0, new String[0], new float[0],
+            new float[0][], new int[0], new int[0], 1.0f, 0.0f, 0.0f));
+
+    final int generation;
+    final int count;
+    final float width;
+    final float height;
+    final float highlightStrength;
+
+    final String[] labels;
+    final float[] percents;
+
+    // Concentric rings. Ring 0 is the innermost and holds percents; each further ring
+    // holds its own series of scores for the same slices. The pie's radius is split into
+    // equal bands, one per ring. Angles, colors and shaders are shared by every ring.
+    final int ringCount;
+    final float[][] ringPercents;
+
+    final int[] startAngles;
+    final int[] endAngles;
+
+    final int[] itemColors;
+    final int[] itemHighlights;
+    final int[] sliceColors;
+    final int[] sliceHighlights;
+
+    final Shader[] itemShaders;
+    final Shader[] sliceShaders;
+
+    final RectF bounds;
+    final RectF[] sliceBounds;
+
+    // The geometry of each slice, built once per layout and reused by every frame: the
+    // full wedge over bounds, and the score wedge over sliceBounds.
+    final Path[] wedges;
+    final Path[] scoreWedges;
+
+    // The score band of each slice in rings 1 and up, indexed [ring - 1][slice]. Zero
+    // scores have no geometry and are null.
+    final Path[][] ringWedges;
+
+    /**
+     * An immutable snapshot of everything the layout depends on. The arrays are owned by
+     * the spec; callers must not modify them after handing them over.
+     */
+    static final class Spec {
+        final int generation;
+        final int count;
+        final String[] labels;
+        final float[] percents;
+        final float[][] ringPercents;
+        final int[] sliceColors;
+        final int[] itemColors;
+        final float highlightStrength;
+        final float width;
+        final float height;
+
+        Spec(int generation, int count, String[] labels, float[] percents,
+             float[][] ringPercents, int[] sliceColors, int[] itemColors,
+             float highlightStrength, float width, float height) {
+            this.generation = generation;
+            this.count = count;
+            this.labels = labels;
+            this.percents = percents;
+            this.ringPercents = ringPercents;
+            this.sliceColors = sliceColors;
+            this.itemColors = itemColors;
+            this.highlightStrength = highlightStrength;
+            this.width = width;
+            this.height = height;
+        }
+
+        /**
+         * Returns the spec of a stored wheel, colored by its categories. The slices are in
+         * the wheel's order; pass {@link WheelSnapshot#canonical()} for a stable one.
+         */
+        static Spec of(WheelSnapshot wheel, Resources res, float highlightStrength,
+                       float width, float height) {
+            int count = wheel.getCount();
+            String[] labels = new String[count];
+            float[] percents = new float[count];
+            int[] sliceColors = new int[count];
+            int[] itemColors = new int[count];
+            for (int i = 0; i < count; i++) {
+                labels[i] = wheel.getLabel(i);
+                percents[i] = PieConstants.getSliceItemPercentage(wheel.getValue(i));
+                sliceColors[i] = PieConstants.getSliceColor(res, labels[i]);
+                itemColors[i] = PieConstants.getItemColor(res, labels[i]);
+            }
+            return new Spec(0, count, labels, percents, new float[0][], sliceColors,
+                    itemColors, highlightStrength, width, height);
+        }
+    }
+
+    private PieFrame(Spec spec) {
+        this(spec.generation, spec.count, spec.width, spec.height, spec.highlightStrength,
+                spec.labels, spec.percents, spec.ringPercents, spec.itemColors,
+                spec.sliceColors);
+    }
+
+    private PieFrame(int generation, int count, float width, float height,
+                     float highlightStrength, String[] labels, float[] percents,
+                     float[][] ringPercents, int[] itemColors, int[] sliceColors) {
+        this.generation = generation;
+        this.count = count;
+        this.width = width;
+        this.height = height;
+        this.highlightStrength = highlightStrength;
+        this.labels = labels;
+        this.percents = percents;
+        this.ringPercents = ringPercents;
+        ringCount = ringPercents.length + 1;
+        this.itemColors = itemColors;
+        this.sliceColors = sliceColors;
+
+        startAngles = new int[count];
+        endAngles = new int[count];
+        itemHighlights = new int[count];
+        sliceHighlights = new int[count];
+        itemShaders = new Shader[count];
+        sliceShaders = new Shader[count];
+        sliceBounds = new RectF[count];
+        wedges = new Path[count];
+        scoreWedges = new Path[count];
+        ringWedges = new Path[ringPercents.length][count];
+        bounds = new RectF(0, 0, width, height);
+    }
+
+    /**
+     * Lays out a frame. This does not touch any view, so it is safe to call from any thread.
+     *
+     * @param spec The snapshot of the data and dimensions to lay out.
+     * @return The computed frame.
+     */
+    static PieFrame compute(Spec spec) {
+        PieFrame f = new PieFrame(spec);
+        if (f.count == 0) {
+            return f;
+        }
+
+        int angle = 360 / f.count;
+        //This is the extra degrees that cannot be equally divided by the number of sides
+        int extra = 360 % f.count;
+
+        int currentAngle = 0;
+        for (int i = 0; i < f.count; i++) {
+            //Adds the extra degrees to the last slice to ensure no gaps
+            f.startAngles[i] = currentAngle;
+            f.endAngles[i] = currentAngle + angle + (i == f.count - 1 ? extra : 0);
+            currentAngle = f.endAngles[i];
+        }
+        computeHighlights(f);
+        layoutGeometry(f);
+        layoutShaders(f);
+        return f;
+    }
+
+    /**
+     * Lays out this frame again for a new size. The data, angles and colors don't depend on
+     * the size and are shared with this frame; only the bounds, wedges and shaders are
+     * built again. Safe to call from any thread.
+     *
+     * @param generation The layout generation of the new frame.
+     * @return The resized frame.
+     */
+    PieFrame resize(int generation, float newWidth, float newHeight) {
+        PieFrame f = new PieFrame(generation, count, newWidth, newHeight, highlightStrength,
+                labels, percents, ringPercents, itemColors, sliceColors);
+        System.arraycopy(startAngles, 0, f.startAngles, 0, count);
+        System.arraycopy(endAngles, 0, f.endAngles, 0, count);
+        System.arraycopy(itemHighlights, 0, f.itemHighlights, 0, count);
+        System.arraycopy(sliceHighlights, 0, f.sliceHighlights, 0, count);
+        layoutGeometry(f);
+        layoutShaders(f);
+        return f;
+    }
+
+    /**
+     * Returns this frame with a new highlight strength. Only the highlight colors and the
+     * shaders are computed again; the data, angles and wedge geometry are shared with this
+     * frame. Safe to call from any thread.
+     */
+    PieFrame rehighlight(float strength) {
+        PieFrame f = new PieFrame(generation, count, width, height, strength, labels,
+                percents, ringPercents, itemColors, sliceColors);
+        System.arraycopy(startAngles, 0, f.startAngles, 0, count);
+        System.arraycopy(endAngles, 0, f.endAngles, 0, count);
+        System.arraycopy(sliceBounds, 0, f.sliceBounds, 0, count);
+        System.arraycopy(wedges, 0, f.wedges, 0, count);
+        System.arraycopy(scoreWedges, 0, f.scoreWedges, 0, count);
+        for (int r = 0; r < ringWedges.length; r++) {
+            System.arraycopy(ringWedges[r], 0, f.ringWedges[r], 0, count);
+        }
+        computeHighlights(f);
+        layoutShaders(f);
+        return f;
+    }
+
+    /**
+     * Calculates the highlight colors. Saturate at 0xff to make sure that high values
+     * don't result in aliasing.
+     */
+    private static void computeHighlights(PieFrame f) {
+        for (int i = 0; i < f.count; i++) {
+            f.itemHighlights[i] = highlight(f.itemColors[i], f.highlightStrength);
+            f.sliceHighlights[i] = highlight(f.sliceColors[i], f.highlightStrength);
+        }
+    }
+
+    /**
+     * Builds the bounds and wedges, which depend on the frame's size and angles.
+     */
+    private static void layoutGeometry(PieFrame f) {
+        float centerX = f.width / 2.0f;
+        float centerY = f.height / 2.0f;
+        float band = 1.0f / f.ringCount;
+
+        for (int i = 0; i < f.count; i++) {
+            float itemW = centerX * f.percents[i] * band;
+            float itemH = centerY * f.percents[i] * band;
+            f.sliceBounds[i] = new RectF(centerX - itemW, centerY - itemH,
+                    centerX + itemW, centerY + itemH);
+
+            f.wedges[i] = wedge(f.bounds, f.startAngles[i], f.endAngles[i]);
+            f.scoreWedges[i] = wedge(f.sliceBounds[i], f.startAngles[i], f.endAngles[i]);
+
+            for (int r = 1; r < f.ringCount; r++) {
+                float p = f.ringPercents[r - 1][i];
+                if (p <= 0) continue;
+                float inner = r * band;
+                f.ringWedges[r - 1][i] = band(centerX, centerY, inner, inner + band * p,
+                        f.startAngles[i], f.endAngles[i]);
+            }
+        }
+    }
+
+    /**
+     * Builds the sweep gradients, which depend on the frame's center, angles and colors.
+     */
+    private static void layoutShaders(PieFrame f) {
+        float centerX = f.width / 2.0f;
+        float centerY = f.height / 2.0f;
+        for (int i = 0; i < f.count; i++) {
+            f.itemShaders[i] = sweep(centerX, centerY, f.itemHighlights[i], f.itemColors[i],
+                    f.startAngles[i], f.endAngles[i]);
+            f.sliceShaders[i] = sweep(centerX, centerY, f.sliceHighlights[i], f.sliceColors[i],
+                    f.startAngles[i], f.endAngles[i]);
+        }
+    }
+
+    /**
+     * Draws every slice of this frame. The canvas is expected to be in the pie's local
+     * coordinate space, i.e. (0, 0) is the top left corner of {@link #bounds}.
+     *
+     * @param animatedPercents If not null, the score of each slice to draw instead of
+     *                         {@link #percents}. The score wedges are then drawn as the
+     *                         full wedge scaled about the center, which needs no new
+     *                         geometry and leaves the sweep gradient unchanged.
+     * @return The number of draw calls issued.
+     */
+    int draw(Canvas canvas, Paint itemPaint, Paint slicePaint, float[] animatedPercents) {
+        float cx = width / 2.0f;
+        float cy = height / 2.0f;
+        int drawCalls = 0;
+        for (int i = 0; i < count; i++) {
+            itemPaint.setShader(itemShaders[i]);
+            canvas.drawPath(wedges[i], itemPaint);
+            drawCalls++;
+
+            // Every ring of the slice shares its shader.
+            slicePaint.setShader(sliceShaders[i]);
+            for (int r = 1; r < ringCount; r++) {
+                if (ringWedges[r - 1][i] != null) {
+                    canvas.drawPath(ringWedges[r - 1][i], slicePaint);
+                    drawCalls++;
+                }
+            }
+
+            float percent = animatedPercents == null ? percents[i] : animatedPercents[i];
+            // A zero score has no visible wedge.
+            if (percent <= 0) continue;
+
+            if (animatedPercents == null) {
+                canvas.drawPath(scoreWedges[i], slicePaint);
+            } else {
+                float scale = percent / ringCount;
+                int save = canvas.save();
+                canvas.scale(scale, scale, cx, cy);
+                canvas.drawPath(wedges[i], slicePaint);
+                canvas.restoreToCount(save);
+            }
+            drawCalls++;
+        }
+        return drawCalls;
+    }
+
+    /**
+     * Draws this frame once into a small offscreen bitmap. Nothing is kept; the point is
+     * to get the shader and anti-aliased arc code paths loaded before the first real frame.
+     * Safe to call from a worker thread.
+     */
+    void prime() {
+        if (count == 0 || width <= 0 || height <= 0) return;
+
+        Bitmap bitmap = Bitmap.createBitmap(PRIME_SIZE, PRIME_SIZE, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        canvas.scale(PRIME_SIZE / width, PRIME_SIZE / height, 0, 0);
+        Paint itemPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        itemPaint.setStyle(Paint.Style.FILL);
+        Paint slicePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        slicePaint.setStyle(Paint.Style.FILL);
+        draw(canvas, itemPaint, slicePaint, null);
+        bitmap.recycle();
+    }
+
+    /**
+     * Returns the index of the slice containing the given angle, or -1 if there is none.
+     * An angle on the boundary between two slices belongs to the first of them. Slices are
+     * laid out in ascending angle order, so this is a binary search over the end angles.
+     */
+    int indexOfAngle(float angle) {
+        int lo = 0;
+        int hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (endAngles[mid] < angle) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        if (lo < count && startAngles[lo] <= angle) {
+            return lo;
+        }
+        return -1;
+    }
+
+    /**
+     * Builds the closed wedge from the center of oval to its rim between two slice angles.
+     */
+    private static Path wedge(RectF oval, int startAngle, int endAngle) {
+        Path path = new Path();
+        int sweep = endAngle - startAngle;
+        if (sweep >= 360) {
+            // A single slice is a full disc; arcTo() can't express a closed 360 degree arc.
+            path.addOval(oval, Path.Direction.CW);
+        } else {
+            path.moveTo(oval.centerX(), oval.centerY());
+            path.arcTo(oval, 360 - endAngle, sweep);
+            path.close();
+        }
+        return path;
+    }
+
+    /**
+     * Builds the closed band of a slice between two fractions of the pie's radius.
+     */
+    private static Path band(float cx, float cy, float inner, float outer,
+                             int startAngle, int endAngle) {
+        RectF outerOval = new RectF(cx - cx * outer, cy - cy * outer,
+                cx + cx * outer, cy + cy * outer);
+        RectF innerOval = new RectF(cx - cx * inner, cy - cy * inner,
+                cx + cx * inner, cy + cy * inner);
+        Path path = new Path();
+        int sweep = endAngle - startAngle;
+        if (sweep >= 360) {
+            // Opposite directions leave the inner disc as a hole.
+            path.addOval(outerOval, Path.Direction.CW);
+            path.addOval(innerOval, Path.Direction.CCW);
+        } else {
+            path.arcTo(outerOval, 360 - endAngle, sweep, true);
+            path.arcTo(innerOval, 360 - startAngle, -sweep);
+            path.close();
+        }
+        return path;
+    }
+
+    private static int highlight(int color, float strength) {
+        return Color.argb(
+                0xff,
+                Math.min((int) (strength * (float) Color.red(color)), 0xff),
+                Math.min((int) (strength * (float) Color.green(color)), 0xff),
+                Math.min((int) (strength * (float) Color.blue(color)), 0xff)
+        );
+    }
+
+    // There are four values in this gradient, even though only two are necessary, in order
+    // to work around a bug in certain versions of the graphics engine that expects at least
+    // three values if the positions array is non-null.
+    private static Shader sweep(float cx, float cy, int highlight, int color,
+                                int startAngle, int endAngle) {
+        return new SweepGradient(
+                cx,
+                cy,
+                new int[]{
+                        highlight,
+                        highlight,
+                        color,
+                        color,
+                },
+                new float[]{
+                        0,
+                        (float) (360 - endAngle) / 360.0f,
+                        (float) (360 - startAngle) / 360.0f,
+                        1.0f
+                }
+        );
+    }
+}
@@ -0,0 +1,333 @@
+/* Copyright (C) 2012 The Android Open Source Project
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+package com.nennig.life.wheel.charting;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.text.TextPaint;
+import android.text.TextUtils;
+
+import java.util.Arrays;
+
+/**
+ * Places a label for every slice of a {@link PieFrame} around the rim of the pie.
+ * <p>
+ * Each label wants to sit on a circle just outside the rim, level with the middle of its
+ * slice. Labels are drawn upright, left aligned on the right side of the pie and right
+ * aligned on the left side, so what keeps two of them apart is their vertical distance, not
+ * their distance along the rim: near the top and bottom, labels a line apart along the rim
+ * are side by side and their text overlaps. Collisions are therefore resolved the usual
+ * way, per side: the labels of each side form a column, spread apart vertically in
+ * clusters centered on their preferred heights and kept between the top and bottom of the
+ * label circle, so the two columns never cross at the seams. If the rim can't fit every
+ * label, the ones with the lowest scores are elided. Text wider than the allowed label
+ * width is ellipsized. A leader line joins each label to the rim at the middle of its slice.
+ * <p>
+ * Elision, sorting and ellipsizing are done once per data or size change, in O(n log n).
+ * Which side a label falls on depends on the pie's rotation, so the columns are placed
+ * again when the rotation changes; that pass is linear in the number of labels and doesn't
+ * allocate.
+ */
+final class RadialLabelLayout {
+    /**
+     * Number of labels that survived elision. A crowded side may hide a few more of them at
+     * some rotations.
+     */
+    final int count;
+
+    // Per visible label, in ascending order of anchor angle.
+    final int[] slices;
+    final String[] texts;
+    final float[] anchorAngles;
+    private final float[] mScores;
+
+    // The placement for mPlacedRotation, relative to the pie's center with y pointing down.
+    final float[] labelX;
+    final float[] labelY;
+    final boolean[] shown;
+    final boolean[] rightSide;
+    private float mPlacedRotation = Float.NaN;
+
+    final float rimRadius;
+    final float labelRadius;
+
+    // Offset from a label's center line to its baseline.
+    private final float mBaselineOffset;
+    // The vertical distance between the center lines of neighboring labels.
+    private final float mSep;
+    // The most labels one side's column can hold.
+    private final int mPerSide;
+
+    // Scratch space for placing a column, allocated once.
+    private final int[] mColumn;
+    private final float[] mDesired;
+    private final float[] mPlaced;
+    private final float[] mFirst;
+    private final int[] mSize;
+    private final float[] mSum;
+
+    private RadialLabelLayout(int count, float rimRadius, float labelRadius, float baselineOffset,
+                              float sep, int perSide) {
+        this.count = count;
+        this.rimRadius = rimRadius;
+        this.labelRadius = labelRadius;
+        mBaselineOffset = baselineOffset;
+        mSep = sep;
+        mPerSide = perSide;
+        slices = new int[count];
+        texts = new String[count];
+        anchorAngles = new float[count];
+        mScores = new float[count];
+        labelX = new float[count];
+        labelY = new float[count];
+        shown = new boolean[count];
+        rightSide = new boolean[count];
+        mColumn = new int[count];
+        mDesired = new float[count];
+        mPlaced = new float[count];
+        mFirst = new float[count];
+        mSize = new int[count];
+        mSum = new float[count];
+    }
+
+    /**
+     * Lays out the labels of a frame.
+     *
+     * @param frame    The frame whose slices are labelled.
+     * @param paint    The paint the labels will be drawn with.
+     * @param radius   The radius of the pie, in pixels.
+     * @param margin   The distance between the rim and the labels, in pixels.
+     * @param maxWidth The widest a label may be before it is ellipsized, in pixels.
+     */
+    static RadialLabelLayout compute(PieFrame frame, Paint paint, float radius, float margin,
+                                     float maxWidth) {
+        int n = frame.count;
+        float labelRadius = radius + margin;
+        float lineHeight = paint.descent() - paint.ascent();
+        float baselineOffset = -(paint.ascent() + paint.descent()) / 2.0f;
+        // One line of text plus a pixel of air.
+        float sep = lineHeight + 1.0f;
+        if (n == 0 || labelRadius <= 0) {
+            return new RadialLabelLayout(0, radius, labelRadius, baselineOffset, sep, 0);
+        }
+
+        // Each side's column runs from the top of the label circle to the bottom.
+        int perSide = (int) (2.0f * labelRadius / sep) + 1;
+        int capacity = 2 * perSide;
+
+        // Elide the lowest scores if the rim is too small. Sorting packed longs keeps the
+        // sort on primitives: the high word orders by descending score, the low word is
+        // the slice index.
+        boolean[] keep = new boolean[n];
+        int visible = Math.min(n, capacity);
+        if (visible == n) {
+            Arrays.fill(keep, true);
+        } else {
+            long[] byScore = new long[n];
+            for (int i = 0; i < n; i++) {
+                int bits = Float.floatToIntBits(Math.max(frame.percents[i], 0.0f));
+                byScore[i] = ((long) (Integer.MAX_VALUE - bits) << 32) | i;
+            }
+            Arrays.sort(byScore);
+            for (int k = 0; k < visible; k++) {
+                keep[(int) byScore[k]] = true;
+            }
+        }
+
+        // Sort the surviving labels by the middle angle of their slice, in [0, 360). The
+        // angles are never negative, so their bits sort like the floats.
+        long[] byAngle = new long[visible];
+        int m = 0;
+        for (int i = 0; i < n; i++) {
+            if (!keep[i]) continue;
+            float mid = ((frame.startAngles[i] + frame.endAngles[i]) / 2.0f) % 360.0f;
+            if (mid < 0) mid += 360.0f;
+            // Adding zero turns -0 into 0.
+            mid += 0.0f;
+            byAngle[m++] = ((long) Float.floatToIntBits(mid) << 32) | i;
+        }
+        Arrays.sort(byAngle);
+
+        RadialLabelLayout layout = new RadialLabelLayout(visible, radius, labelRadius,
+                baselineOffset, sep, perSide);
+        TextPaint textPaint = new TextPaint(paint);
+        for (int k = 0; k < visible; k++) {
+            int slice = (int) byAngle[k];
+            layout.slices[k] = slice;
+            layout.anchorAngles[k] = Float.intBitsToFloat((int) (byAngle[k] >>> 32));
+            layout.mScores[k] = frame.percents[slice];
+
+            String label = frame.labels[slice];
+            if (maxWidth > 0 && textPaint.measureText(label) > maxWidth) {
+                label = TextUtils.ellipsize(label, textPaint, maxWidth,
+                        TextUtils.TruncateAt.END).toString();
+            }
+            layout.texts[k] = label;
+        }
+        return layout;
+    }
+
+    /**
+     * Places the labels for the pie rotated by the given amount, unless they already are.
+     *
+     * @param rotation The pie's rotation, in degrees clockwise.
+     */
+    void place(float rotation) {
+        if (rotation == mPlacedRotation || count == 0) return;
+        mPlacedRotation = rotation;
+
+        // On screen, in [-90, 270) degrees counterclockwise from the right, the right side
+        // is [-90, 90] and the left side the rest. The anchors are sorted, so on screen
+        // they are too once started at the one place where the angle wraps.
+        int start = 0;
+        float previous = -Float.MAX_VALUE;
+        for (int k = 0; k < count; k++) {
+            float a = screenAngle(k, rotation);
+            if (a < previous) {
+                start = k;
+                break;
+            }
+            previous = a;
+        }
+        int right = 0;
+        while (right < count && screenAngle((start + right) % count, rotation) <= 90.0f) {
+            right++;
+        }
+
+        // Each column goes from top to bottom: the right side by descending angle, the
+        // left side by ascending angle.
+        for (int i = 0; i < right; i++) {
+            mColumn[i] = (start + right - 1 - i) % count;
+        }
+        placeColumn(right, true, rotation);
+        for (int i = 0; i < count - right; i++) {
+            mColumn[i] = (start + right + i) % count;
+        }
+        placeColumn(count - right, false, rotation);
+    }
+
+    private float screenAngle(int k, float rotation) {
+        float a = (anchorAngles[k] - rotation) % 360.0f;
+        if (a < -90.0f) a += 360.0f;
+        if (a >= 270.0f) a -= 360.0f;
+        return a;
+    }
+
+    /**
+     * Places the n labels in mColumn, ordered from top to bottom, on one side of the pie.
+     */
+    private void placeColumn(int n, boolean right, float rotation) {
+        for (int i = 0; i < n; i++) {
+            shown[mColumn[i]] = true;
+            rightSide[mColumn[i]] = right;
+        }
+        // Hide the lowest scores if the column can't hold all of its labels.
+        for (int hide = n - mPerSide; hide > 0; hide--) {
+            int lowest = -1;
+            for (int i = 0; i < n; i++) {
+                int k = mColumn[i];
+                if (shown[k] && (lowest == -1 || mScores[k] < mScores[lowest])) lowest = k;
+            }
+            shown[lowest] = false;
+        }
+
+        int m = 0;
+        for (int i = 0; i < n; i++) {
+            int k = mColumn[i];
+            if (!shown[k]) continue;
+            mColumn[m] = k;
+            mDesired[m++] = -labelRadius
+                    * (float) Math.sin(Math.toRadians(anchorAngles[k] - rotation));
+        }
+        spread(m, -labelRadius, labelRadius);
+
+        for (int i = 0; i < m; i++) {
+            int k = mColumn[i];
+            float y = mPlaced[i];
+            float x = (float) Math.sqrt(Math.max(0.0f, labelRadius * labelRadius - y * y));
+            labelX[k] = right ? x : -x;
+            labelY[k] = y;
+        }
+    }
+
+    /**
+     * Resolve collisions along the column, from mDesired into mPlaced. Each label starts
+     * as its own cluster; whenever a cluster runs into the previous one the two merge and
+     * the merged cluster is centered on the mean of its preferred positions. Every label is
+     * pushed and popped at most once, so this is linear. The first and last clusters are
+     * then pushed inside [lo, hi], which the column is short enough to fit.
+     */
+    private void spread(int n, float lo, float hi) {
+        float sep = mSep;
+        int top = -1;
+        for (int k = 0; k < n; k++) {
+            ++top;
+            mFirst[top] = mDesired[k];
+            mSize[top] = 1;
+            mSum[top] = mDesired[k];
+            while (top > 0 && mFirst[top - 1] + mSize[top - 1] * sep > mFirst[top]) {
+                mSize[top - 1] += mSize[top];
+                mSum[top - 1] += mSum[top];
+                mFirst[top - 1] = mSum[top - 1] / mSize[top - 1]
+                        - (mSize[top - 1] - 1) * sep / 2.0f;
+                --top;
+            }
+        }
+
+        int k = 0;
+        for (int c = 0; c <= top; c++) {
+            for (int j = 0; j < mSize[c]; j++) {
+                mPlaced[k++] = mFirst[c] + j * sep;
+            }
+        }
+        // Both passes keep the separation: a label is only moved as far as the ones
+        // before (or after) it were.
+        for (k = 0; k < n; k++) {
+            mPlaced[k] = Math.max(mPlaced[k], lo + k * sep);
+        }
+        for (k = n - 1; k >= 0; k--) {
+            mPlaced[k] = Math.min(mPlaced[k], hi - (n - 1 - k) * sep);
+        }
+    }
+
+    /**
+     * Draws the labels and their leader lines for the pie rotated by the given amount.
+     * Only positions are transformed; the text itself always stays upright.
+     *
+     * @param cx        The x coordinate of the pie's center on the canvas.
+     * @param cy        The y coordinate of the pie's center on the canvas.
+     * @param rotation  The pie's rotation, in degrees clockwise.
+     * @param textPaint Paint for the text. Its alignment is changed as labels are drawn.
+     * @param linePaint Paint for the leader lines.
+     */
+    void draw(Canvas canvas, float cx, float cy, float rotation, Paint textPaint,
+              Paint linePaint) {
+        place(rotation);
+        Paint.Align align = textPaint.getTextAlign();
+        for (int k = 0; k < count; k++) {
+            if (!shown[k]) continue;
+            double anchor = Math.toRadians(anchorAngles[k] - rotation);
+            float ax = cx + rimRadius * (float) Math.cos(anchor);
+            float ay = cy - rimRadius * (float) Math.sin(anchor);
+            float lx = cx + labelX[k];
+            float ly = cy + labelY[k];
+
+            canvas.drawLine(ax, ay, lx, ly, linePaint);
+            textPaint.setTextAlign(rightSide[k] ? Paint.Align.LEFT : Paint.Align.RIGHT);
+            canvas.drawText(texts[k], lx, ly + mBaselineOffset, textPaint);
+        }
+        textPaint.setTextAlign(align);
+    }
+}
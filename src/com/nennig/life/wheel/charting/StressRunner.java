@@ -0,0 +1,336 @@
+/* Copyright (C) 2012 The Android Open Source Project
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+package com.nennig.life.wheel.charting;
+
+import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
+import android.animation.ValueAnimator;
+import android.content.res.Resources;
+import android.os.Debug;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Drives a synthetic workload against a live {@link PieChart}, so changes to the chart can
+ * be tuned and compared under the same heavy load every time. A run fills the chart with
+ * a number of slices, then for a fixed time:
+ * <ul>
+ * <li>changes slice scores at a steady rate, and in every {@link #REPLACE_EVERY} changes
+ * removes a slice and adds a new one in its place, so the slice list itself churns too,</li>
+ * <li>flings the pie at a steady rate, alternating the direction, and</li>
+ * <li>turns the pie through {@link PieChart#setPieRotation(int)} at a steady speed
+ * between flings.</li>
+ * </ul>
+ * Everything random comes from a seeded {@link Random}, so a run with the same
+ * {@link Config} does the same work. At the end the {@link Listener} gets a {@link Report}
+ * of frame time percentiles, the layout cost, and the allocations and garbage collections
+ * of the run.
+ * <p>
+ * Frames are timed between the ticks of an animator, which the system runs once per frame
+ * on the UI thread. A tick that comes late means a frame was dropped or slow. Must be used
+ * on the UI thread.
+ */
+public class StressRunner {
+    /**
+     * One in this many mutations replaces a slice with a new one.
+     */
+    public static final int REPLACE_EVERY = 10;
+
+    private static final String LABEL_PREFIX = "Stress ";
+
+    /**
+     * What to run. The defaults are a moderate load for about ten seconds.
+     */
+    public static final class Config {
+        /**
+         * The number of slices to fill the chart with.
+         */
+        public int slices = 360;
+        /**
+         * Score changes per second.
+         */
+        public float mutationRate = 30;
+        /**
+         * Flings per second.
+         */
+        public float flingRate = 0.5f;
+        /**
+         * The starting speed of each fling, in degrees per second.
+         */
+        public int flingVelocity = 2000;
+        /**
+         * The speed of the scripted rotation, in degrees per second. Zero turns it off.
+         */
+        public float rotationSpeed = 90;
+        /**
+         * How long the load runs, in milliseconds, after the slices are added.
+         */
+        public long durationMillis = 10000;
+        public long seed = 1;
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "%d slices, %.1f mutations/s, %.2f flings/s at %d deg/s, "
+                            + "rotation %.0f deg/s, %d ms, seed %d",
+                    slices, mutationRate, flingRate, flingVelocity, rotationSpeed,
+                    durationMillis, seed);
+        }
+    }
+
+    /**
+     * The measurements of a run. Frame times are in microseconds.
+     */
+    public static final class Report {
+        public final Config config;
+        public int frames;
+        public long frameP50;
+        public long frameP90;
+        public long frameP99;
+        public long frameMax;
+        public int mutations;
+        public int flings;
+        public long layouts;
+        public long layoutMicros;
+        public int allocations;
+        public int gcCount;
+
+        Report(Config config) {
+            this.config = config;
+        }
+
+        /**
+         * Returns the mean time of one layout, in microseconds.
+         */
+        public long getMeanLayoutMicros() {
+            return layouts == 0 ? 0 : layoutMicros / layouts;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "%s\n%d frames: p50 %.1f ms, p90 %.1f ms, p99 %.1f ms, max %.1f ms\n"
+                            + "%d mutations, %d flings\n"
+                            + "%d layouts: %.1f ms total, %d us mean\n"
+                            + "%d allocations, %d GCs",
+                    config, frames, frameP50 / 1000.0, frameP90 / 1000.0, frameP99 / 1000.0,
+                    frameMax / 1000.0, mutations, flings, layouts, layoutMicros / 1000.0,
+                    getMeanLayoutMicros(), allocations, gcCount);
+        }
+    }
+
+    /**
+     * Interface definition for a callback to be invoked when a run ends.
+     */
+    public interface Listener {
+        void onStressFinished(StressRunner runner, Report report);
+    }
+
+    private final PieChart mChart;
+    private final Config mConfig;
+    private final Random mRandom;
+    private Listener mListener;
+
+    private ValueAnimator mTicker;
+    private long mStartNanos;
+    private long mLastTickNanos;
+    private float mRotationCarry;
+    private long mStartLayouts;
+    private long mStartLayoutNanos;
+
+    // Frame times are collected into a preallocated array so the measuring doesn't itself
+    // allocate on every frame.
+    private long[] mFrameMicros;
+    private int mFrameCount;
+    private int mMutations;
+    private int mFlings;
+
+    // The label of the slice in each slot. A replaced slice gets a label that was never
+    // used, so the chart really removes the old item and inserts a new one, instead of
+    // reviving the old item while its removal is still animating.
+    private String[] mLabels;
+    private int mNextLabel;
+
+    private boolean mRunning = false;
+
+    public StressRunner(PieChart chart, Config config) {
+        mChart = chart;
+        mConfig = config;
+        mRandom = new Random(config.seed);
+    }
+
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    public boolean isRunning() {
+        return mRunning;
+    }
+
+    /**
+     * Replace the chart's slices with the configured number and start the load. The chart
+     * should already be laid out, so the first frames aren't spent sizing it.
+     */
+    public void start() {
+        if (mRunning) {
+            throw new IllegalStateException("already running");
+        }
+        mRunning = true;
+        mRandom.setSeed(mConfig.seed);
+        mChart.removeAll();
+        mLabels = new String[mConfig.slices];
+        mNextLabel = 0;
+        for (int i = 0; i < mConfig.slices; i++) {
+            addSlice(i, mRandom.nextInt(11));
+        }
+
+        // Room for 120 frames a second; more than that just grows the array.
+        mFrameMicros = new long[(int) Math.max(64, mConfig.durationMillis * 120 / 1000)];
+        mFrameCount = 0;
+        mMutations = 0;
+        mFlings = 0;
+        mRotationCarry = 0;
+        mStartLayouts = mChart.getLayoutCount();
+        mStartLayoutNanos = mChart.getLayoutNanos();
+
+        mTicker = ValueAnimator.ofFloat(0, 1);
+        mTicker.setDuration(mConfig.durationMillis);
+        mTicker.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
+            @Override
+            public void onAnimationUpdate(ValueAnimator animation) {
+                tick();
+            }
+        });
+        mTicker.addListener(new AnimatorListenerAdapter() {
+            @Override
+            public void onAnimationEnd(Animator animation) {
+                finish();
+            }
+        });
+
+        Debug.resetGlobalAllocCount();
+        Debug.resetGlobalGcInvocationCount();
+        Debug.startAllocCounting();
+        mStartNanos = System.nanoTime();
+        mLastTickNanos = mStartNanos;
+        mTicker.start();
+    }
+
+    /**
+     * End the run early. The listener still gets a report of what ran so far.
+     */
+    public void stop() {
+        if (mRunning) {
+            // Ending the animator calls finish().
+            mTicker.end();
+        }
+    }
+
+    private void tick() {
+        long now = System.nanoTime();
+        // The first tick only marks the start; there is no frame before it to time.
+        if (mLastTickNanos != mStartNanos) {
+            if (mFrameCount == mFrameMicros.length) {
+                mFrameMicros = Arrays.copyOf(mFrameMicros, mFrameCount * 2);
+            }
+            mFrameMicros[mFrameCount++] = (now - mLastTickNanos) / 1000;
+        }
+        float frameSeconds = (now - mLastTickNanos) / 1e9f;
+        mLastTickNanos = now;
+        float elapsed = (now - mStartNanos) / 1e9f;
+
+        // Catch up on whatever was due since the last frame, so the totals follow the
+        // configured rates however long the frames take.
+        int mutationsDue = (int) (elapsed * mConfig.mutationRate);
+        while (mMutations < mutationsDue) {
+            mutate();
+        }
+
+        int flingsDue = (int) (elapsed * mConfig.flingRate);
+        if (mFlings < flingsDue) {
+            mFlings = flingsDue;
+            mChart.fling(mFlings % 2 == 0 ? -mConfig.flingVelocity : mConfig.flingVelocity);
+        } else if (mConfig.rotationSpeed != 0) {
+            mRotationCarry += mConfig.rotationSpeed * frameSeconds;
+            int degrees = (int) mRotationCarry;
+            if (degrees != 0) {
+                mRotationCarry -= degrees;
+                mChart.setPieRotation(mChart.getPieRotation() + degrees);
+            }
+        }
+    }
+
+    private void mutate() {
+        mMutations++;
+        if (mConfig.slices == 0) return;
+        int slice = mRandom.nextInt(mConfig.slices);
+        int score = mRandom.nextInt(11);
+        if (mMutations % REPLACE_EVERY == 0) {
+            mChart.removeItem(mLabels[slice]);
+            addSlice(slice, score);
+        } else {
+            mChart.updateItem(mLabels[slice], score);
+        }
+    }
+
+    /**
+     * Add a slice with a new label to a slot, colored like one of the built-in categories,
+     * so neighbouring slices differ the way they do in a real wheel.
+     */
+    private void addSlice(int slice, int score) {
+        Resources res = mChart.getResources();
+        int category = slice % PieConstants.getCatalog(res).getBuiltInCount();
+        mLabels[slice] = LABEL_PREFIX + mNextLabel++;
+        mChart.addItem(mLabels[slice], PieConstants.getSliceItemPercentage(score),
+                PieConstants.getSliceColor(res, category), PieConstants.getItemColor(res, category));
+    }
+
+    private void finish() {
+        if (!mRunning) return;
+        mRunning = false;
+        Debug.stopAllocCounting();
+
+        Report report = new Report(mConfig);
+        report.allocations = Debug.getGlobalAllocCount();
+        report.gcCount = Debug.getGlobalGcInvocationCount();
+        report.mutations = mMutations;
+        report.flings = mFlings;
+        report.layouts = mChart.getLayoutCount() - mStartLayouts;
+        report.layoutMicros = (mChart.getLayoutNanos() - mStartLayoutNanos) / 1000;
+
+        long[] frames = Arrays.copyOf(mFrameMicros, mFrameCount);
+        Arrays.sort(frames);
+        report.frames = frames.length;
+        report.frameP50 = percentile(frames, 50);
+        report.frameP90 = percentile(frames, 90);
+        report.frameP99 = percentile(frames, 99);
+        report.frameMax = frames.length == 0 ? 0 : frames[frames.length - 1];
+
+        if (mListener != null) {
+            mListener.onStressFinished(this, report);
+        }
+    }
+
+    /**
+     * Returns the nearest-rank percentile of sorted values, or 0 if there are none.
+     */
+    private static long percentile(long[] sorted, int percent) {
+        if (sorted.length == 0) return 0;
+        int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+}
@@ -0,0 +1,259 @@
+/* Copyright (C) 2012 The Android Open Source Project
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+package com.nennig.life.wheel.charting;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes wheels as an SVG document. Each shape is written as soon as it is described, so
+ * memory use doesn't grow with the number of wheels; a report of thousands of wheels can
+ * be streamed straight to a file.
+ * <pre>
+ * SvgExporter svg = new SvgExporter(out, 400, 400 * wheels.size());
+ * for (int i = 0; i &lt; wheels.size(); i++) svg.write(wheels.get(i), 0, 400 * i);
+ * svg.finish();
+ * </pre>
+ */
+public class SvgExporter extends VectorExporter {
+    private final Writer mOut;
+    private final StringBuilder mBuffer = new StringBuilder(256);
+    private boolean mSubpathOpen = false;
+    private int mGradientCount = 0;
+    private boolean mFinished = false;
+
+    /**
+     * Start a document. The size can't change later, so for a report lay the wheels out
+     * before starting.
+     *
+     * @param width  The width of the document, in pixels.
+     * @param height The height of the document, in pixels.
+     */
+    public SvgExporter(Writer out, float width, float height) throws IOException {
+        mOut = out;
+        StringBuilder sb = mBuffer;
+        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        sb.append("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"");
+        appendNumber(sb, width);
+        sb.append("\" height=\"");
+        appendNumber(sb, height);
+        sb.append("\" viewBox=\"0 0 ");
+        appendNumber(sb, width);
+        sb.append(' ');
+        appendNumber(sb, height);
+        sb.append("\">\n");
+        flushBuffer();
+    }
+
+    /**
+     * Write a single wheel as a document of its own size.
+     */
+    public static void export(VectorWheel wheel, Writer out) throws IOException {
+        SvgExporter svg = new SvgExporter(out, wheel.getWidth(), wheel.getHeight());
+        svg.write(wheel, 0, 0);
+        svg.finish();
+    }
+
+    /**
+     * Write a wheel with its top left corner at a point of the document.
+     */
+    public void write(VectorWheel wheel, float x, float y) throws IOException {
+        if (mFinished) {
+            throw new IllegalStateException("document is finished");
+        }
+        writeWheel(wheel, x, y);
+    }
+
+    /**
+     * End the document and flush the writer. The writer is not closed.
+     */
+    public void finish() throws IOException {
+        if (mFinished) return;
+        mFinished = true;
+        mOut.write("</svg>\n");
+        mOut.flush();
+    }
+
+    @Override
+    void beginPie(float left, float top, float width, float height, float rotation)
+            throws IOException {
+        StringBuilder sb = mBuffer;
+        sb.append("<g transform=\"translate(");
+        appendNumber(sb, left);
+        sb.append(' ');
+        appendNumber(sb, top);
+        sb.append(')');
+        if (rotation != 0) {
+            sb.append(" rotate(");
+            appendNumber(sb, rotation);
+            sb.append(' ');
+            appendNumber(sb, width / 2.0f);
+            sb.append(' ');
+            appendNumber(sb, height / 2.0f);
+            sb.append(')');
+        }
+        sb.append("\">\n");
+        flushBuffer();
+    }
+
+    @Override
+    void endPie() throws IOException {
+        mOut.write("</g>\n");
+    }
+
+    @Override
+    void moveTo(float x, float y) {
+        mBuffer.append('M');
+        appendPoint(x, y);
+        mSubpathOpen = true;
+    }
+
+    @Override
+    void arc(float cx, float cy, float rx, float ry, float startAngle, float sweep) {
+        StringBuilder sb = mBuffer;
+        sb.append(mSubpathOpen ? 'L' : 'M');
+        appendPoint(cx, cy, rx, ry, startAngle);
+        mSubpathOpen = true;
+
+        // An SVG arc can't end where it starts, so a full circle takes two.
+        int parts = Math.abs(sweep) > 180 ? 2 : 1;
+        float step = sweep / parts;
+        for (int i = 1; i <= parts; i++) {
+            sb.append('A');
+            appendNumber(sb, rx);
+            sb.append(' ');
+            appendNumber(sb, ry);
+            sb.append(sweep > 0 ? " 0 0 1 " : " 0 0 0 ");
+            appendPoint(cx, cy, rx, ry, startAngle + step * i);
+        }
+    }
+
+    @Override
+    void closePath() {
+        mBuffer.append('Z');
+        mSubpathOpen = false;
+    }
+
+    @Override
+    void fill(boolean evenOdd, float x1, float y1, int color1, float x2, float y2,
+              int color2) throws IOException {
+        // The gradient goes first so the path can be streamed out of the buffer after it.
+        String path = mBuffer.toString();
+        mBuffer.setLength(0);
+        mSubpathOpen = false;
+
+        StringBuilder sb = mBuffer;
+        int id = mGradientCount++;
+        sb.append("<linearGradient id=\"g").append(id)
+                .append("\" gradientUnits=\"userSpaceOnUse\" x1=\"");
+        appendNumber(sb, x1);
+        sb.append("\" y1=\"");
+        appendNumber(sb, y1);
+        sb.append("\" x2=\"");
+        appendNumber(sb, x2);
+        sb.append("\" y2=\"");
+        appendNumber(sb, y2);
+        sb.append("\"><stop offset=\"0\" stop-color=\"");
+        appendColor(sb, color1);
+        sb.append("\"/><stop offset=\"1\" stop-color=\"");
+        appendColor(sb, color2);
+        sb.append("\"/></linearGradient>\n<path fill=\"url(#g").append(id).append(")\"");
+        if (evenOdd) sb.append(" fill-rule=\"evenodd\"");
+        sb.append(" d=\"").append(path).append("\"/>\n");
+        flushBuffer();
+    }
+
+    @Override
+    void drawPointer(float x1, float y1, float x2, float y2, float radius, int color)
+            throws IOException {
+        StringBuilder sb = mBuffer;
+        sb.append("<line x1=\"");
+        appendNumber(sb, x1);
+        sb.append("\" y1=\"");
+        appendNumber(sb, y1);
+        sb.append("\" x2=\"");
+        appendNumber(sb, x2);
+        sb.append("\" y2=\"");
+        appendNumber(sb, y2);
+        sb.append("\" stroke=\"");
+        appendColor(sb, color);
+        sb.append("\" stroke-width=\"1\"/>\n<circle cx=\"");
+        appendNumber(sb, x2);
+        sb.append("\" cy=\"");
+        appendNumber(sb, y2);
+        sb.append("\" r=\"");
+        appendNumber(sb, radius);
+        sb.append("\" fill=\"");
+        appendColor(sb, color);
+        sb.append("\"/>\n");
+        flushBuffer();
+    }
+
+    @Override
+    void drawLabel(String label, float x, float baseline, boolean alignRight, float textSize,
+                   float textWidth, int color) throws IOException {
+        StringBuilder sb = mBuffer;
+        sb.append("<text x=\"");
+        appendNumber(sb, x);
+        sb.append("\" y=\"");
+        appendNumber(sb, baseline);
+        sb.append("\" font-family=\"sans-serif\" font-size=\"");
+        appendNumber(sb, textSize);
+        sb.append("\" fill=\"");
+        appendColor(sb, color);
+        sb.append(alignRight ? "\" text-anchor=\"end\">" : "\">");
+        for (int i = 0; i < label.length(); i++) {
+            char c = label.charAt(i);
+            switch (c) {
+                case '&':
+                    sb.append("&amp;");
+                    break;
+                case '<':
+                    sb.append("&lt;");
+                    break;
+                case '>':
+                    sb.append("&gt;");
+                    break;
+                default:
+                    sb.append(c);
+            }
+        }
+        sb.append("</text>\n");
+        flushBuffer();
+    }
+
+    private void appendPoint(float x, float y) {
+        appendNumber(mBuffer, x);
+        mBuffer.append(' ');
+        appendNumber(mBuffer, y);
+    }
+
+    private void appendPoint(float cx, float cy, float rx, float ry, float angle) {
+        double a = Math.toRadians(angle);
+        appendPoint(cx + rx * (float) Math.cos(a), cy + ry * (float) Math.sin(a));
+    }
+
+    private static void appendColor(StringBuilder sb, int color) {
+        sb.append('#');
+        for (int shift = 20; shift >= 0; shift -= 4) {
+            sb.append(Character.forDigit((color >> shift) & 0xf, 16));
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        mOut.append(mBuffer);
+        mBuffer.setLength(0);
+    }
+}
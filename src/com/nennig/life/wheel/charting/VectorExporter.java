@@ -0,0 +1,174 @@
+/* Copyright (C) 2012 The Android Open Source Project
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+package com.nennig.life.wheel.charting;
+
+import java.io.IOException;
+
+/**
+ * The part of {@link SvgExporter} and {@link PdfExporter} that doesn't depend on the output
+ * format: it walks a {@link VectorWheel} slice by slice, the same way
+ * {@link PieFrame#draw} does, and describes each shape as path operations and a fill.
+ * <p>
+ * Neither format has a sweep gradient, so each slice's gradient from its highlight color
+ * to its base color is drawn as a linear gradient along the chord between the slice's two
+ * edges. For slices narrower than a half circle this is close to the sweep on screen.
+ */
+abstract class VectorExporter {
+    // Screen angles grow clockwise from 3 o'clock, the same as Canvas arcs.
+
+    /**
+     * Start a wheel's pie. Everything up to {@link #endPie()} is in the pie's own
+     * coordinates, with the origin at its top left, rotated clockwise about its center.
+     */
+    abstract void beginPie(float left, float top, float width, float height, float rotation)
+            throws IOException;
+
+    abstract void endPie() throws IOException;
+
+    abstract void moveTo(float x, float y);
+
+    /**
+     * Add an elliptical arc, joined to the current point by a straight line, or starting a
+     * new subpath if the last one was closed.
+     *
+     * @param startAngle Where the arc starts, in degrees.
+     * @param sweep      How far it goes, in degrees; negative is counterclockwise. At most
+     *                   360 in either direction.
+     */
+    abstract void arc(float cx, float cy, float rx, float ry, float startAngle, float sweep);
+
+    abstract void closePath();
+
+    /**
+     * Fill the current path with a linear gradient and start a new path.
+     *
+     * @param evenOdd True to leave regions enclosed twice unfilled, for rings.
+     */
+    abstract void fill(boolean evenOdd, float x1, float y1, int color1,
+                       float x2, float y2, int color2) throws IOException;
+
+    abstract void drawPointer(float x1, float y1, float x2, float y2, float radius, int color)
+            throws IOException;
+
+    /**
+     * @param x         Where the text is aligned to.
+     * @param baseline  The baseline of the text.
+     * @param textWidth The width of the text as measured on screen.
+     */
+    abstract void drawLabel(String label, float x, float baseline, boolean alignRight,
+                            float textSize, float textWidth, int color) throws IOException;
+
+    /**
+     * Write a wheel with its top left corner at a point.
+     */
+    final void writeWheel(VectorWheel wheel, float x, float y) throws IOException {
+        PieFrame f = wheel.frame;
+        float cx = f.width / 2.0f;
+        float cy = f.height / 2.0f;
+        float band = 1.0f / f.ringCount;
+
+        beginPie(x + wheel.pieLeft, y + wheel.pieTop, f.width, f.height, wheel.rotation);
+        for (int i = 0; i < f.count; i++) {
+            // The slice spans the screen angles from 360 - end to 360 - start; its
+            // gradient runs from the highlight at the first edge to the base color at the
+            // second. A lone slice gets an axis across the whole disc.
+            float from = 360 - f.endAngles[i];
+            float sweep = f.endAngles[i] - f.startAngles[i];
+            double a1 = Math.toRadians(from);
+            double a2 = Math.toRadians(sweep >= 360 ? from + 180 : from + sweep);
+            float gx1 = cx + cx * (float) Math.cos(a1);
+            float gy1 = cy + cy * (float) Math.sin(a1);
+            float gx2 = cx + cx * (float) Math.cos(a2);
+            float gy2 = cy + cy * (float) Math.sin(a2);
+
+            wedge(cx, cy, cx, cy, from, sweep);
+            fill(false, gx1, gy1, f.itemHighlights[i], gx2, gy2, f.itemColors[i]);
+
+            for (int r = 1; r < f.ringCount; r++) {
+                float p = f.ringPercents[r - 1][i];
+                if (p <= 0) continue;
+                float inner = r * band;
+                float outer = inner + band * p;
+                if (sweep >= 360) {
+                    arc(cx, cy, cx * outer, cy * outer, 0, 360);
+                    closePath();
+                    arc(cx, cy, cx * inner, cy * inner, 0, 360);
+                    closePath();
+                } else {
+                    arc(cx, cy, cx * outer, cy * outer, from, sweep);
+                    arc(cx, cy, cx * inner, cy * inner, from + sweep, -sweep);
+                    closePath();
+                }
+                fill(true, gx1, gy1, f.sliceHighlights[i], gx2, gy2, f.sliceColors[i]);
+            }
+
+            // A zero score has no visible wedge.
+            float percent = f.percents[i];
+            if (percent <= 0) continue;
+            wedge(cx, cy, cx * percent * band, cy * percent * band, from, sweep);
+            fill(false, gx1, gy1, f.sliceHighlights[i], gx2, gy2, f.sliceColors[i]);
+        }
+        endPie();
+
+        if (wheel.hasPointer) {
+            drawPointer(x + wheel.textX, y + wheel.pointerY, x + wheel.pointerX,
+                    y + wheel.pointerY, wheel.pointerRadius, wheel.textColor);
+        }
+        if (wheel.label != null) {
+            drawLabel(wheel.label, x + wheel.textX, y + wheel.textY, wheel.alignRight,
+                    wheel.textSize, wheel.labelWidth, wheel.textColor);
+        }
+    }
+
+    private void wedge(float cx, float cy, float rx, float ry, float from, float sweep) {
+        if (sweep >= 360) {
+            arc(cx, cy, rx, ry, 0, 360);
+        } else {
+            moveTo(cx, cy);
+            arc(cx, cy, rx, ry, from, sweep);
+        }
+        closePath();
+    }
+
+    /**
+     * Append a coordinate with at most two decimals and no exponent, independent of the
+     * locale. Hundredths of a pixel are finer than either format needs.
+     */
+    static void appendNumber(StringBuilder sb, float value) {
+        appendNumber(sb, value, 2);
+    }
+
+    /**
+     * Append a number with at most the given number of decimals and no exponent.
+     */
+    static void appendNumber(StringBuilder sb, double value, int decimals) {
+        long scale = 1;
+        for (int i = 0; i < decimals; i++) scale *= 10;
+        long units = Math.round(value * scale);
+        if (units < 0) {
+            sb.append('-');
+            units = -units;
+        }
+        sb.append(units / scale);
+        long fraction = units % scale;
+        if (fraction == 0) return;
+        sb.append('.');
+        // Leading zeros are written, trailing ones are not.
+        for (long digit = scale / 10; fraction != 0; digit /= 10) {
+            sb.append((char) ('0' + fraction / digit));
+            fraction %= digit;
+        }
+    }
+}
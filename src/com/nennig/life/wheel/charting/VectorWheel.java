@@ -0,0 +1,100 @@
+/* Copyright (C) 2012 The Android Open Source Project
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+package com.nennig.life.wheel.charting;
+
+import android.content.res.Resources;
+
+import com.nennig.life.wheel.data.WheelSnapshot;
+
+/**
+ * Everything needed to draw a wheel as vector graphics, for {@link SvgExporter} and
+ * {@link PdfExporter}: the slice geometry of a laid out {@link PieFrame}, where the pie sits
+ * and how it is rotated, and optionally the label and the pointer joining it to the pie.
+ * Coordinates are in pixels with the origin at the top left, as on a canvas.
+ * <p>
+ * Get one from {@link PieChart#toVectorWheel()} to export what is on screen, or from
+ * {@link #of(WheelSnapshot, Resources, float, float)} to export a stored wheel without a
+ * view.
+ */
+public final class VectorWheel {
+    final PieFrame frame;
+    final float width;
+    final float height;
+    final float pieLeft;
+    final float pieTop;
+    final float rotation;
+
+    // The label, or null for none. textX is where the text is aligned to, textY its
+    // baseline.
+    final String label;
+    final float textX;
+    final float textY;
+    final boolean alignRight;
+    final float textSize;
+    final float labelWidth;
+    final int textColor;
+
+    final boolean hasPointer;
+    final float pointerX;
+    final float pointerY;
+    final float pointerRadius;
+
+    VectorWheel(PieFrame frame, float width, float height, float pieLeft, float pieTop,
+                float rotation, String label, float textX, float textY, boolean alignRight,
+                float textSize, float labelWidth, int textColor, boolean hasPointer,
+                float pointerX, float pointerY, float pointerRadius) {
+        this.frame = frame;
+        this.width = width;
+        this.height = height;
+        this.pieLeft = pieLeft;
+        this.pieTop = pieTop;
+        this.rotation = rotation;
+        this.label = label;
+        this.textX = textX;
+        this.textY = textY;
+        this.alignRight = alignRight;
+        this.textSize = textSize;
+        this.labelWidth = labelWidth;
+        this.textColor = textColor;
+        this.hasPointer = hasPointer;
+        this.pointerX = pointerX;
+        this.pointerY = pointerY;
+        this.pointerRadius = pointerRadius;
+    }
+
+    /**
+     * Lays out a stored wheel as a bare pie filling a square, slices in canonical order.
+     * Safe to call from any thread.
+     *
+     * @param size              The width and height of the pie, in pixels.
+     * @param highlightStrength How much brighter the highlight end of each slice's gradient
+     *                          is, as for {@link PieChart#setHighlightStrength(float)}.
+     */
+    public static VectorWheel of(WheelSnapshot wheel, Resources res, float size,
+                                 float highlightStrength) {
+        PieFrame frame = PieFrame.compute(PieFrame.Spec.of(wheel.canonical(), res,
+                highlightStrength, size, size));
+        return new VectorWheel(frame, size, size, 0, 0, 0, null, 0, 0, false, 0, 0, 0,
+                false, 0, 0, 0);
+    }
+
+    public float getWidth() {
+        return width;
+    }
+
+    public float getHeight() {
+        return height;
+    }
+}
@@ -0,0 +1,73 @@
+/* Copyright (C) 2012 The Android Open Source Project
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+package com.nennig.life.wheel.charting;
+
+import android.content.Context;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.AbsListView;
+import android.widget.BaseAdapter;
+
+import com.nennig.life.wheel.data.WheelSnapshot;
+
+import java.util.List;
+
+/**
+ * Adapter for a grid of past wheels. Cells are {@link MiniWheelView}s that are recycled by
+ * the grid; each one is rendered off the main thread by a shared {@link MiniWheelRenderer}.
+ * Register the adapter as the grid's {@link AbsListView.RecyclerListener} so that cells
+ * scrolled off screen cancel their renders and give their bitmaps back right away.
+ */
+public class WheelHistoryAdapter extends BaseAdapter implements AbsListView.RecyclerListener {
+    private final Context mContext;
+    private final List<WheelSnapshot> mWheels;
+    private final MiniWheelRenderer mRenderer;
+
+    public WheelHistoryAdapter(Context context, List<WheelSnapshot> wheels,
+                               MiniWheelRenderer renderer) {
+        mContext = context;
+        mWheels = wheels;
+        mRenderer = renderer;
+    }
+
+    public int getCount() {
+        return mWheels.size();
+    }
+
+    public WheelSnapshot getItem(int position) {
+        return mWheels.get(position);
+    }
+
+    public long getItemId(int position) {
+        return position;
+    }
+
+    public View getView(int position, View convertView, ViewGroup parent) {
+        MiniWheelView view = (MiniWheelView) convertView;
+        if (view == null) {
+            view = new MiniWheelView(mContext);
+            view.setLayoutParams(new AbsListView.LayoutParams(
+                    mRenderer.getSize(), mRenderer.getSize()));
+        }
+        view.setWheel(getItem(position), mRenderer);
+        return view;
+    }
+
+    public void onMovedToScrapHeap(View view) {
+        if (view instanceof MiniWheelView) {
+            ((MiniWheelView) view).recycle();
+        }
+    }
+}
@@ -0,0 +1,384 @@
+package com.nennig.life.wheel.data;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+
+/**
+ * Every category a wheel can have: the built-in ones from the category dropdown followed
+ * by the ones the user made up.
+ * <p>
+ * Each category has a stable id. The built-in categories keep their position in the
+ * dropdown as their id, so statistics indexed by dropdown position keep working, and user
+ * categories are numbered after them. Ids of removed categories are never handed out
+ * again. Labels are unique ignoring case.
+ * <p>
+ * For type-ahead search the labels are also kept in a sorted array of case-folded keys.
+ * The categories starting with a prefix are a contiguous run of that array, found by two
+ * binary searches, and a {@link Query} that is extended one keystroke at a time only
+ * searches within its previous run. Adding a category shifts the array once, which for a
+ * few hundred categories is a copy of a few hundred references.
+ * <p>
+ * The catalog is synchronized, so a search can run on a filter thread while categories
+ * are added on the UI thread.
+ */
+public final class CategoryCatalog {
+    private static final String HEADER = "LifeWheel categories 1";
+    private static final String CHARSET = "UTF-8";
+
+    private final int mBuiltInCount;
+
+    // By id; null for removed categories.
+    private String[] mLabels;
+    private int mNextId;
+
+    // Folded label to id, for exact lookup.
+    private final HashMap<String, Integer> mIds = new HashMap<String, Integer>();
+
+    // The prefix index: folded labels in ascending order and the id of each.
+    private String[] mKeys;
+    private int[] mSortedIds;
+    private int mCount = 0;
+
+    // Bumped on every change so queries know their cached run is stale.
+    private int mModCount = 0;
+
+    /**
+     * @param builtIns The labels of the category dropdown, in dropdown order.
+     */
+    public CategoryCatalog(String[] builtIns) {
+        int capacity = Math.max(16, builtIns.length * 2);
+        mLabels = new String[capacity];
+        mKeys = new String[capacity];
+        mSortedIds = new int[capacity];
+        for (String label : builtIns) {
+            if (add(label) != mNextId - 1) {
+                throw new IllegalArgumentException("duplicate built-in category " + label);
+            }
+        }
+        mBuiltInCount = builtIns.length;
+    }
+
+    /**
+     * Returns the number of built-in categories. Their ids are 0 up to this count.
+     */
+    public int getBuiltInCount() {
+        return mBuiltInCount;
+    }
+
+    public boolean isBuiltIn(int id) {
+        return id >= 0 && id < mBuiltInCount;
+    }
+
+    /**
+     * Returns the number of categories.
+     */
+    public synchronized int size() {
+        return mCount;
+    }
+
+    /**
+     * Returns one more than the largest id ever handed out, for sizing arrays indexed by
+     * category id.
+     */
+    public synchronized int getIdLimit() {
+        return mNextId;
+    }
+
+    /**
+     * Returns the label of a category, or null if there is no category with the id.
+     */
+    public synchronized String getLabel(int id) {
+        return id >= 0 && id < mNextId ? mLabels[id] : null;
+    }
+
+    /**
+     * Returns the id of the category with a label, ignoring case, or -1 if there is none.
+     */
+    public synchronized int getId(String label) {
+        Integer id = mIds.get(fold(label));
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Add a user category.
+     *
+     * @return The id of the new category, or of the existing one if a category with the
+     * label already exists.
+     */
+    public synchronized int add(String label) {
+        label = label.trim();
+        if (label.length() == 0) {
+            throw new IllegalArgumentException("label can't be empty");
+        }
+        if (label.indexOf('\t') >= 0 || label.indexOf('\n') >= 0) {
+            throw new IllegalArgumentException("label can't contain tabs or newlines: " + label);
+        }
+        String key = fold(label);
+        Integer existing = mIds.get(key);
+        if (existing != null) return existing;
+
+        int id = mNextId++;
+        if (id >= mLabels.length) {
+            mLabels = Arrays.copyOf(mLabels, Math.max(id + 1, mLabels.length * 2));
+        }
+        mLabels[id] = label;
+        mIds.put(key, id);
+        insert(key, id);
+        return id;
+    }
+
+    /**
+     * Remove a user category. Its id is retired.
+     *
+     * @return True if the category was removed, false if there was none with the id.
+     * @throws IllegalArgumentException If the category is built in.
+     */
+    public synchronized boolean remove(int id) {
+        if (isBuiltIn(id)) {
+            throw new IllegalArgumentException("can't remove built-in category " + id);
+        }
+        String label = getLabel(id);
+        if (label == null) return false;
+
+        String key = fold(label);
+        int index = lowerBound(key, 0, mCount);
+        System.arraycopy(mKeys, index + 1, mKeys, index, mCount - index - 1);
+        System.arraycopy(mSortedIds, index + 1, mSortedIds, index, mCount - index - 1);
+        mKeys[--mCount] = null;
+        mLabels[id] = null;
+        mIds.remove(key);
+        mModCount++;
+        return true;
+    }
+
+    /**
+     * Find the categories whose labels start with a prefix, ignoring case.
+     *
+     * @param prefix The prefix. An empty prefix matches every category.
+     * @param ids    Receives the ids of the first matches, in label order.
+     * @return The number of ids written to ids.
+     */
+    public int search(CharSequence prefix, int[] ids) {
+        return new Query(this).search(prefix, ids);
+    }
+
+    /**
+     * Write the user categories to a file. The file is replaced atomically.
+     */
+    public synchronized void save(File file) throws IOException {
+        File partial = new File(file.getPath() + ".part");
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(partial), CHARSET));
+        try {
+            out.write(HEADER);
+            out.write('\t');
+            out.write(Integer.toString(mNextId));
+            out.write('\n');
+            for (int id = mBuiltInCount; id < mNextId; id++) {
+                if (mLabels[id] == null) continue;
+                out.write(Integer.toString(id));
+                out.write('\t');
+                out.write(mLabels[id]);
+                out.write('\n');
+            }
+        } finally {
+            out.close();
+        }
+        if (!partial.renameTo(file)) {
+            throw new IOException("can't replace " + file);
+        }
+    }
+
+    /**
+     * Add the user categories saved by {@link #save(File)}, keeping their ids. Does nothing
+     * if the file doesn't exist.
+     * <p>
+     * The whole file is read before anything is added, so a malformed file leaves the
+     * catalog as it was. A saved category that can't be added as it was saved doesn't stop
+     * the ones after it. If its label is already taken, e.g. by a built-in category added
+     * in a later release, the existing category stands in for it and its id stays retired.
+     * If only its id is taken, it gets a new id after every saved one.
+     *
+     * @throws IOException If the file is malformed.
+     */
+    public synchronized void load(File file) throws IOException {
+        if (!file.exists()) return;
+        int nextId;
+        ArrayList<Integer> ids = new ArrayList<Integer>();
+        ArrayList<String> labels = new ArrayList<String>();
+        BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), CHARSET));
+        try {
+            String header = in.readLine();
+            if (header == null || !header.startsWith(HEADER + '\t')) {
+                throw new IOException("not a category file");
+            }
+            nextId = parseId(header.substring(HEADER.length() + 1));
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.length() == 0) continue;
+                int tab = line.indexOf('\t');
+                if (tab <= 0) {
+                    throw new IOException("malformed category: " + line);
+                }
+                int id = parseId(line.substring(0, tab));
+                String label = line.substring(tab + 1).trim();
+                // Saved ids are ascending and below the saved next id.
+                int previous = ids.isEmpty() ? -1 : ids.get(ids.size() - 1);
+                if (id <= previous || id >= nextId || label.length() == 0
+                        || label.indexOf('\t') >= 0) {
+                    throw new IOException("malformed category: " + line);
+                }
+                ids.add(id);
+                labels.add(label);
+            }
+        } finally {
+            in.close();
+        }
+
+        int firstFree = mNextId;
+        ArrayList<String> moved = new ArrayList<String>();
+        for (int i = 0; i < ids.size(); i++) {
+            int id = ids.get(i);
+            String label = labels.get(i);
+            if (mIds.containsKey(fold(label))) continue;
+            if (id < firstFree) {
+                moved.add(label);
+                continue;
+            }
+            // Skip over retired ids up to this one.
+            mNextId = id;
+            add(label);
+        }
+        mNextId = Math.max(mNextId, nextId);
+        if (mNextId > mLabels.length) {
+            mLabels = Arrays.copyOf(mLabels, mNextId);
+        }
+        for (String label : moved) {
+            add(label);
+        }
+    }
+
+    private static int parseId(String s) throws IOException {
+        try {
+            return Integer.parseInt(s);
+        } catch (NumberFormatException e) {
+            throw new IOException("malformed id: " + s);
+        }
+    }
+
+    private void insert(String key, int id) {
+        int index = lowerBound(key, 0, mCount);
+        if (mCount == mKeys.length) {
+            mKeys = Arrays.copyOf(mKeys, mCount * 2);
+            mSortedIds = Arrays.copyOf(mSortedIds, mCount * 2);
+        }
+        System.arraycopy(mKeys, index, mKeys, index + 1, mCount - index);
+        System.arraycopy(mSortedIds, index, mSortedIds, index + 1, mCount - index);
+        mKeys[index] = key;
+        mSortedIds[index] = id;
+        mCount++;
+        mModCount++;
+    }
+
+    /**
+     * Returns the first index in [lo, hi) whose key is not less than key.
+     */
+    private int lowerBound(String key, int lo, int hi) {
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (mKeys[mid].compareTo(key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Returns the first index in [lo, hi) whose key doesn't start with prefix, given that
+     * no key in the range is less than prefix.
+     */
+    private int prefixEnd(String prefix, int lo, int hi) {
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (mKeys[mid].startsWith(prefix)) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private static String fold(CharSequence label) {
+        return label.toString().trim().toLowerCase(Locale.US);
+    }
+
+    /**
+     * An incremental prefix search. While each prefix extends the previous one, as it does
+     * when the user types, only the matches of the previous prefix are searched.
+     * <p>
+     * A query is not thread safe, but the catalog may change between searches.
+     */
+    public static final class Query {
+        private final CategoryCatalog mCatalog;
+        private String mPrefix = null;
+        private int mModCount;
+        private int mStart;
+        private int mEnd;
+
+        public Query(CategoryCatalog catalog) {
+            mCatalog = catalog;
+        }
+
+        /**
+         * Find the categories whose labels start with a prefix, ignoring case.
+         *
+         * @param prefix The prefix. An empty prefix matches every category.
+         * @param ids    Receives the ids of the first matches, in label order.
+         * @return The number of ids written to ids.
+         */
+        public int search(CharSequence prefix, int[] ids) {
+            String key = fold(prefix);
+            CategoryCatalog c = mCatalog;
+            synchronized (c) {
+                int start = 0;
+                int end = c.mCount;
+                if (mPrefix != null && mModCount == c.mModCount && key.startsWith(mPrefix)) {
+                    start = mStart;
+                    end = mEnd;
+                }
+                start = c.lowerBound(key, start, end);
+                end = c.prefixEnd(key, start, end);
+
+                mPrefix = key;
+                mModCount = c.mModCount;
+                mStart = start;
+                mEnd = end;
+
+                int n = Math.min(end - start, ids.length);
+                System.arraycopy(c.mSortedIds, start, ids, 0, n);
+                return n;
+            }
+        }
+
+        /**
+         * Returns the total number of matches of the last search, which may be more than
+         * fit in its id array.
+         */
+        public int getMatchCount() {
+            return mEnd - mStart;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.nennig.life.wheel.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A {@link ScoreSketch} for every category, indexed by the category's
+ * {@link CategoryCatalog} id. Sketches are created when a category gets its first score, so unused
+ * categories cost nothing and serialize to a single byte.
+ */
+public final class CategorySketches {
+    private ScoreSketch[] mSketches;
+
+    public CategorySketches(int categoryCount) {
+        mSketches = new ScoreSketch[categoryCount];
+    }
+
+    public synchronized int getCategoryCount() {
+        return mSketches.length;
+    }
+
+    /**
+     * Make room for categories up to an id, e.g. after the user added a category.
+     *
+     * @param categoryCount One more than the largest category id that will be added.
+     */
+    public synchronized void ensureCategoryCount(int categoryCount) {
+        if (categoryCount > mSketches.length) {
+            mSketches = Arrays.copyOf(mSketches, categoryCount);
+        }
+    }
+
+    /**
+     * Add a score to a category.
+     */
+    public synchronized void add(int category, float value) {
+        if (mSketches[category] == null) {
+            mSketches[category] = new ScoreSketch();
+        }
+        mSketches[category].add(value);
+    }
+
+    /**
+     * Estimate the fraction of a category's scores below a value.
+     *
+     * @return The fraction, or NaN if the category has no scores.
+     */
+    public synchronized double cdf(int category, float value) {
+        return mSketches[category] == null ? Double.NaN : mSketches[category].cdf(value);
+    }
+
+    /**
+     * Estimate the value below which the fraction q of a category's scores fall.
+     *
+     * @return The value, or NaN if the category has no scores.
+     */
+    public synchronized double quantile(int category, double q) {
+        return mSketches[category] == null ? Double.NaN : mSketches[category].quantile(q);
+    }
+
+    /**
+     * Add every score of another set of sketches, category by category. Categories only
+     * the other set has are added to this one.
+     */
+    public synchronized void merge(CategorySketches other) {
+        synchronized (other) {
+            ensureCategoryCount(other.mSketches.length);
+            for (int c = 0; c < other.mSketches.length; c++) {
+                if (other.mSketches[c] == null) continue;
+                if (mSketches[c] == null) mSketches[c] = new ScoreSketch();
+                mSketches[c].merge(other.mSketches[c]);
+            }
+        }
+    }
+
+    public synchronized byte[] toByteArray() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            Varints.write(out, mSketches.length);
+            for (int c = 0; c < mSketches.length; c++) {
+                out.writeBoolean(mSketches[c] != null);
+                if (mSketches[c] != null) mSketches[c].write(out);
+            }
+        } catch (IOException e) {
+            // A ByteArrayOutputStream doesn't throw.
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static CategorySketches fromByteArray(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        CategorySketches sketches = new CategorySketches((int) Varints.read(in));
+        for (int c = 0; c < sketches.mSketches.length; c++) {
+            if (in.readBoolean()) sketches.mSketches[c] = ScoreSketch.read(in);
+        }
+        return sketches;
+    }
+}
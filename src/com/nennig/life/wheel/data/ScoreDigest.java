@@ -0,0 +1,301 @@
+package com.nennig.life.wheel.data;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A t-digest: a compact, mergeable sketch of the distribution of fractional values, such
+ * as averaged scores, from which percentiles can be estimated.
+ * <p>
+ * Values are summarized as centroids, each a mean and a weight, kept sorted by mean. A
+ * centroid may only grow as large as its position in the distribution allows: near the
+ * median it can absorb many values, at the tails very few, which keeps the extreme
+ * percentiles accurate. At most about {@code 2 * compression} centroids are kept no matter
+ * how many values are added.
+ * <p>
+ * New values are buffered and folded in by a single merge pass once the buffer fills, and
+ * two digests merge with the same linear pass over their sorted centroids.
+ */
+public final class ScoreDigest {
+    /**
+     * The compression used when none is given. Higher is more accurate and larger.
+     */
+    public static final int DEFAULT_COMPRESSION = 50;
+
+    private static final int FORMAT_VERSION = 1;
+
+    private final int mCompression;
+
+    // Merged centroids, sorted by mean.
+    private double[] mMeans;
+    private long[] mWeights;
+    private int mCount = 0;
+
+    // Values added since the last merge pass.
+    private final double[] mBuffer;
+    private int mBuffered = 0;
+
+    private long mTotalWeight = 0;
+    private double mMin = Double.POSITIVE_INFINITY;
+    private double mMax = Double.NEGATIVE_INFINITY;
+
+    public ScoreDigest() {
+        this(DEFAULT_COMPRESSION);
+    }
+
+    public ScoreDigest(int compression) {
+        if (compression < 10) {
+            throw new IllegalArgumentException("compression must be at least 10");
+        }
+        mCompression = compression;
+        mMeans = new double[2 * compression];
+        mWeights = new long[2 * compression];
+        mBuffer = new double[4 * compression];
+    }
+
+    public int getCompression() {
+        return mCompression;
+    }
+
+    /**
+     * Returns the number of values summarized.
+     */
+    public long getTotal() {
+        return mTotalWeight;
+    }
+
+    /**
+     * Add a value.
+     */
+    public void add(double value) {
+        if (Double.isNaN(value)) {
+            throw new IllegalArgumentException("value must be a number");
+        }
+        if (mBuffered == mBuffer.length) {
+            flush();
+        }
+        mBuffer[mBuffered++] = value;
+        mTotalWeight++;
+        mMin = Math.min(mMin, value);
+        mMax = Math.max(mMax, value);
+    }
+
+    /**
+     * Fold every value of another digest into this one. The cost is linear in the number
+     * of centroids of the two digests.
+     */
+    public void merge(ScoreDigest other) {
+        flush();
+        other.flush();
+        if (other.mCount == 0) return;
+
+        double[] means = new double[mCount + other.mCount];
+        long[] weights = new long[means.length];
+        int i = 0, j = 0, k = 0;
+        while (i < mCount || j < other.mCount) {
+            if (j == other.mCount || (i < mCount && mMeans[i] <= other.mMeans[j])) {
+                means[k] = mMeans[i];
+                weights[k++] = mWeights[i++];
+            } else {
+                means[k] = other.mMeans[j];
+                weights[k++] = other.mWeights[j++];
+            }
+        }
+        mTotalWeight += other.mTotalWeight;
+        mMin = Math.min(mMin, other.mMin);
+        mMax = Math.max(mMax, other.mMax);
+        compress(means, weights, k);
+    }
+
+    /**
+     * Add weighted points, e.g. the bins of a {@link ScoreHistogram}, to this digest.
+     *
+     * @param means   The value of each point, in ascending order.
+     * @param weights The weight of each point.
+     * @param count   The number of points.
+     */
+    void mergeSorted(double[] means, long[] weights, int count) {
+        ScoreDigest points = new ScoreDigest(Math.max(mCompression, count));
+        for (int i = 0; i < count; i++) {
+            if (weights[i] == 0) continue;
+            points.mMeans[points.mCount] = means[i];
+            points.mWeights[points.mCount++] = weights[i];
+            points.mTotalWeight += weights[i];
+            points.mMin = Math.min(points.mMin, means[i]);
+            points.mMax = Math.max(points.mMax, means[i]);
+        }
+        merge(points);
+    }
+
+    /**
+     * Estimate the value below which the fraction q of all values fall, or NaN if the
+     * digest is empty.
+     *
+     * @param q A fraction from 0 to 1.
+     */
+    public double quantile(double q) {
+        flush();
+        if (mCount == 0) return Double.NaN;
+        if (q <= 0) return mMin;
+        if (q >= 1) return mMax;
+        if (mCount == 1) return mMeans[0];
+
+        // Each centroid's weight is spread evenly around its mean, so its mean sits at
+        // the middle of its cumulative weight. Interpolate between those midpoints, and
+        // towards the min and max beyond the first and last.
+        double index = q * mTotalWeight;
+        double left = mWeights[0] / 2.0;
+        if (index < left) {
+            return mMin + (mMeans[0] - mMin) * (index / left);
+        }
+        for (int i = 0; i < mCount - 1; i++) {
+            double right = left + (mWeights[i] + mWeights[i + 1]) / 2.0;
+            if (index < right) {
+                double t = (index - left) / (right - left);
+                return mMeans[i] + (mMeans[i + 1] - mMeans[i]) * t;
+            }
+            left = right;
+        }
+        double span = mTotalWeight - left;
+        return mMeans[mCount - 1] + (mMax - mMeans[mCount - 1]) * ((index - left) / span);
+    }
+
+    /**
+     * Estimate the fraction of values below a value, or NaN if the digest is empty.
+     */
+    public double cdf(double value) {
+        flush();
+        if (mCount == 0) return Double.NaN;
+        if (value < mMin) return 0;
+        if (value > mMax) return 1;
+        if (mMax == mMin) return 0.5;
+
+        double left = mWeights[0] / 2.0;
+        if (value < mMeans[0]) {
+            return left * (value - mMin) / (mMeans[0] - mMin) / mTotalWeight;
+        }
+        for (int i = 0; i < mCount - 1; i++) {
+            double right = left + (mWeights[i] + mWeights[i + 1]) / 2.0;
+            if (value < mMeans[i + 1]) {
+                double t = (value - mMeans[i]) / (mMeans[i + 1] - mMeans[i]);
+                return (left + (right - left) * t) / mTotalWeight;
+            }
+            left = right;
+        }
+        double last = mMeans[mCount - 1];
+        if (mMax == last) return left / mTotalWeight;
+        return (left + (mTotalWeight - left) * (value - last) / (mMax - last)) / mTotalWeight;
+    }
+
+    /**
+     * Write this digest in a compact binary form: the compression, the range and each
+     * centroid's mean and weight.
+     */
+    public void write(DataOutput out) throws IOException {
+        flush();
+        out.writeByte(FORMAT_VERSION);
+        Varints.write(out, mCompression);
+        Varints.write(out, mCount);
+        if (mCount == 0) return;
+        out.writeDouble(mMin);
+        out.writeDouble(mMax);
+        for (int i = 0; i < mCount; i++) {
+            // Scores fit a float with room to spare.
+            out.writeFloat((float) mMeans[i]);
+            Varints.write(out, mWeights[i]);
+        }
+    }
+
+    /**
+     * Read a digest written by {@link #write(DataOutput)}.
+     */
+    public static ScoreDigest read(DataInput in) throws IOException {
+        int version = in.readUnsignedByte();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("unknown digest version " + version);
+        }
+        ScoreDigest d = new ScoreDigest((int) Varints.read(in));
+        int count = (int) Varints.read(in);
+        if (count == 0) return d;
+        if (count > d.mMeans.length) {
+            d.mMeans = new double[count];
+            d.mWeights = new long[count];
+        }
+        d.mMin = in.readDouble();
+        d.mMax = in.readDouble();
+        for (int i = 0; i < count; i++) {
+            d.mMeans[i] = in.readFloat();
+            d.mWeights[i] = Varints.read(in);
+            if (d.mWeights[i] == 0 || (i > 0 && d.mMeans[i] < d.mMeans[i - 1])) {
+                throw new IOException("malformed centroid " + i);
+            }
+            d.mTotalWeight += d.mWeights[i];
+        }
+        d.mCount = count;
+        return d;
+    }
+
+    /**
+     * Fold the buffered values into the centroids.
+     */
+    private void flush() {
+        if (mBuffered == 0) return;
+        Arrays.sort(mBuffer, 0, mBuffered);
+
+        double[] means = new double[mCount + mBuffered];
+        long[] weights = new long[means.length];
+        int i = 0, j = 0, k = 0;
+        while (i < mCount || j < mBuffered) {
+            if (j == mBuffered || (i < mCount && mMeans[i] <= mBuffer[j])) {
+                means[k] = mMeans[i];
+                weights[k++] = mWeights[i++];
+            } else {
+                means[k] = mBuffer[j++];
+                weights[k++] = 1;
+            }
+        }
+        mBuffered = 0;
+        compress(means, weights, k);
+    }
+
+    /**
+     * One pass over centroids sorted by mean, merging neighbors while the merged centroid
+     * stays within the size limit for its position. The limit,
+     * {@code 4 * total * q * (1 - q) / compression}, is largest at the median and shrinks
+     * to a single value at the tails.
+     */
+    private void compress(double[] means, long[] weights, int count) {
+        int out = 0;
+        double mean = means[0];
+        long weight = weights[0];
+        long before = 0;
+        for (int i = 1; i < count; i++) {
+            long proposed = weight + weights[i];
+            double q = (before + proposed / 2.0) / mTotalWeight;
+            double limit = 4.0 * mTotalWeight * q * (1 - q) / mCompression;
+            if (proposed <= Math.max(limit, 1)) {
+                mean += (means[i] - mean) * weights[i] / proposed;
+                weight = proposed;
+            } else {
+                out = emit(out, mean, weight);
+                before += weight;
+                mean = means[i];
+                weight = weights[i];
+            }
+        }
+        mCount = emit(out, mean, weight);
+    }
+
+    private int emit(int index, double mean, long weight) {
+        if (index == mMeans.length) {
+            // Rare with this limit, but never lose a centroid for lack of room.
+            mMeans = Arrays.copyOf(mMeans, index * 2);
+            mWeights = Arrays.copyOf(mWeights, index * 2);
+        }
+        mMeans[index] = mean;
+        mWeights[index] = weight;
+        return index + 1;
+    }
+}
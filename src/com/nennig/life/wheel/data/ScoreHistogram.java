@@ -0,0 +1,119 @@
+package com.nennig.life.wheel.data;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * An exact histogram of whole scores on the 0-10 scale of the scale dropdown. Percentiles
+ * are exact, two histograms merge by adding eleven counts, and the serialized form is a
+ * handful of bytes.
+ */
+public final class ScoreHistogram {
+    /**
+     * The highest score on the scale.
+     */
+    public static final int MAX_SCORE = 10;
+
+    private final long[] mCounts = new long[MAX_SCORE + 1];
+    private long mTotal = 0;
+
+    /**
+     * Returns true if the value is a whole score this histogram can hold.
+     */
+    public static boolean accepts(float value) {
+        return value >= 0 && value <= MAX_SCORE && value == (int) value;
+    }
+
+    /**
+     * Count one score.
+     *
+     * @param score A whole score from 0 to {@link #MAX_SCORE}.
+     */
+    public void add(int score) {
+        add(score, 1);
+    }
+
+    /**
+     * Count a score several times.
+     */
+    public void add(int score, long count) {
+        if (score < 0 || score > MAX_SCORE) {
+            throw new IllegalArgumentException("score out of range: " + score);
+        }
+        mCounts[score] += count;
+        mTotal += count;
+    }
+
+    /**
+     * Add every count of another histogram to this one.
+     */
+    public void merge(ScoreHistogram other) {
+        for (int i = 0; i <= MAX_SCORE; i++) {
+            mCounts[i] += other.mCounts[i];
+        }
+        mTotal += other.mTotal;
+    }
+
+    /**
+     * Returns how many times a score was counted.
+     */
+    public long getCount(int score) {
+        return mCounts[score];
+    }
+
+    /**
+     * Returns the number of scores counted.
+     */
+    public long getTotal() {
+        return mTotal;
+    }
+
+    /**
+     * Returns the smallest score such that at least the fraction q of all scores are less
+     * than or equal to it, or NaN if the histogram is empty.
+     *
+     * @param q A fraction from 0 to 1.
+     */
+    public float quantile(double q) {
+        if (mTotal == 0) return Float.NaN;
+        long rank = Math.max((long) Math.ceil(q * mTotal), 1);
+        long seen = 0;
+        for (int i = 0; i <= MAX_SCORE; i++) {
+            seen += mCounts[i];
+            if (seen >= rank) return i;
+        }
+        return MAX_SCORE;
+    }
+
+    /**
+     * Returns the fraction of scores below a value, counting scores equal to it as half
+     * below, or NaN if the histogram is empty.
+     */
+    public double cdf(float value) {
+        if (mTotal == 0) return Double.NaN;
+        double below = 0;
+        for (int i = 0; i <= MAX_SCORE; i++) {
+            if (i < value) {
+                below += mCounts[i];
+            } else if (i == value) {
+                below += mCounts[i] / 2.0;
+            }
+        }
+        return below / mTotal;
+    }
+
+    void write(DataOutput out) throws IOException {
+        for (int i = 0; i <= MAX_SCORE; i++) {
+            Varints.write(out, mCounts[i]);
+        }
+    }
+
+    static ScoreHistogram read(DataInput in) throws IOException {
+        ScoreHistogram h = new ScoreHistogram();
+        for (int i = 0; i <= MAX_SCORE; i++) {
+            h.add(i, Varints.read(in));
+        }
+        return h;
+    }
+}
@@ -0,0 +1,149 @@
+package com.nennig.life.wheel.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * The distribution of one category's scores, for questions like "how does today's score
+ * compare to my usual range". Whole scores from the scale dropdown are counted exactly in
+ * a {@link ScoreHistogram}; fractional values, such as averages from aggregated wheels, go
+ * into a {@link ScoreDigest}. Neither keeps the samples themselves.
+ * <p>
+ * Sketches of different periods or wheels combine with {@link #merge(ScoreSketch)} in time
+ * linear in their size, so a month can be built from its weeks without rescanning them.
+ */
+public final class ScoreSketch {
+    private static final int FORMAT_VERSION = 1;
+
+    private final ScoreHistogram mHistogram;
+    private final ScoreDigest mDigest;
+
+    public ScoreSketch() {
+        this(new ScoreHistogram(), new ScoreDigest());
+    }
+
+    private ScoreSketch(ScoreHistogram histogram, ScoreDigest digest) {
+        mHistogram = histogram;
+        mDigest = digest;
+    }
+
+    /**
+     * Add a score. Whole scores from 0 to 10 are counted exactly.
+     */
+    public void add(float value) {
+        if (ScoreHistogram.accepts(value)) {
+            mHistogram.add((int) value);
+        } else {
+            mDigest.add(value);
+        }
+    }
+
+    /**
+     * Add every value of another sketch to this one.
+     */
+    public void merge(ScoreSketch other) {
+        mHistogram.merge(other.mHistogram);
+        mDigest.merge(other.mDigest);
+    }
+
+    public ScoreHistogram getHistogram() {
+        return mHistogram;
+    }
+
+    public ScoreDigest getDigest() {
+        return mDigest;
+    }
+
+    /**
+     * Returns the number of values added.
+     */
+    public long getTotal() {
+        return mHistogram.getTotal() + mDigest.getTotal();
+    }
+
+    /**
+     * Estimate the value below which the fraction q of all values fall, or NaN if the
+     * sketch is empty. The result is exact while only whole scores were added.
+     *
+     * @param q A fraction from 0 to 1.
+     */
+    public double quantile(double q) {
+        if (mDigest.getTotal() == 0) return mHistogram.quantile(q);
+        if (mHistogram.getTotal() == 0) return mDigest.quantile(q);
+        return combined().quantile(q);
+    }
+
+    /**
+     * Estimate the fraction of values below a score, counting half of the values equal to
+     * it, or NaN if the sketch is empty.
+     */
+    public double cdf(float value) {
+        long h = mHistogram.getTotal();
+        long d = mDigest.getTotal();
+        if (h + d == 0) return Double.NaN;
+        double below = 0;
+        if (h > 0) below += mHistogram.cdf(value) * h;
+        if (d > 0) below += mDigest.cdf(value) * d;
+        return below / (h + d);
+    }
+
+    /**
+     * Returns the serialized form of this sketch: about a dozen bytes for the histogram and
+     * a few bytes per centroid of the digest.
+     */
+    public byte[] toByteArray() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            write(new DataOutputStream(bytes));
+        } catch (IOException e) {
+            // A ByteArrayOutputStream doesn't throw.
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Read a sketch from the output of {@link #toByteArray()}.
+     */
+    public static ScoreSketch fromByteArray(byte[] data) throws IOException {
+        return read(new DataInputStream(new ByteArrayInputStream(data)));
+    }
+
+    public void write(DataOutput out) throws IOException {
+        out.writeByte(FORMAT_VERSION);
+        mHistogram.write(out);
+        mDigest.write(out);
+    }
+
+    public static ScoreSketch read(DataInput in) throws IOException {
+        int version = in.readUnsignedByte();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("unknown sketch version " + version);
+        }
+        ScoreHistogram histogram = ScoreHistogram.read(in);
+        return new ScoreSketch(histogram, ScoreDigest.read(in));
+    }
+
+    /**
+     * Returns a digest of both the fractional values and the histogram, whose bins enter
+     * as exact points.
+     */
+    private ScoreDigest combined() {
+        int bins = ScoreHistogram.MAX_SCORE + 1;
+        double[] means = new double[bins];
+        long[] weights = new long[bins];
+        for (int i = 0; i < bins; i++) {
+            means[i] = i;
+            weights[i] = mHistogram.getCount(i);
+        }
+        ScoreDigest d = new ScoreDigest(mDigest.getCompression());
+        d.merge(mDigest);
+        d.mergeSorted(means, weights, bins);
+        return d;
+    }
+}
@@ -0,0 +1,181 @@
+package com.nennig.life.wheel.data;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * A history of wheels in which every distinct wheel is stored once. Wheels are addressed
+ * by their {@link WheelHash}: a wheel that is the same as one already stored, as most days
+ * are, only adds a line to the history.
+ * <p>
+ * On disk, each distinct wheel is a {@link WheelFile} named by its hash in the
+ * {@code objects} folder, and the history is a text file of one time and hash per line.
+ */
+public final class SnapshotStore {
+    private static final String OBJECTS = "objects";
+    private static final String HISTORY = "history";
+
+    private final File mObjects;
+    private final File mHistory;
+
+    // The size on disk of every stored wheel.
+    private final HashMap<WheelHash, Long> mSizes = new HashMap<WheelHash, Long>();
+    private final ArrayList<Entry> mEntries = new ArrayList<Entry>();
+
+    private long mHashNanos = 0;
+    private int mHashCount = 0;
+
+    /**
+     * One point in the history.
+     */
+    public static final class Entry {
+        public final long timeMillis;
+        public final WheelHash hash;
+
+        Entry(long timeMillis, WheelHash hash) {
+            this.timeMillis = timeMillis;
+            this.hash = hash;
+        }
+    }
+
+    /**
+     * Open a store, creating it if the folder is empty.
+     */
+    public SnapshotStore(File directory) throws IOException {
+        mObjects = new File(directory, OBJECTS);
+        mHistory = new File(directory, HISTORY);
+        if (!mObjects.isDirectory() && !mObjects.mkdirs()) {
+            throw new IOException("can't create " + mObjects);
+        }
+
+        File[] objects = mObjects.listFiles();
+        if (objects != null) {
+            for (File f : objects) {
+                if (!WheelFile.isWheelFile(f)) continue;
+                String name = f.getName();
+                mSizes.put(WheelHash.fromString(
+                        name.substring(0, name.length() - WheelFile.EXTENSION.length())), f.length());
+            }
+        }
+
+        if (mHistory.exists()) {
+            BufferedReader in = new BufferedReader(new InputStreamReader(
+                    new FileInputStream(mHistory), "UTF-8"));
+            try {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    int tab = line.indexOf('\t');
+                    if (tab <= 0) continue;
+                    mEntries.add(new Entry(Long.parseLong(line.substring(0, tab)),
+                            WheelHash.fromString(line.substring(tab + 1))));
+                }
+            } finally {
+                in.close();
+            }
+        }
+    }
+
+    /**
+     * Add a wheel to the history. It is written out only if no equal wheel is stored yet.
+     *
+     * @return The hash the wheel is stored under.
+     */
+    public synchronized WheelHash put(long timeMillis, WheelSnapshot wheel) throws IOException {
+        WheelSnapshot canonical = wheel.canonical();
+        // Hashed here rather than through getHash(), which may only read a cached hash.
+        long start = System.nanoTime();
+        WheelHash hash = WheelHash.of(canonical);
+        mHashNanos += System.nanoTime() - start;
+        mHashCount++;
+
+        if (!mSizes.containsKey(hash)) {
+            File object = objectFile(hash);
+            File partial = new File(mObjects, hash + ".part");
+            WheelFile.write(canonical, partial);
+            if (!partial.renameTo(object)) {
+                throw new IOException("can't store " + object);
+            }
+            mSizes.put(hash, object.length());
+        }
+
+        Writer out = new OutputStreamWriter(new FileOutputStream(mHistory, true), "UTF-8");
+        try {
+            out.write(timeMillis + "\t" + hash + "\n");
+        } finally {
+            out.close();
+        }
+        mEntries.add(new Entry(timeMillis, hash));
+        return hash;
+    }
+
+    /**
+     * Returns the stored wheel with a hash, in canonical order, or null if there is none.
+     */
+    public synchronized WheelSnapshot get(WheelHash hash) throws IOException {
+        return mSizes.containsKey(hash) ? WheelFile.read(objectFile(hash)) : null;
+    }
+
+    public synchronized boolean contains(WheelHash hash) {
+        return mSizes.containsKey(hash);
+    }
+
+    /**
+     * Returns the history, oldest first.
+     */
+    public synchronized List<Entry> getHistory() {
+        return Collections.unmodifiableList(new ArrayList<Entry>(mEntries));
+    }
+
+    /**
+     * Returns the number of distinct wheels stored.
+     */
+    public synchronized int getUniqueCount() {
+        return mSizes.size();
+    }
+
+    /**
+     * Returns the bytes used by the store: the stored wheels and the history file.
+     */
+    public synchronized long getStoredBytes() {
+        long bytes = mHistory.length();
+        for (Long size : mSizes.values()) {
+            bytes += size;
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the bytes the history would take if every entry stored its wheel in full.
+     * Together with {@link #getStoredBytes()} this measures what deduplication saves.
+     */
+    public synchronized long getUndeduplicatedBytes() {
+        long bytes = 0;
+        for (Entry e : mEntries) {
+            Long size = mSizes.get(e.hash);
+            if (size != null) bytes += size;
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the average time spent hashing a wheel in {@link #put(long, WheelSnapshot)},
+     * in nanoseconds, or 0 if nothing was put.
+     */
+    public synchronized long getAverageHashNanos() {
+        return mHashCount == 0 ? 0 : mHashNanos / mHashCount;
+    }
+
+    private File objectFile(WheelHash hash) {
+        return new File(mObjects, hash + WheelFile.EXTENSION);
+    }
+}
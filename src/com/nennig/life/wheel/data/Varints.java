@@ -0,0 +1,36 @@
+package com.nennig.life.wheel.data;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Variable length encoding of non-negative integers, seven bits per byte with the high
+ * bit set on every byte but the last. Counts in the sketches are mostly small, so this
+ * keeps their serialized form compact.
+ */
+final class Varints {
+    private Varints() {
+    }
+
+    static void write(DataOutput out, long value) throws IOException {
+        if (value < 0) {
+            throw new IllegalArgumentException("value must not be negative");
+        }
+        while ((value & ~0x7fL) != 0) {
+            out.writeByte((int) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long read(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("malformed varint");
+    }
+}
@@ -0,0 +1,295 @@
+package com.nennig.life.wheel.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Combines many wheels, e.g. everyone's on a team, into one: the mean score of every
+ * category, and the distribution of its scores.
+ * <p>
+ * The input is split into chunks that are parsed and accumulated in parallel, each into
+ * its own {@link Aggregate}, and the partial results are merged in chunk order, not in
+ * the order the chunks finish. Counts, means and whole scores, which {@link ScoreSketch}
+ * counts exactly, come out the same as a sequential pass. Fractional scores go into a
+ * {@link ScoreDigest}, whose quantiles depend on how the input was split; merging in a
+ * fixed order makes them repeatable for the same input and thread count, and they stay
+ * within the digest's error of a sequential pass.
+ */
+public final class WheelAggregator {
+    // Enough chunks per thread that one slow chunk doesn't leave the others idle.
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private static final int CACHED_RESULTS = 8;
+
+    private final int mThreads;
+
+    // Recent results for in-memory wheels, keyed by the hash of the wheels that went in.
+    private final LinkedHashMap<WheelHash, Aggregate> mResults =
+            new LinkedHashMap<WheelHash, Aggregate>(CACHED_RESULTS, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<WheelHash, Aggregate> eldest) {
+                    return size() > CACHED_RESULTS;
+                }
+            };
+    private int mCacheHits = 0;
+
+    /**
+     * Aggregate with one thread per available processor.
+     */
+    public WheelAggregator() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public WheelAggregator(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1");
+        }
+        mThreads = threads;
+    }
+
+    /**
+     * The combined scores of a set of wheels.
+     */
+    public static final class Aggregate {
+        private final HashMap<String, Category> mCategories = new HashMap<String, Category>();
+        private int mWheels = 0;
+        private int mSkipped = 0;
+        private long mElapsedNanos = 0;
+
+        private static final class Category {
+            long count;
+            double sum;
+            final ScoreSketch sketch = new ScoreSketch();
+        }
+
+        /**
+         * Add the scores of one wheel.
+         */
+        public void add(WheelSnapshot wheel) {
+            for (int i = 0; i < wheel.getCount(); i++) {
+                Category c = mCategories.get(wheel.getLabel(i));
+                if (c == null) {
+                    c = new Category();
+                    mCategories.put(wheel.getLabel(i), c);
+                }
+                c.count++;
+                c.sum += wheel.getValue(i);
+                c.sketch.add(wheel.getValue(i));
+            }
+            mWheels++;
+        }
+
+        /**
+         * Fold another aggregate into this one.
+         */
+        public void combine(Aggregate other) {
+            for (Map.Entry<String, Category> e : other.mCategories.entrySet()) {
+                Category c = mCategories.get(e.getKey());
+                if (c == null) {
+                    c = new Category();
+                    mCategories.put(e.getKey(), c);
+                }
+                c.count += e.getValue().count;
+                c.sum += e.getValue().sum;
+                c.sketch.merge(e.getValue().sketch);
+            }
+            mWheels += other.mWheels;
+            mSkipped += other.mSkipped;
+        }
+
+        /**
+         * Returns the number of wheels aggregated.
+         */
+        public int getWheelCount() {
+            return mWheels;
+        }
+
+        /**
+         * Returns the number of files that could not be read and were left out.
+         */
+        public int getSkippedCount() {
+            return mSkipped;
+        }
+
+        /**
+         * Returns how long the aggregation took, in nanoseconds.
+         */
+        public long getElapsedNanos() {
+            return mElapsedNanos;
+        }
+
+        /**
+         * Returns the category labels, in alphabetical order.
+         */
+        public String[] getLabels() {
+            String[] labels = mCategories.keySet().toArray(new String[mCategories.size()]);
+            Arrays.sort(labels);
+            return labels;
+        }
+
+        /**
+         * Returns the mean score of a category, or NaN if no wheel has it.
+         */
+        public float getMean(String label) {
+            Category c = mCategories.get(label);
+            return c == null ? Float.NaN : (float) (c.sum / c.count);
+        }
+
+        /**
+         * Returns the distribution of a category's scores, or null if no wheel has it.
+         */
+        public ScoreSketch getSketch(String label) {
+            Category c = mCategories.get(label);
+            return c == null ? null : c.sketch;
+        }
+
+        /**
+         * Returns the team wheel: every category with its mean score, in alphabetical
+         * order. Each slice can be shown with {@code PieChart.addItem(label, value)}.
+         */
+        public WheelSnapshot toWheel() {
+            String[] labels = getLabels();
+            float[] means = new float[labels.length];
+            for (int i = 0; i < labels.length; i++) {
+                means[i] = getMean(labels[i]);
+            }
+            return new WheelSnapshot(labels, means);
+        }
+    }
+
+    /**
+     * Aggregate every wheel file in a directory. Files that can't be parsed are skipped
+     * and counted in {@link Aggregate#getSkippedCount()}.
+     *
+     * @throws IOException If the directory can't be listed.
+     */
+    public Aggregate aggregate(File directory) throws IOException, InterruptedException {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            throw new IOException("can't list " + directory);
+        }
+        // Listing order is unspecified; sorting gives every run the same chunks.
+        Arrays.sort(files);
+        final ArrayList<File> wheels = new ArrayList<File>(files.length);
+        for (File f : files) {
+            if (WheelFile.isWheelFile(f)) wheels.add(f);
+        }
+        return run(wheels.size(), new ChunkTask() {
+            public Aggregate call(int from, int to) {
+                Aggregate a = new Aggregate();
+                for (int i = from; i < to; i++) {
+                    try {
+                        a.add(WheelFile.read(wheels.get(i)));
+                    } catch (IOException e) {
+                        a.mSkipped++;
+                    }
+                }
+                return a;
+            }
+        });
+    }
+
+    /**
+     * Aggregate wheels that are already in memory. The result is cached under the
+     * {@link WheelHash#ofAll(WheelHash[]) combined hash} of the wheels, so aggregating the
+     * same wheels again, in any order, only costs hashing them.
+     */
+    public Aggregate aggregate(final List<WheelSnapshot> wheels) throws InterruptedException {
+        long start = System.nanoTime();
+        WheelHash[] hashes = new WheelHash[wheels.size()];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = wheels.get(i).getHash();
+        }
+        WheelHash key = WheelHash.ofAll(hashes);
+        synchronized (mResults) {
+            Aggregate cached = mResults.get(key);
+            if (cached != null) {
+                mCacheHits++;
+                // Hand out a copy so callers can't change the cached result.
+                Aggregate copy = new Aggregate();
+                copy.combine(cached);
+                copy.mElapsedNanos = System.nanoTime() - start;
+                return copy;
+            }
+        }
+
+        Aggregate result = run(wheels.size(), new ChunkTask() {
+            public Aggregate call(int from, int to) {
+                Aggregate a = new Aggregate();
+                for (int i = from; i < to; i++) {
+                    a.add(wheels.get(i));
+                }
+                return a;
+            }
+        });
+        Aggregate cached = new Aggregate();
+        cached.combine(result);
+        synchronized (mResults) {
+            mResults.put(key, cached);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of {@link #aggregate(List)} calls answered from the cache.
+     */
+    public int getCacheHitCount() {
+        synchronized (mResults) {
+            return mCacheHits;
+        }
+    }
+
+    private interface ChunkTask {
+        Aggregate call(int from, int to);
+    }
+
+    private Aggregate run(int size, final ChunkTask task) throws InterruptedException {
+        long start = System.nanoTime();
+        Aggregate result = new Aggregate();
+        if (size > 0) {
+            int chunks = Math.min(size, mThreads * CHUNKS_PER_THREAD);
+            ExecutorService executor = Executors.newFixedThreadPool(Math.min(mThreads, chunks),
+                    new ThreadFactory() {
+                        public Thread newThread(Runnable r) {
+                            Thread t = new Thread(r, "WheelAggregator");
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+            try {
+                ArrayList<Future<Aggregate>> parts = new ArrayList<Future<Aggregate>>(chunks);
+                for (int c = 0; c < chunks; c++) {
+                    final int from = (int) ((long) size * c / chunks);
+                    final int to = (int) ((long) size * (c + 1) / chunks);
+                    parts.add(executor.submit(new Callable<Aggregate>() {
+                        public Aggregate call() {
+                            return task.call(from, to);
+                        }
+                    }));
+                }
+                // In chunk order, so digests merge the same way on every run.
+                for (Future<Aggregate> part : parts) {
+                    result.combine(part.get());
+                }
+            } catch (ExecutionException e) {
+                throw new RuntimeException(e.getCause());
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+        result.mElapsedNanos = System.nanoTime() - start;
+        return result;
+    }
+}
@@ -0,0 +1,116 @@
+package com.nennig.life.wheel.data;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+
+/**
+ * The exported form of a wheel: a UTF-8 text file with a header line followed by one
+ * slice per line, the category label and the score separated by a tab.
+ * <pre>
+ * LifeWheel 1
+ * Sleeping	7.0
+ * Working	4.0
+ * </pre>
+ */
+public final class WheelFile {
+    /**
+     * The extension of exported wheel files.
+     */
+    public static final String EXTENSION = ".wheel";
+
+    private static final String HEADER = "LifeWheel 1";
+    private static final String CHARSET = "UTF-8";
+
+    private WheelFile() {
+    }
+
+    /**
+     * Returns true if the file name has the wheel file extension.
+     */
+    public static boolean isWheelFile(File file) {
+        return file.getName().endsWith(EXTENSION);
+    }
+
+    public static void write(WheelSnapshot wheel, File file) throws IOException {
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), CHARSET));
+        try {
+            write(wheel, out);
+        } finally {
+            out.close();
+        }
+    }
+
+    public static void write(WheelSnapshot wheel, Writer out) throws IOException {
+        out.write(HEADER);
+        out.write('\n');
+        for (int i = 0; i < wheel.getCount(); i++) {
+            String label = wheel.getLabel(i);
+            if (label.indexOf('\t') >= 0 || label.indexOf('\n') >= 0) {
+                throw new IllegalArgumentException("label can't contain tabs or newlines: " + label);
+            }
+            out.write(label);
+            out.write('\t');
+            out.write(Float.toString(wheel.getValue(i)));
+            out.write('\n');
+        }
+    }
+
+    public static WheelSnapshot read(File file) throws IOException {
+        Reader in = new InputStreamReader(new FileInputStream(file), CHARSET);
+        try {
+            return read(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Parse a wheel.
+     *
+     * @throws IOException If the input is not a wheel file, a line is malformed or a score
+     *                     is not on the 0-10 scale.
+     */
+    public static WheelSnapshot read(Reader reader) throws IOException {
+        BufferedReader in = new BufferedReader(reader);
+        if (!HEADER.equals(in.readLine())) {
+            throw new IOException("not a wheel file");
+        }
+        ArrayList<String> labels = new ArrayList<String>();
+        ArrayList<Float> values = new ArrayList<Float>();
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (line.length() == 0) continue;
+            int tab = line.indexOf('\t');
+            if (tab <= 0) {
+                throw new IOException("malformed slice: " + line);
+            }
+            float value;
+            try {
+                value = Float.parseFloat(line.substring(tab + 1));
+            } catch (NumberFormatException e) {
+                throw new IOException("malformed score: " + line);
+            }
+            // Also rejects NaN, which fails both comparisons.
+            if (!(value >= 0 && value <= ScoreHistogram.MAX_SCORE)) {
+                throw new IOException("score out of range: " + line);
+            }
+            values.add(value);
+            labels.add(line.substring(0, tab));
+        }
+
+        float[] v = new float[values.size()];
+        for (int i = 0; i < v.length; i++) {
+            v[i] = values.get(i);
+        }
+        return new WheelSnapshot(labels.toArray(new String[labels.size()]), v);
+    }
+}
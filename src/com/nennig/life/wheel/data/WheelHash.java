@@ -0,0 +1,139 @@
+package com.nennig.life.wheel.data;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * The SHA-256 hash of a wheel's canonical form, its categories sorted by label, each with
+ * its score. Wheels with the same scores hash the same no matter the order of their
+ * slices, so the hash can address the stored wheel, its rendered thumbnail and anything
+ * computed from it.
+ * <p>
+ * Categories are keyed by label, not by {@link CategoryCatalog} id. Ids are local to one
+ * catalog: user categories are numbered in the order they were made, so the same wheel
+ * would hash differently on two devices, and {@link WheelSnapshot}, {@link WheelFile} and
+ * the sync replicas carry only labels. Labels are what identifies a category everywhere a
+ * hash goes.
+ */
+public final class WheelHash implements Comparable<WheelHash> {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final byte[] mBytes;
+    private final int mHashCode;
+
+    private WheelHash(byte[] bytes) {
+        mBytes = bytes;
+        // SHA-256 output is uniformly distributed, so any four bytes make a good hash code.
+        mHashCode = (bytes[0] & 0xff) << 24 | (bytes[1] & 0xff) << 16
+                | (bytes[2] & 0xff) << 8 | (bytes[3] & 0xff);
+    }
+
+    /**
+     * Hash a wheel. The slices are hashed in canonical order; see
+     * {@link WheelSnapshot#canonical()}.
+     */
+    public static WheelHash of(WheelSnapshot wheel) {
+        WheelSnapshot canonical = wheel.canonical();
+        MessageDigest digest = newDigest();
+        int count = canonical.getCount();
+        update(digest, count);
+        for (int i = 0; i < count; i++) {
+            // Length-prefixed, so no two different wheels encode the same way.
+            byte[] label = utf8(canonical.getLabel(i));
+            update(digest, label.length);
+            digest.update(label);
+            update(digest, Float.floatToIntBits(canonical.getValue(i)));
+        }
+        return new WheelHash(digest.digest());
+    }
+
+    /**
+     * Hash a collection of hashes, e.g. the wheels that went into an aggregate. The order
+     * of the hashes doesn't matter, but how often each appears does.
+     */
+    public static WheelHash ofAll(WheelHash[] hashes) {
+        WheelHash[] sorted = hashes.clone();
+        Arrays.sort(sorted);
+        MessageDigest digest = newDigest();
+        update(digest, sorted.length);
+        for (WheelHash h : sorted) {
+            digest.update(h.mBytes);
+        }
+        return new WheelHash(digest.digest());
+    }
+
+    /**
+     * Parse the output of {@link #toString()}.
+     */
+    public static WheelHash fromString(String hex) {
+        if (hex.length() != 64) {
+            throw new IllegalArgumentException("not a wheel hash: " + hex);
+        }
+        byte[] bytes = new byte[32];
+        for (int i = 0; i < bytes.length; i++) {
+            int hi = Character.digit(hex.charAt(2 * i), 16);
+            int lo = Character.digit(hex.charAt(2 * i + 1), 16);
+            if (hi < 0 || lo < 0) {
+                throw new IllegalArgumentException("not a wheel hash: " + hex);
+            }
+            bytes[i] = (byte) (hi << 4 | lo);
+        }
+        return new WheelHash(bytes);
+    }
+
+    public int compareTo(WheelHash other) {
+        for (int i = 0; i < mBytes.length; i++) {
+            int c = (mBytes[i] & 0xff) - (other.mBytes[i] & 0xff);
+            if (c != 0) return c;
+        }
+        return 0;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof WheelHash && Arrays.equals(mBytes, ((WheelHash) obj).mBytes);
+    }
+
+    @Override
+    public int hashCode() {
+        return mHashCode;
+    }
+
+    /**
+     * Returns the hash as 64 lowercase hex digits.
+     */
+    @Override
+    public String toString() {
+        char[] hex = new char[mBytes.length * 2];
+        for (int i = 0; i < mBytes.length; i++) {
+            hex[2 * i] = HEX[(mBytes[i] >> 4) & 0xf];
+            hex[2 * i + 1] = HEX[mBytes[i] & 0xf];
+        }
+        return new String(hex);
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Android release ships SHA-256.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void update(MessageDigest digest, int value) {
+        digest.update((byte) (value >>> 24));
+        digest.update((byte) (value >>> 16));
+        digest.update((byte) (value >>> 8));
+        digest.update((byte) value);
+    }
+
+    private static byte[] utf8(String s) {
+        try {
+            return s.getBytes("UTF-8");
+        } catch (java.io.UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.nennig.life.wheel.data;
+
+import java.util.ArrayList;
+
+/**
+ * Unlimited undo and redo over {@link WheelVersion}s. Every version of the session is
+ * kept, which is cheap because versions share all but the nodes that changed.
+ */
+public final class WheelHistory {
+    private final ArrayList<WheelVersion> mVersions = new ArrayList<WheelVersion>();
+    private int mCurrent = 0;
+
+    /**
+     * @param initial The version to start from. It can't be undone.
+     */
+    public WheelHistory(WheelVersion initial) {
+        mVersions.add(initial);
+    }
+
+    public WheelVersion getCurrent() {
+        return mVersions.get(mCurrent);
+    }
+
+    /**
+     * Returns the position of the current version, counting from the initial one at 0.
+     */
+    public int getCurrentIndex() {
+        return mCurrent;
+    }
+
+    /**
+     * Returns the number of versions that can be reached by undo and redo, the current
+     * one and the initial one included.
+     */
+    public int getVersionCount() {
+        return mVersions.size();
+    }
+
+    public WheelVersion getVersion(int index) {
+        return mVersions.get(index);
+    }
+
+    /**
+     * Make a version current, after the current one. Anything that could have been
+     * redone is dropped. A version equal to the current one is not recorded.
+     */
+    public void commit(WheelVersion version) {
+        if (version == getCurrent()) return;
+        for (int i = mVersions.size() - 1; i > mCurrent; i--) {
+            mVersions.remove(i);
+        }
+        mVersions.add(version);
+        mCurrent++;
+    }
+
+    public boolean canUndo() {
+        return mCurrent > 0;
+    }
+
+    public boolean canRedo() {
+        return mCurrent < mVersions.size() - 1;
+    }
+
+    /**
+     * Step back to the previous version.
+     *
+     * @return The version that is now current.
+     * @throws IllegalStateException If there is nothing to undo.
+     */
+    public WheelVersion undo() {
+        if (!canUndo()) {
+            throw new IllegalStateException("nothing to undo");
+        }
+        return mVersions.get(--mCurrent);
+    }
+
+    /**
+     * Step forward to the version that was last undone.
+     *
+     * @return The version that is now current.
+     * @throws IllegalStateException If there is nothing to redo.
+     */
+    public WheelVersion redo() {
+        if (!canRedo()) {
+            throw new IllegalStateException("nothing to redo");
+        }
+        return mVersions.get(++mCurrent);
+    }
+
+    /**
+     * Undo or redo as many steps as it takes to make a version current. Nothing is
+     * dropped, so every version stays reachable.
+     *
+     * @return The version that is now current.
+     * @throws IndexOutOfBoundsException If there is no version at the index.
+     */
+    public WheelVersion moveTo(int index) {
+        if (index < 0 || index >= mVersions.size()) {
+            throw new IndexOutOfBoundsException("no version " + index);
+        }
+        mCurrent = index;
+        return mVersions.get(index);
+    }
+}
@@ -0,0 +1,115 @@
+package com.nennig.life.wheel.data;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * An immutable copy of one wheel: the category label and score of every slice, in the
+ * order they appear on the wheel. Scores use the same 0-10 scale as the scale dropdown.
+ */
+public final class WheelSnapshot {
+    private final String[] mLabels;
+    private final float[] mValues;
+
+    // Computed on first use. Racing threads compute the same value, so no lock is needed.
+    private volatile WheelHash mHash = null;
+
+    /**
+     * @param labels The category label of each slice.
+     * @param values The score of each slice. Must be as long as labels.
+     */
+    public WheelSnapshot(String[] labels, float[] values) {
+        if (labels.length != values.length) {
+            throw new IllegalArgumentException("labels and values must be the same length");
+        }
+        mLabels = labels.clone();
+        mValues = values.clone();
+    }
+
+    /**
+     * Returns the number of slices.
+     */
+    public int getCount() {
+        return mLabels.length;
+    }
+
+    /**
+     * Returns the category label of a slice.
+     */
+    public String getLabel(int index) {
+        return mLabels[index];
+    }
+
+    /**
+     * Returns the score of a slice.
+     */
+    public float getValue(int index) {
+        return mValues[index];
+    }
+
+    /**
+     * Returns this wheel with its slices sorted by label, the order used for hashing. Two
+     * wheels with the same scores have equal canonical forms.
+     *
+     * @return This wheel if it is already sorted, otherwise a sorted copy.
+     */
+    public WheelSnapshot canonical() {
+        boolean sorted = true;
+        for (int i = 1; i < mLabels.length && sorted; i++) {
+            sorted = mLabels[i - 1].compareTo(mLabels[i]) <= 0;
+        }
+        if (sorted) return this;
+
+        Integer[] order = new Integer[mLabels.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                int c = mLabels[a].compareTo(mLabels[b]);
+                return c != 0 ? c : Float.compare(mValues[a], mValues[b]);
+            }
+        });
+        String[] labels = new String[order.length];
+        float[] values = new float[order.length];
+        for (int i = 0; i < order.length; i++) {
+            labels[i] = mLabels[order[i]];
+            values[i] = mValues[order[i]];
+        }
+        return new WheelSnapshot(labels, values);
+    }
+
+    /**
+     * Returns the content hash of this wheel.
+     */
+    public WheelHash getHash() {
+        WheelHash hash = mHash;
+        if (hash == null) {
+            hash = WheelHash.of(this);
+            mHash = hash;
+        }
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof WheelSnapshot)) return false;
+        WheelSnapshot w = (WheelSnapshot) obj;
+        return Arrays.equals(mLabels, w.mLabels) && Arrays.equals(mValues, w.mValues);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(mLabels) + Arrays.hashCode(mValues);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < mLabels.length; i++) {
+            if (i > 0) sb.append(", ");
+            sb.append(mLabels[i]).append(" <").append(mValues[i]).append(">");
+        }
+        return sb.append("]").toString();
+    }
+}
@@ -0,0 +1,320 @@
+package com.nennig.life.wheel.data;
+
+import java.util.ArrayList;
+
+/**
+ * One immutable version of a wheel: the score of every category on it.
+ * <p>
+ * Versions are persistent. The categories are kept in a balanced binary tree sorted by
+ * label, and a change copies only the O(log n) nodes on the path to the changed category;
+ * everything else is shared with the version it was made from. Keeping every version of
+ * an editing session therefore costs a few nodes per step, not a copy of the wheel.
+ * <p>
+ * Sharing also makes comparing versions cheap: {@link #diff(WheelVersion, Changes)} skips
+ * every subtree two versions have in common and only visits what differs.
+ */
+public final class WheelVersion {
+    /**
+     * The wheel with no categories.
+     */
+    public static final WheelVersion EMPTY = new WheelVersion(null);
+
+    private final Node mRoot;
+
+    /**
+     * Receives the differences between two versions, in label order.
+     */
+    public interface Changes {
+        void onAdded(String label, float score);
+
+        void onRemoved(String label, float score);
+
+        void onChanged(String label, float oldScore, float newScore);
+    }
+
+    private static final class Node {
+        final String label;
+        final float score;
+        final Node left;
+        final Node right;
+        final int height;
+        final int size;
+
+        Node(String label, float score, Node left, Node right) {
+            this.label = label;
+            this.score = score;
+            this.left = left;
+            this.right = right;
+            height = Math.max(height(left), height(right)) + 1;
+            size = size(left) + size(right) + 1;
+        }
+    }
+
+    private WheelVersion(Node root) {
+        mRoot = root;
+    }
+
+    /**
+     * Returns the number of categories.
+     */
+    public int size() {
+        return size(mRoot);
+    }
+
+    public boolean contains(String label) {
+        return find(label) != null;
+    }
+
+    /**
+     * Returns the score of a category, or NaN if it isn't on the wheel.
+     */
+    public float get(String label) {
+        Node n = find(label);
+        return n == null ? Float.NaN : n.score;
+    }
+
+    /**
+     * Returns this version with a category set to a score.
+     *
+     * @return This version if the category already has the score, otherwise a new one.
+     */
+    public WheelVersion put(String label, float score) {
+        Node root = put(mRoot, label, score);
+        return root == mRoot ? this : new WheelVersion(root);
+    }
+
+    /**
+     * Returns this version without a category.
+     *
+     * @return This version if the category isn't on the wheel, otherwise a new one.
+     */
+    public WheelVersion remove(String label) {
+        Node root = remove(mRoot, label);
+        return root == mRoot ? this : new WheelVersion(root);
+    }
+
+    /**
+     * Returns the wheel as a snapshot, categories in label order.
+     */
+    public WheelSnapshot toSnapshot() {
+        final String[] labels = new String[size()];
+        final float[] scores = new float[labels.length];
+        diff(EMPTY, this, new Changes() {
+            int i = 0;
+
+            public void onAdded(String label, float score) {
+                labels[i] = label;
+                scores[i++] = score;
+            }
+
+            public void onRemoved(String label, float score) {
+            }
+
+            public void onChanged(String label, float oldScore, float newScore) {
+            }
+        });
+        return new WheelSnapshot(labels, scores);
+    }
+
+    /**
+     * Report what changes turn this version into another. Subtrees the two versions share
+     * are skipped without being visited, so after k edits this takes O(k log n).
+     */
+    public void diff(WheelVersion to, Changes changes) {
+        diff(this, to, changes);
+    }
+
+    private static void diff(WheelVersion from, WheelVersion to, Changes changes) {
+        // Both trees are walked in label order. Each walk is a stack of pending work
+        // whose top comes next; an entry is either a whole subtree or, once a subtree has
+        // been opened, a single node. Identical subtrees at the top of both stacks are
+        // shared and popped unopened.
+        Walk a = new Walk(from.mRoot);
+        Walk b = new Walk(to.mRoot);
+        while (true) {
+            a.dropEmpty();
+            b.dropEmpty();
+            if (a.isDone() || b.isDone()) break;
+
+            if (a.peek() == b.peek() && a.peekIsSubtree() && b.peekIsSubtree()) {
+                a.pop();
+                b.pop();
+            } else if (a.peekIsSubtree() || b.peekIsSubtree()) {
+                // Open the taller subtree first; it is the one that can't be shared.
+                if (a.peekIsSubtree() && (!b.peekIsSubtree()
+                        || height(a.peek()) >= height(b.peek()))) {
+                    a.open();
+                } else {
+                    b.open();
+                }
+            } else {
+                Node x = a.peek();
+                Node y = b.peek();
+                int c = x.label.compareTo(y.label);
+                if (c < 0) {
+                    changes.onRemoved(x.label, x.score);
+                    a.pop();
+                } else if (c > 0) {
+                    changes.onAdded(y.label, y.score);
+                    b.pop();
+                } else {
+                    if (Float.floatToIntBits(x.score) != Float.floatToIntBits(y.score)) {
+                        changes.onChanged(x.label, x.score, y.score);
+                    }
+                    a.pop();
+                    b.pop();
+                }
+            }
+        }
+        while (!a.isDone()) {
+            if (a.peekIsSubtree()) {
+                a.open();
+            } else {
+                changes.onRemoved(a.peek().label, a.peek().score);
+                a.pop();
+            }
+            a.dropEmpty();
+        }
+        while (!b.isDone()) {
+            if (b.peekIsSubtree()) {
+                b.open();
+            } else {
+                changes.onAdded(b.peek().label, b.peek().score);
+                b.pop();
+            }
+            b.dropEmpty();
+        }
+    }
+
+    /**
+     * An in-order walk that can hand out whole subtrees.
+     */
+    private static final class Walk {
+        private final ArrayList<Node> mNodes = new ArrayList<Node>();
+        private final ArrayList<Boolean> mSubtree = new ArrayList<Boolean>();
+
+        Walk(Node root) {
+            push(root, true);
+        }
+
+        boolean isDone() {
+            return mNodes.isEmpty();
+        }
+
+        Node peek() {
+            return mNodes.get(mNodes.size() - 1);
+        }
+
+        boolean peekIsSubtree() {
+            return mSubtree.get(mSubtree.size() - 1);
+        }
+
+        void pop() {
+            mNodes.remove(mNodes.size() - 1);
+            mSubtree.remove(mSubtree.size() - 1);
+        }
+
+        void dropEmpty() {
+            while (!isDone() && peek() == null) pop();
+        }
+
+        /**
+         * Replace the subtree on top with its left subtree, its root and its right
+         * subtree, in walk order.
+         */
+        void open() {
+            Node n = peek();
+            pop();
+            push(n.right, true);
+            push(n, false);
+            push(n.left, true);
+        }
+
+        private void push(Node n, boolean subtree) {
+            mNodes.add(n);
+            mSubtree.add(subtree);
+        }
+    }
+
+    private Node find(String label) {
+        Node n = mRoot;
+        while (n != null) {
+            int c = label.compareTo(n.label);
+            if (c == 0) return n;
+            n = c < 0 ? n.left : n.right;
+        }
+        return null;
+    }
+
+    private static Node put(Node n, String label, float score) {
+        if (n == null) return new Node(label, score, null, null);
+        int c = label.compareTo(n.label);
+        if (c == 0) {
+            if (Float.floatToIntBits(score) == Float.floatToIntBits(n.score)) return n;
+            return new Node(label, score, n.left, n.right);
+        }
+        if (c < 0) {
+            Node left = put(n.left, label, score);
+            return left == n.left ? n : balance(n.label, n.score, left, n.right);
+        }
+        Node right = put(n.right, label, score);
+        return right == n.right ? n : balance(n.label, n.score, n.left, right);
+    }
+
+    private static Node remove(Node n, String label) {
+        if (n == null) return null;
+        int c = label.compareTo(n.label);
+        if (c < 0) {
+            Node left = remove(n.left, label);
+            return left == n.left ? n : balance(n.label, n.score, left, n.right);
+        }
+        if (c > 0) {
+            Node right = remove(n.right, label);
+            return right == n.right ? n : balance(n.label, n.score, n.left, right);
+        }
+        if (n.left == null) return n.right;
+        if (n.right == null) return n.left;
+        // Replace the node with its successor.
+        Node successor = n.right;
+        while (successor.left != null) successor = successor.left;
+        return balance(successor.label, successor.score, n.left,
+                remove(n.right, successor.label));
+    }
+
+    /**
+     * Build a node, rotating once or twice if its subtrees differ in height by two.
+     */
+    private static Node balance(String label, float score, Node left, Node right) {
+        int lh = height(left);
+        int rh = height(right);
+        if (lh > rh + 1) {
+            if (height(left.left) >= height(left.right)) {
+                return new Node(left.label, left.score, left.left,
+                        new Node(label, score, left.right, right));
+            }
+            Node lr = left.right;
+            return new Node(lr.label, lr.score,
+                    new Node(left.label, left.score, left.left, lr.left),
+                    new Node(label, score, lr.right, right));
+        }
+        if (rh > lh + 1) {
+            if (height(right.right) >= height(right.left)) {
+                return new Node(right.label, right.score,
+                        new Node(label, score, left, right.left), right.right);
+            }
+            Node rl = right.left;
+            return new Node(rl.label, rl.score,
+                    new Node(label, score, left, rl.left),
+                    new Node(right.label, right.score, rl.right, right.right));
+        }
+        return new Node(label, score, left, right);
+    }
+
+    private static int height(Node n) {
+        return n == null ? 0 : n.height;
+    }
+
+    private static int size(Node n) {
+        return n == null ? 0 : n.size;
+    }
+}
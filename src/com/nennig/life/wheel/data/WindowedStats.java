@@ -0,0 +1,215 @@
+package com.nennig.life.wheel.data;
+
+import java.util.Arrays;
+
+/**
+ * Moving statistics over the last few scores of every category: mean, variance, minimum
+ * and maximum. Categories are identified by their {@link CategoryCatalog} id.
+ * <p>
+ * Recording a score takes constant time no matter how much history there is. Each category
+ * keeps its window in a primitive ring buffer together with running sums for the mean and
+ * variance, and two monotonic queues whose heads are the window's minimum and maximum.
+ * <p>
+ * Recording and reading are synchronized, so scores can be recorded on a worker thread
+ * while the UI thread reads {@link Summary summaries}.
+ */
+public final class WindowedStats {
+    private final int mWindow;
+
+    // Per category: the ring buffer of the last mWindow scores, and the number of scores
+    // ever recorded. The score with sequence number s lives at s % mWindow.
+    private float[][] mValues;
+    private int[] mRecorded;
+
+    // Per category: running sums over the window.
+    private double[] mSum;
+    private double[] mSumOfSquares;
+
+    // Per category: ring buffers of sequence numbers whose scores increase (for the
+    // minimum) or decrease (for the maximum) from head to tail.
+    private int[][] mMinQueue;
+    private int[] mMinHead;
+    private int[] mMinSize;
+    private int[][] mMaxQueue;
+    private int[] mMaxHead;
+    private int[] mMaxSize;
+
+    /**
+     * The statistics of one category's window at the moment it was read.
+     */
+    public static final class Summary {
+        /**
+         * The number of scores in the window, at most the window size.
+         */
+        public int count;
+        public float mean;
+        /**
+         * The population variance of the scores in the window.
+         */
+        public float variance;
+        public float min;
+        public float max;
+
+        /**
+         * Returns the standard deviation of the scores in the window.
+         */
+        public float getStandardDeviation() {
+            return (float) Math.sqrt(variance);
+        }
+    }
+
+    /**
+     * @param categoryCount The number of categories to start with. See
+     *                      {@link #ensureCategoryCount(int)}.
+     * @param window        The number of most recent scores each statistic covers. With one
+     *                      check-in a day, 7 gives a weekly moving average.
+     */
+    public WindowedStats(int categoryCount, int window) {
+        if (window < 1) {
+            throw new IllegalArgumentException("window must be at least 1");
+        }
+        mWindow = window;
+        mValues = new float[categoryCount][window];
+        mRecorded = new int[categoryCount];
+        mSum = new double[categoryCount];
+        mSumOfSquares = new double[categoryCount];
+        mMinQueue = new int[categoryCount][window];
+        mMinHead = new int[categoryCount];
+        mMinSize = new int[categoryCount];
+        mMaxQueue = new int[categoryCount][window];
+        mMaxHead = new int[categoryCount];
+        mMaxSize = new int[categoryCount];
+    }
+
+    /**
+     * Returns the number of scores each statistic covers.
+     */
+    public int getWindow() {
+        return mWindow;
+    }
+
+    /**
+     * Returns the number of categories.
+     */
+    public synchronized int getCategoryCount() {
+        return mRecorded.length;
+    }
+
+    /**
+     * Make room for categories up to an id, e.g. after the user added a category. The
+     * statistics of existing categories are kept.
+     *
+     * @param categoryCount One more than the largest category id that will be recorded.
+     */
+    public synchronized void ensureCategoryCount(int categoryCount) {
+        int old = mRecorded.length;
+        if (categoryCount <= old) return;
+        mValues = Arrays.copyOf(mValues, categoryCount);
+        mMinQueue = Arrays.copyOf(mMinQueue, categoryCount);
+        mMaxQueue = Arrays.copyOf(mMaxQueue, categoryCount);
+        for (int c = old; c < categoryCount; c++) {
+            mValues[c] = new float[mWindow];
+            mMinQueue[c] = new int[mWindow];
+            mMaxQueue[c] = new int[mWindow];
+        }
+        mRecorded = Arrays.copyOf(mRecorded, categoryCount);
+        mSum = Arrays.copyOf(mSum, categoryCount);
+        mSumOfSquares = Arrays.copyOf(mSumOfSquares, categoryCount);
+        mMinHead = Arrays.copyOf(mMinHead, categoryCount);
+        mMinSize = Arrays.copyOf(mMinSize, categoryCount);
+        mMaxHead = Arrays.copyOf(mMaxHead, categoryCount);
+        mMaxSize = Arrays.copyOf(mMaxSize, categoryCount);
+    }
+
+    /**
+     * Add a score to a category, pushing the oldest score out of its window if it is full.
+     *
+     * @param category The id of the category.
+     * @param value    The score.
+     */
+    public synchronized void record(int category, float value) {
+        float[] values = mValues[category];
+        int seq = mRecorded[category];
+        int slot = seq % mWindow;
+
+        if (seq >= mWindow) {
+            float evicted = values[slot];
+            mSum[category] -= evicted;
+            mSumOfSquares[category] -= (double) evicted * evicted;
+        }
+        values[slot] = value;
+        mSum[category] += value;
+        mSumOfSquares[category] += (double) value * value;
+        mRecorded[category] = seq + 1;
+
+        // Drop queue heads that left the window, then tails the new score makes useless:
+        // a later, smaller score outlives every larger one before it.
+        int oldest = seq + 1 - mWindow;
+        int[] q = mMinQueue[category];
+        if (mMinSize[category] > 0 && q[mMinHead[category]] < oldest) {
+            mMinHead[category] = (mMinHead[category] + 1) % mWindow;
+            mMinSize[category]--;
+        }
+        while (mMinSize[category] > 0
+                && values[q[(mMinHead[category] + mMinSize[category] - 1) % mWindow] % mWindow] >= value) {
+            mMinSize[category]--;
+        }
+        q[(mMinHead[category] + mMinSize[category]) % mWindow] = seq;
+        mMinSize[category]++;
+
+        q = mMaxQueue[category];
+        if (mMaxSize[category] > 0 && q[mMaxHead[category]] < oldest) {
+            mMaxHead[category] = (mMaxHead[category] + 1) % mWindow;
+            mMaxSize[category]--;
+        }
+        while (mMaxSize[category] > 0
+                && values[q[(mMaxHead[category] + mMaxSize[category] - 1) % mWindow] % mWindow] <= value) {
+            mMaxSize[category]--;
+        }
+        q[(mMaxHead[category] + mMaxSize[category]) % mWindow] = seq;
+        mMaxSize[category]++;
+    }
+
+    /**
+     * Read the statistics of a category.
+     *
+     * @param category The id of the category.
+     * @param out      Receives the statistics. Reusing one summary keeps reads on the UI
+     *                 thread allocation free.
+     * @return out, or out with a count of zero if nothing was recorded for the category.
+     */
+    public synchronized Summary read(int category, Summary out) {
+        int count = Math.min(mRecorded[category], mWindow);
+        out.count = count;
+        if (count == 0) {
+            out.mean = 0.0f;
+            out.variance = 0.0f;
+            out.min = 0.0f;
+            out.max = 0.0f;
+            return out;
+        }
+        double mean = mSum[category] / count;
+        // Rounding can take the difference of the sums just below zero.
+        double variance = Math.max(mSumOfSquares[category] / count - mean * mean, 0.0);
+        out.mean = (float) mean;
+        out.variance = (float) variance;
+        out.min = mValues[category][mMinQueue[category][mMinHead[category]] % mWindow];
+        out.max = mValues[category][mMaxQueue[category][mMaxHead[category]] % mWindow];
+        return out;
+    }
+
+    /**
+     * Forget every score of every category.
+     */
+    public synchronized void clear() {
+        for (int c = 0; c < mRecorded.length; c++) {
+            mRecorded[c] = 0;
+            mSum[c] = 0.0;
+            mSumOfSquares[c] = 0.0;
+            mMinHead[c] = 0;
+            mMinSize[c] = 0;
+            mMaxHead[c] = 0;
+            mMaxSize[c] = 0;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.nennig.life.wheel.sync;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * A transport through a shared folder, standing in for a synced drive or a USB transfer.
+ * Each message is a file in the receiver's drop folder, named by a sequence number so the
+ * receiver reads them in order. A message is written under a temporary name and renamed
+ * when complete, so the receiver never sees half a message.
+ */
+public final class FileDropTransport implements SyncTransport {
+    private static final String SUFFIX = ".msg";
+    private static final String PARTIAL = ".part";
+
+    private final File mOutbox;
+    private final File mInbox;
+    private long mNext;
+    private long mBytesSent = 0;
+    private long mBytesReceived = 0;
+
+    /**
+     * @param outbox The folder the other device reads from.
+     * @param inbox  The folder the other device writes to.
+     */
+    public FileDropTransport(File outbox, File inbox) throws IOException {
+        if (!outbox.isDirectory() && !outbox.mkdirs()) {
+            throw new IOException("can't create " + outbox);
+        }
+        if (!inbox.isDirectory() && !inbox.mkdirs()) {
+            throw new IOException("can't create " + inbox);
+        }
+        mOutbox = outbox;
+        mInbox = inbox;
+        // Continue numbering after any messages the other side hasn't picked up yet.
+        String[] pending = listMessages(outbox);
+        mNext = pending.length == 0 ? 0 : sequenceOf(pending[pending.length - 1]) + 1;
+    }
+
+    public synchronized void send(byte[] message) throws IOException {
+        String name = String.format(Locale.US, "%016d", mNext++);
+        File partial = new File(mOutbox, name + PARTIAL);
+        FileOutputStream out = new FileOutputStream(partial);
+        try {
+            out.write(message);
+        } finally {
+            out.close();
+        }
+        if (!partial.renameTo(new File(mOutbox, name + SUFFIX))) {
+            throw new IOException("can't publish " + partial);
+        }
+        mBytesSent += message.length;
+    }
+
+    public synchronized byte[] receive() throws IOException {
+        String[] pending = listMessages(mInbox);
+        if (pending.length == 0) return null;
+
+        File file = new File(mInbox, pending[0]);
+        byte[] message = new byte[(int) file.length()];
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            in.readFully(message);
+        } finally {
+            in.close();
+        }
+        if (!file.delete()) {
+            throw new IOException("can't consume " + file);
+        }
+        mBytesReceived += message.length;
+        return message;
+    }
+
+    public synchronized long getBytesSent() {
+        return mBytesSent;
+    }
+
+    public synchronized long getBytesReceived() {
+        return mBytesReceived;
+    }
+
+    private static String[] listMessages(File dir) {
+        String[] names = dir.list();
+        if (names == null) return new String[0];
+        int n = 0;
+        for (String name : names) {
+            if (name.endsWith(SUFFIX)) names[n++] = name;
+        }
+        // The fixed width names sort in sequence order.
+        String[] messages = Arrays.copyOf(names, n);
+        Arrays.sort(messages);
+        return messages;
+    }
+
+    private static long sequenceOf(String name) {
+        return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+    }
+}
@@ -0,0 +1,74 @@
+package com.nennig.life.wheel.sync;
+
+/**
+ * A hybrid logical clock. Timestamps follow the wall clock closely enough to read as times,
+ * but never go backwards and always order an event after every event it could have seen,
+ * even when the devices' clocks disagree.
+ * <p>
+ * A timestamp packs the wall time in milliseconds into the high 48 bits and a logical
+ * counter, which breaks ties within one millisecond, into the low 16 bits. Timestamps
+ * therefore compare as plain longs.
+ */
+public final class HybridLogicalClock {
+    private static final int COUNTER_BITS = 16;
+    private static final long COUNTER_MASK = (1L << COUNTER_BITS) - 1;
+
+    /**
+     * Supplies the wall time, in milliseconds.
+     */
+    public interface TimeSource {
+        long currentTimeMillis();
+    }
+
+    private static final TimeSource SYSTEM = new TimeSource() {
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    private final TimeSource mTime;
+    private long mLast = 0;
+
+    public HybridLogicalClock() {
+        this(SYSTEM);
+    }
+
+    public HybridLogicalClock(TimeSource time) {
+        mTime = time;
+    }
+
+    /**
+     * Returns the wall time part of a timestamp, in milliseconds.
+     */
+    public static long getMillis(long timestamp) {
+        return timestamp >>> COUNTER_BITS;
+    }
+
+    /**
+     * Returns a timestamp for a local event, later than any timestamp returned or
+     * received before.
+     */
+    public synchronized long now() {
+        long physical = mTime.currentTimeMillis() << COUNTER_BITS;
+        mLast = physical > mLast ? physical : tick(mLast);
+        return mLast;
+    }
+
+    /**
+     * Advance the clock past a timestamp received from another device, so that local
+     * events from now on are ordered after it.
+     */
+    public synchronized void update(long remote) {
+        long physical = mTime.currentTimeMillis() << COUNTER_BITS;
+        long latest = Math.max(mLast, remote);
+        mLast = physical > latest ? physical : tick(latest);
+    }
+
+    private static long tick(long timestamp) {
+        if ((timestamp & COUNTER_MASK) == COUNTER_MASK) {
+            // The counter is exhausted; borrow the next millisecond.
+            return (getMillis(timestamp) + 1) << COUNTER_BITS;
+        }
+        return timestamp + 1;
+    }
+}
@@ -0,0 +1,48 @@
+package com.nennig.life.wheel.sync;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A transport between two replicas in the same process. Use {@link #createPair()} to get
+ * both ends of a link.
+ */
+public final class LoopbackTransport implements SyncTransport {
+    private final ConcurrentLinkedQueue<byte[]> mInbox;
+    private final ConcurrentLinkedQueue<byte[]> mOutbox;
+    private long mBytesSent = 0;
+    private long mBytesReceived = 0;
+
+    private LoopbackTransport(ConcurrentLinkedQueue<byte[]> inbox,
+                              ConcurrentLinkedQueue<byte[]> outbox) {
+        mInbox = inbox;
+        mOutbox = outbox;
+    }
+
+    /**
+     * Returns the two ends of a link: what one sends, the other receives.
+     */
+    public static LoopbackTransport[] createPair() {
+        ConcurrentLinkedQueue<byte[]> a = new ConcurrentLinkedQueue<byte[]>();
+        ConcurrentLinkedQueue<byte[]> b = new ConcurrentLinkedQueue<byte[]>();
+        return new LoopbackTransport[]{new LoopbackTransport(a, b), new LoopbackTransport(b, a)};
+    }
+
+    public synchronized void send(byte[] message) {
+        mOutbox.add(message.clone());
+        mBytesSent += message.length;
+    }
+
+    public synchronized byte[] receive() {
+        byte[] message = mInbox.poll();
+        if (message != null) mBytesReceived += message.length;
+        return message;
+    }
+
+    public synchronized long getBytesSent() {
+        return mBytesSent;
+    }
+
+    public synchronized long getBytesReceived() {
+        return mBytesReceived;
+    }
+}
@@ -0,0 +1,24 @@
+package com.nennig.life.wheel.sync;
+
+import java.io.IOException;
+
+/**
+ * Carries sync messages between two devices. Messages are opaque byte arrays and arrive in
+ * the order they were sent. Transports count the bytes they carry, so the cost of a sync
+ * can be measured.
+ */
+public interface SyncTransport {
+    /**
+     * Send a message to the other device.
+     */
+    void send(byte[] message) throws IOException;
+
+    /**
+     * Returns the next message from the other device, or null if none is waiting.
+     */
+    byte[] receive() throws IOException;
+
+    long getBytesSent();
+
+    long getBytesReceived();
+}
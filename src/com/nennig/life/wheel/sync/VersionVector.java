@@ -0,0 +1,91 @@
+package com.nennig.life.wheel.sync;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * For each replica, the sequence number of the latest of its writes that has been seen.
+ * A replica that has seen writes up to n from another has seen every earlier one too, or
+ * something that superseded it, so this is all a peer needs to work out what to send.
+ */
+public final class VersionVector {
+    private final HashMap<Long, Long> mSeen = new HashMap<Long, Long>();
+
+    public VersionVector() {
+    }
+
+    public VersionVector(VersionVector other) {
+        mSeen.putAll(other.mSeen);
+    }
+
+    /**
+     * Returns the latest sequence number seen from a replica, or 0 if none.
+     */
+    public long get(long replica) {
+        Long seq = mSeen.get(replica);
+        return seq == null ? 0 : seq;
+    }
+
+    /**
+     * Record that a replica's writes up to seq have been seen.
+     */
+    public void observe(long replica, long seq) {
+        if (seq > get(replica)) {
+            mSeen.put(replica, seq);
+        }
+    }
+
+    /**
+     * Take the larger entry of this and another vector for every replica.
+     */
+    public void mergeFrom(VersionVector other) {
+        for (Map.Entry<Long, Long> e : other.mSeen.entrySet()) {
+            observe(e.getKey(), e.getValue());
+        }
+    }
+
+    /**
+     * Returns true if this vector has seen every write the other one has.
+     */
+    public boolean dominates(VersionVector other) {
+        for (Map.Entry<Long, Long> e : other.mSeen.entrySet()) {
+            if (get(e.getKey()) < e.getValue()) return false;
+        }
+        return true;
+    }
+
+    void write(DataOutput out) throws IOException {
+        out.writeInt(mSeen.size());
+        for (Map.Entry<Long, Long> e : mSeen.entrySet()) {
+            out.writeLong(e.getKey());
+            out.writeLong(e.getValue());
+        }
+    }
+
+    static VersionVector read(DataInput in) throws IOException {
+        VersionVector v = new VersionVector();
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            v.observe(in.readLong(), in.readLong());
+        }
+        return v;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof VersionVector && mSeen.equals(((VersionVector) obj).mSeen);
+    }
+
+    @Override
+    public int hashCode() {
+        return mSeen.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return mSeen.toString();
+    }
+}
@@ -0,0 +1,209 @@
+package com.nennig.life.wheel.sync;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One device's copy of a wheel that can be synchronized with other devices.
+ * <p>
+ * Each category score is a last-writer-wins register: a write carries a
+ * {@link HybridLogicalClock} timestamp and the id of the replica that made it, and of two
+ * writes to the same category the one with the later timestamp wins, ties going to the
+ * higher replica id. Removing a category writes a tombstone, so a removal wins over older
+ * scores like any other write. Because the winner depends only on the writes themselves,
+ * merging is commutative and idempotent: replicas that have seen the same writes hold the
+ * same wheel, no matter in which order or how often the writes arrived.
+ * <p>
+ * Every write is also numbered per replica, and a {@link VersionVector} records the
+ * latest number seen from each replica. A peer sends its vector, and gets back only the
+ * registers written since; see {@link #deltaSince(VersionVector)}.
+ * <p>
+ * All methods are synchronized, so the UI and a sync worker can share a replica.
+ */
+public final class WheelReplica {
+    private static final int DELTA_VERSION = 1;
+
+    private final long mId;
+    private final HybridLogicalClock mClock;
+    private final HashMap<String, Register> mRegisters = new HashMap<String, Register>();
+    private final VersionVector mVersion = new VersionVector();
+    private long mSeq = 0;
+    private OnChangedListener mListener = null;
+
+    /**
+     * Interface definition for a callback invoked when a merge changes a category.
+     */
+    public interface OnChangedListener {
+        /**
+         * @param label   The category.
+         * @param value   Its new score, or NaN if it was removed.
+         */
+        void onCategoryChanged(WheelReplica source, String label, float value);
+    }
+
+    private static final class Register {
+        final float value;
+        final boolean removed;
+        final long timestamp;
+        final long origin;
+        final long seq;
+
+        Register(float value, boolean removed, long timestamp, long origin, long seq) {
+            this.value = value;
+            this.removed = removed;
+            this.timestamp = timestamp;
+            this.origin = origin;
+            this.seq = seq;
+        }
+
+        boolean winsOver(Register other) {
+            if (timestamp != other.timestamp) return timestamp > other.timestamp;
+            if (origin != other.origin) return origin > other.origin;
+            return seq > other.seq;
+        }
+    }
+
+    /**
+     * @param id A number that identifies this device among the ones it syncs with.
+     */
+    public WheelReplica(long id) {
+        this(id, new HybridLogicalClock());
+    }
+
+    public WheelReplica(long id, HybridLogicalClock clock) {
+        mId = id;
+        mClock = clock;
+    }
+
+    public long getId() {
+        return mId;
+    }
+
+    public synchronized void setOnChangedListener(OnChangedListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Set the score of a category on this device.
+     */
+    public synchronized void set(String label, float value) {
+        write(label, value, false);
+    }
+
+    /**
+     * Remove a category on this device.
+     */
+    public synchronized void remove(String label) {
+        write(label, 0.0f, true);
+    }
+
+    /**
+     * Returns the score of a category, or NaN if it isn't on the wheel.
+     */
+    public synchronized float get(String label) {
+        Register r = mRegisters.get(label);
+        return r == null || r.removed ? Float.NaN : r.value;
+    }
+
+    /**
+     * Returns the categories on the wheel and their scores.
+     */
+    public synchronized Map<String, Float> getScores() {
+        HashMap<String, Float> scores = new HashMap<String, Float>();
+        for (Map.Entry<String, Register> e : mRegisters.entrySet()) {
+            if (!e.getValue().removed) scores.put(e.getKey(), e.getValue().value);
+        }
+        return scores;
+    }
+
+    /**
+     * Returns a copy of this replica's version vector.
+     */
+    public synchronized VersionVector getVersion() {
+        return new VersionVector(mVersion);
+    }
+
+    /**
+     * Encode every register written since the given version vector, along with this
+     * replica's own vector. A peer that merges the result has seen everything this
+     * replica has.
+     */
+    public synchronized byte[] deltaSince(VersionVector peer) {
+        List<Map.Entry<String, Register>> changed = new ArrayList<Map.Entry<String, Register>>();
+        for (Map.Entry<String, Register> e : mRegisters.entrySet()) {
+            Register r = e.getValue();
+            if (r.seq > peer.get(r.origin)) changed.add(e);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeByte(DELTA_VERSION);
+            mVersion.write(out);
+            out.writeInt(changed.size());
+            for (Map.Entry<String, Register> e : changed) {
+                Register r = e.getValue();
+                out.writeUTF(e.getKey());
+                out.writeBoolean(r.removed);
+                out.writeFloat(r.value);
+                out.writeLong(r.timestamp);
+                out.writeLong(r.origin);
+                out.writeLong(r.seq);
+            }
+        } catch (IOException e) {
+            // A ByteArrayOutputStream doesn't throw.
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Merge a delta produced by another replica's {@link #deltaSince(VersionVector)}.
+     * Merging the same delta twice, or deltas in any order, gives the same result.
+     *
+     * @return The number of categories that changed.
+     * @throws IOException If the delta is malformed.
+     */
+    public synchronized int merge(byte[] delta) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(delta));
+        int version = in.readUnsignedByte();
+        if (version != DELTA_VERSION) {
+            throw new IOException("unknown delta version " + version);
+        }
+        VersionVector sender = VersionVector.read(in);
+        int count = in.readInt();
+        int changed = 0;
+        for (int i = 0; i < count; i++) {
+            String label = in.readUTF();
+            boolean removed = in.readBoolean();
+            float value = in.readFloat();
+            Register incoming = new Register(value, removed, in.readLong(), in.readLong(),
+                    in.readLong());
+            mClock.update(incoming.timestamp);
+
+            Register current = mRegisters.get(label);
+            if (current == null || incoming.winsOver(current)) {
+                mRegisters.put(label, incoming);
+                changed++;
+                if (mListener != null) {
+                    mListener.onCategoryChanged(this, label, removed ? Float.NaN : value);
+                }
+            }
+        }
+        mVersion.mergeFrom(sender);
+        return changed;
+    }
+
+    private void write(String label, float value, boolean removed) {
+        Register r = new Register(value, removed, mClock.now(), mId, ++mSeq);
+        mRegisters.put(label, r);
+        mVersion.observe(mId, mSeq);
+    }
+}
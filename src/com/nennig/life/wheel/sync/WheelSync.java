@@ -0,0 +1,92 @@
+package com.nennig.life.wheel.sync;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Runs the sync protocol for one replica over one transport.
+ * <p>
+ * {@link #requestSync()} sends this replica's version vector. The peer answers with a
+ * delta of everything written since, plus its own vector. Whoever receives a delta merges
+ * it and, if the sender's vector shows it is missing writes, answers with a delta of its
+ * own. Once both vectors are equal nothing more is sent, so an exchange ends after at most
+ * one request and two deltas, and syncing replicas that are already equal costs only the
+ * request and an empty delta.
+ */
+public final class WheelSync {
+    private static final int MESSAGE_REQUEST = 1;
+    private static final int MESSAGE_DELTA = 2;
+
+    private final WheelReplica mReplica;
+    private final SyncTransport mTransport;
+
+    public WheelSync(WheelReplica replica, SyncTransport transport) {
+        mReplica = replica;
+        mTransport = transport;
+    }
+
+    public WheelReplica getReplica() {
+        return mReplica;
+    }
+
+    public SyncTransport getTransport() {
+        return mTransport;
+    }
+
+    /**
+     * Ask the peer for everything this replica hasn't seen.
+     */
+    public void requestSync() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(MESSAGE_REQUEST);
+        mReplica.getVersion().write(out);
+        mTransport.send(bytes.toByteArray());
+    }
+
+    /**
+     * Handle every message waiting on the transport.
+     *
+     * @return The number of categories changed by merged deltas.
+     */
+    public int poll() throws IOException {
+        int changed = 0;
+        byte[] message;
+        while ((message = mTransport.receive()) != null) {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(message));
+            int type = in.readUnsignedByte();
+            if (type == MESSAGE_REQUEST) {
+                sendDelta(VersionVector.read(in));
+            } else if (type == MESSAGE_DELTA) {
+                byte[] delta = new byte[message.length - 1];
+                in.readFully(delta);
+                changed += mReplica.merge(delta);
+                // The delta starts with the sender's vector; answer if it lacks our writes.
+                VersionVector sender = readSenderVersion(delta);
+                if (!sender.dominates(mReplica.getVersion())) {
+                    sendDelta(sender);
+                }
+            } else {
+                throw new IOException("unknown message type " + type);
+            }
+        }
+        return changed;
+    }
+
+    private void sendDelta(VersionVector peer) throws IOException {
+        byte[] delta = mReplica.deltaSince(peer);
+        byte[] message = new byte[delta.length + 1];
+        message[0] = MESSAGE_DELTA;
+        System.arraycopy(delta, 0, message, 1, delta.length);
+        mTransport.send(message);
+    }
+
+    private static VersionVector readSenderVersion(byte[] delta) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(delta));
+        in.readUnsignedByte();
+        return VersionVector.read(in);
+    }
+}
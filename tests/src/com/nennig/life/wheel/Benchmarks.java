@@ -0,0 +1,82 @@
+package com.nennig.life.wheel;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Helpers and fixtures shared by the benchmarks and tests of the test project. Every
+ * result is logged under one tag, so runs on different builds can be pulled with
+ * {@code adb logcat -s lifewheel.Benchmark} and compared line by line.
+ */
+public final class Benchmarks {
+    public static final String TAG = "lifewheel.Benchmark";
+
+    private Benchmarks() {
+    }
+
+    /**
+     * Log the median, minimum and maximum of a series of measurements.
+     *
+     * @param name The name of the benchmark, unique within the test project.
+     * @param unit The unit of the values, for the log only.
+     * @return The median.
+     */
+    public static long report(String name, long[] values, String unit) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        long median = sorted[sorted.length / 2];
+        Log.i(TAG, String.format(Locale.US, "%s: median %d %s, min %d, max %d, n=%d", name,
+                median, unit, sorted[0], sorted[sorted.length - 1], sorted.length));
+        return median;
+    }
+
+    /**
+     * Returns the built-in category labels, the categories of synthetic wheels.
+     */
+    public static String[] categories(Context context) {
+        return context.getResources().getStringArray(R.array.category_dropdown);
+    }
+
+    /**
+     * Returns an empty folder in the app's cache, for a test to write into. Anything a
+     * failed earlier run left there is deleted first.
+     */
+    public static File scratchDirectory(Context context, String name) {
+        File directory = new File(context.getCacheDir(), name);
+        delete(directory);
+        directory.mkdirs();
+        return directory;
+    }
+
+    /**
+     * Delete a file, or a folder and everything in it.
+     */
+    public static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * Wait until a trace point has been reached.
+     *
+     * @return False if it wasn't reached before the timeout.
+     */
+    public static boolean waitForMark(int point, long timeoutMillis) {
+        long deadline = SystemClock.uptimeMillis() + timeoutMillis;
+        while (StartupTrace.getMark(point) == 0) {
+            if (SystemClock.uptimeMillis() > deadline) return false;
+            SystemClock.sleep(5);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,94 @@
+package com.nennig.life.wheel;
+
+import android.app.Activity;
+import android.app.Instrumentation;
+import android.os.Bundle;
+import android.util.Log;
+
+import com.nennig.life.wheel.charting.RenderCheck;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Runs {@link RenderCheck} on a device or emulator, so a change that slows the pie chart
+ * down, makes it allocate while drawing, or changes how it looks fails before it is merged:
+ * <pre>
+ * adb shell am instrument -w com.nennig.life.wheel.tests/com.nennig.life.wheel.RenderCheckInstrumentation
+ * </pre>
+ * The run fails if any case does. Cases without a golden are checked against their budgets
+ * only, and the report counts them. It also fails while the check is not armed, i.e. while
+ * the budgets are placeholders or a golden is missing, so a run that could not have caught
+ * a regression is never reported as OK. With {@code -e record true} it instead writes new
+ * goldens and budgets to the app's external files, under {@code render/}, to be pulled,
+ * reviewed and checked in to {@code tests/assets/render/}.
+ */
+public class RenderCheckInstrumentation extends Instrumentation {
+    private static final String TAG = "lifewheel.RenderCheck";
+
+    private boolean mRecord;
+
+    @Override
+    public void onCreate(Bundle arguments) {
+        super.onCreate(arguments);
+        mRecord = arguments != null && "true".equals(arguments.getString("record"));
+        start();
+    }
+
+    @Override
+    public void onStart() {
+        super.onStart();
+        final StringBuilder report = new StringBuilder();
+        final boolean[] passed = {true};
+        final int[] skipped = {0};
+        final boolean[] armed = {true};
+        runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                RenderCheck check = new RenderCheck(getTargetContext(), getContext());
+                try {
+                    List<RenderCheck.Result> results;
+                    if (mRecord) {
+                        File dir = getTargetContext().getExternalFilesDir(RenderCheck.ASSET_DIR);
+                        if (dir == null) {
+                            throw new IOException("external storage is not available");
+                        }
+                        results = check.record(dir);
+                        report.append("Recorded to ").append(dir).append('\n');
+                    } else {
+                        results = check.run();
+                        armed[0] = check.isArmed();
+                        if (check.hasPlaceholderBudgets()) {
+                            report.append("Budgets are placeholders; record them with ")
+                                    .append("-e record true\n");
+                        }
+                    }
+                    for (RenderCheck.Result result : results) {
+                        // A recording has nothing to compare with, so only a check fails.
+                        if (!mRecord && !result.passed()) passed[0] = false;
+                        if (!mRecord && result.skipped != null) skipped[0]++;
+                        report.append(result).append('\n');
+                        Log.i(TAG, result.toString());
+                    }
+                } catch (IOException e) {
+                    Log.e(TAG, "Render check failed", e);
+                    report.append("Render check failed: ").append(e).append('\n');
+                    passed[0] = false;
+                }
+            }
+        });
+
+        if (skipped[0] > 0) {
+            report.append(skipped[0]).append(" images not compared; record goldens with -e record true\n");
+        }
+        if (!armed[0]) {
+            report.append("NOT ARMED: record goldens and budgets on the reference emulator\n");
+        }
+        boolean ok = passed[0] && armed[0];
+        report.append(ok ? "OK\n" : "FAILED\n");
+        Bundle results = new Bundle();
+        results.putString(REPORT_KEY_STREAMRESULT, report.toString());
+        finish(ok ? Activity.RESULT_OK : Activity.RESULT_CANCELED, results);
+    }
+}
@@ -0,0 +1,61 @@
+package com.nennig.life.wheel;
+
+import android.app.Activity;
+import android.app.Instrumentation;
+import android.content.pm.ActivityInfo;
+import android.test.ActivityInstrumentationTestCase2;
+
+/**
+ * Measures the time from a rotation to the first frame of the relaunched
+ * {@link MainActivity}, through the {@link StartupTrace} points it records. The retained
+ * wheel and frame should make this much shorter than a launch.
+ */
+public class RotationBenchmarkTest extends ActivityInstrumentationTestCase2<MainActivity> {
+    private static final int ROTATIONS = 10;
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    public RotationBenchmarkTest() {
+        super(MainActivity.class);
+    }
+
+    public void testRotationToFirstFrame() {
+        Instrumentation instrumentation = getInstrumentation();
+        Activity activity = getActivity();
+        assertTrue("no interactive frame within " + TIMEOUT_MILLIS + " ms",
+                Benchmarks.waitForMark(StartupTrace.FIRST_INTERACTIVE, TIMEOUT_MILLIS));
+
+        long[] toFirstDraw = new long[ROTATIONS];
+        long[] toInteractive = new long[ROTATIONS];
+        try {
+            for (int i = 0; i < ROTATIONS; i++) {
+                Instrumentation.ActivityMonitor monitor =
+                        instrumentation.addMonitor(MainActivity.class.getName(), null, false);
+                // Clears the marks of the previous instance; the old instance marks the
+                // configuration change as it hands its state over.
+                StartupTrace.reset();
+                activity.setRequestedOrientation(i % 2 == 0
+                        ? ActivityInfo.SCREEN_ORIENTATION_LANDSCAPE
+                        : ActivityInfo.SCREEN_ORIENTATION_PORTRAIT);
+                Activity next = instrumentation.waitForMonitorWithTimeout(monitor,
+                        TIMEOUT_MILLIS);
+                instrumentation.removeMonitor(monitor);
+                assertNotNull("not relaunched after rotation " + i, next);
+                activity = next;
+
+                assertTrue("no interactive frame after rotation " + i,
+                        Benchmarks.waitForMark(StartupTrace.FIRST_INTERACTIVE, TIMEOUT_MILLIS));
+                assertTrue("configuration change not traced",
+                        StartupTrace.getMark(StartupTrace.CONFIG_CHANGE) != 0);
+                toFirstDraw[i] = StartupTrace.getElapsed(StartupTrace.CONFIG_CHANGE,
+                        StartupTrace.FIRST_DRAW);
+                toInteractive[i] = StartupTrace.getElapsed(StartupTrace.CONFIG_CHANGE,
+                        StartupTrace.FIRST_INTERACTIVE);
+            }
+        } finally {
+            activity.setRequestedOrientation(ActivityInfo.SCREEN_ORIENTATION_UNSPECIFIED);
+            activity.finish();
+        }
+        Benchmarks.report("rotation.toFirstDraw", toFirstDraw, "ms");
+        Benchmarks.report("rotation.toFirstInteractive", toInteractive, "ms");
+    }
+}
@@ -0,0 +1,51 @@
+package com.nennig.life.wheel;
+
+import android.app.Activity;
+import android.content.Intent;
+import android.os.SystemClock;
+import android.test.InstrumentationTestCase;
+
+/**
+ * Measures how long {@link MainActivity} takes to start, through the {@link StartupTrace}
+ * points it records. The test process is already running, so every launch here is a warm
+ * process start: it covers activity creation, layout inflation, the chart's first frame
+ * and the first interactive frame, which is the part the lazy initialization of
+ * {@link com.nennig.life.wheel.charting.PieChart} shortens. A cold process start is best
+ * measured with {@code adb shell am start -W} on a stopped app.
+ */
+public class StartupBenchmarkTest extends InstrumentationTestCase {
+    private static final int LAUNCHES = 10;
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    public void testLaunchToFirstInteractiveFrame() {
+        long[] toCreate = new long[LAUNCHES];
+        long[] toFirstDraw = new long[LAUNCHES];
+        long[] toInteractive = new long[LAUNCHES];
+        for (int i = 0; i < LAUNCHES; i++) {
+            StartupTrace.reset();
+            Intent intent = new Intent(getInstrumentation().getTargetContext(),
+                    MainActivity.class);
+            intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+            long start = SystemClock.uptimeMillis();
+            Activity activity = getInstrumentation().startActivitySync(intent);
+            try {
+                assertTrue("no interactive frame within " + TIMEOUT_MILLIS + " ms",
+                        Benchmarks.waitForMark(StartupTrace.FIRST_INTERACTIVE, TIMEOUT_MILLIS));
+                long create = StartupTrace.getMark(StartupTrace.ACTIVITY_CREATE);
+                long firstDraw = StartupTrace.getMark(StartupTrace.FIRST_DRAW);
+                long interactive = StartupTrace.getMark(StartupTrace.FIRST_INTERACTIVE);
+                assertTrue("trace points out of order",
+                        start <= create && create <= firstDraw && firstDraw <= interactive);
+                toCreate[i] = create - start;
+                toFirstDraw[i] = firstDraw - start;
+                toInteractive[i] = interactive - start;
+            } finally {
+                activity.finish();
+                getInstrumentation().waitForIdleSync();
+            }
+        }
+        Benchmarks.report("startup.launchToOnCreate", toCreate, "ms");
+        Benchmarks.report("startup.launchToFirstDraw", toFirstDraw, "ms");
+        Benchmarks.report("startup.launchToFirstInteractive", toInteractive, "ms");
+    }
+}
@@ -0,0 +1,102 @@
+package com.nennig.life.wheel;
+
+import android.app.Activity;
+import android.app.Instrumentation;
+import android.content.Intent;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.nennig.life.wheel.charting.StressRunner;
+
+/**
+ * Starts {@link StressActivity}, which isn't exported, with a load given as instrumentation
+ * arguments, waits for the run to finish and returns its report:
+ * <pre>
+ * adb shell am instrument -w -e slices 5000 -e duration 20000 \
+ *     com.nennig.life.wheel.tests/com.nennig.life.wheel.StressInstrumentation
+ * </pre>
+ * The arguments have the names of the StressActivity extras. Those left out keep the
+ * {@link StressRunner.Config} defaults.
+ */
+public class StressInstrumentation extends Instrumentation {
+    private static final String TAG = "lifewheel.StressInstrumentation";
+
+    // How long to wait past the configured duration for the slices to be added and the
+    // report to come back.
+    private static final long GRACE_MILLIS = 60000;
+
+    private Bundle mArguments;
+
+    @Override
+    public void onCreate(Bundle arguments) {
+        super.onCreate(arguments);
+        mArguments = arguments != null ? arguments : new Bundle();
+        start();
+    }
+
+    @Override
+    public void onStart() {
+        super.onStart();
+        Bundle results = new Bundle();
+        Intent intent = new Intent(getTargetContext(), StressActivity.class);
+        intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+        long duration = new StressRunner.Config().durationMillis;
+        try {
+            String value = mArguments.getString(StressActivity.EXTRA_SLICES);
+            if (value != null) {
+                intent.putExtra(StressActivity.EXTRA_SLICES, Integer.parseInt(value));
+            }
+            value = mArguments.getString(StressActivity.EXTRA_MUTATION_RATE);
+            if (value != null) {
+                intent.putExtra(StressActivity.EXTRA_MUTATION_RATE, Float.parseFloat(value));
+            }
+            value = mArguments.getString(StressActivity.EXTRA_FLING_RATE);
+            if (value != null) {
+                intent.putExtra(StressActivity.EXTRA_FLING_RATE, Float.parseFloat(value));
+            }
+            value = mArguments.getString(StressActivity.EXTRA_FLING_VELOCITY);
+            if (value != null) {
+                intent.putExtra(StressActivity.EXTRA_FLING_VELOCITY, Integer.parseInt(value));
+            }
+            value = mArguments.getString(StressActivity.EXTRA_ROTATION_SPEED);
+            if (value != null) {
+                intent.putExtra(StressActivity.EXTRA_ROTATION_SPEED, Float.parseFloat(value));
+            }
+            value = mArguments.getString(StressActivity.EXTRA_DURATION);
+            if (value != null) {
+                duration = Long.parseLong(value);
+                intent.putExtra(StressActivity.EXTRA_DURATION, duration);
+            }
+            value = mArguments.getString(StressActivity.EXTRA_SEED);
+            if (value != null) {
+                intent.putExtra(StressActivity.EXTRA_SEED, Long.parseLong(value));
+            }
+            value = mArguments.getString(StressActivity.EXTRA_PIPELINED);
+            if (value != null) {
+                intent.putExtra(StressActivity.EXTRA_PIPELINED, Boolean.parseBoolean(value));
+            }
+        } catch (NumberFormatException e) {
+            results.putString(REPORT_KEY_STREAMRESULT, "Bad argument: " + e.getMessage() + "\n");
+            finish(Activity.RESULT_CANCELED, results);
+            return;
+        }
+
+        StressActivity activity = (StressActivity) startActivitySync(intent);
+        long deadline = SystemClock.uptimeMillis() + duration + GRACE_MILLIS;
+        StressRunner.Report report;
+        while ((report = activity.getReport()) == null && SystemClock.uptimeMillis() < deadline) {
+            SystemClock.sleep(100);
+        }
+        activity.finish();
+
+        if (report == null) {
+            results.putString(REPORT_KEY_STREAMRESULT, "The stress run did not finish\n");
+            finish(Activity.RESULT_CANCELED, results);
+            return;
+        }
+        Log.i(TAG, report.toString());
+        results.putString(REPORT_KEY_STREAMRESULT, report + "\n");
+        finish(Activity.RESULT_OK, results);
+    }
+}
@@ -0,0 +1,71 @@
+package com.nennig.life.wheel.charting;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.test.InstrumentationTestCase;
+import android.test.UiThreadTest;
+import android.view.View;
+
+import com.nennig.life.wheel.Benchmarks;
+
+/**
+ * Times drawing a laid out {@link PieChart} with its cached wedge paths, at 12, 200 and
+ * 2,000 slices, and checks the number of draw calls the pie issues per frame.
+ */
+public class DrawBenchmarkTest extends InstrumentationTestCase {
+    private static final int SIZE = 720;
+    private static final int WARM_UP_DRAWS = 5;
+    private static final int TIMED_DRAWS = 31;
+
+    @UiThreadTest
+    public void testDraw12Slices() {
+        drawSlices(12);
+    }
+
+    @UiThreadTest
+    public void testDraw200Slices() {
+        drawSlices(200);
+    }
+
+    @UiThreadTest
+    public void testDraw2000Slices() {
+        drawSlices(2000);
+    }
+
+    private void drawSlices(int slices) {
+        // The data is in place before the first layout, so nothing animates.
+        PieChart chart = new PieChart(getInstrumentation().getTargetContext());
+        int scored = 0;
+        for (int i = 0; i < slices; i++) {
+            int score = i % 11;
+            if (score > 0) scored++;
+            chart.addItem("Slice " + i, score);
+        }
+        chart.measure(View.MeasureSpec.makeMeasureSpec(SIZE, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(SIZE, View.MeasureSpec.EXACTLY));
+        chart.layout(0, 0, SIZE, SIZE);
+
+        Bitmap bitmap = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        try {
+            for (int i = 0; i < WARM_UP_DRAWS; i++) {
+                bitmap.eraseColor(Color.WHITE);
+                chart.draw(canvas);
+            }
+            long[] micros = new long[TIMED_DRAWS];
+            for (int i = 0; i < TIMED_DRAWS; i++) {
+                bitmap.eraseColor(Color.WHITE);
+                long start = System.nanoTime();
+                chart.draw(canvas);
+                micros[i] = (System.nanoTime() - start) / 1000;
+            }
+            Benchmarks.report("draw.slices" + slices, micros, "us");
+
+            // One path for every slice, plus one for every score wedge that is visible.
+            assertEquals("draw calls", slices + scored, chart.getLastDrawCallCount());
+        } finally {
+            bitmap.recycle();
+        }
+    }
+}
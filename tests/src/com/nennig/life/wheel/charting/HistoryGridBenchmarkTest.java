@@ -0,0 +1,76 @@
+package com.nennig.life.wheel.charting;
+
+import android.content.Context;
+import android.test.InstrumentationTestCase;
+import android.test.UiThreadTest;
+import android.view.View;
+import android.widget.GridView;
+
+import com.nennig.life.wheel.Benchmarks;
+import com.nennig.life.wheel.data.WheelSnapshot;
+import com.nennig.life.wheel.data.WheelVersion;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Times binding the cells of the history grid while scrolling through 1,000 versions,
+ * recycling the cells the way the grid does.
+ */
+public class HistoryGridBenchmarkTest extends InstrumentationTestCase {
+    private static final int VERSIONS = 1000;
+    // Roughly the cells of one screen of grid, which is how many views the grid recycles.
+    private static final int CELLS = 12;
+    private static final int CELL_PX = 96;
+    private static final int POOL = 16;
+
+    private String[] mCategories;
+    private ArrayList<WheelSnapshot> mWheels;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mCategories = Benchmarks.categories(getInstrumentation().getTargetContext());
+        // An editing session: every version changes one score of the one before.
+        Random random = new Random(1);
+        WheelVersion version = WheelVersion.EMPTY;
+        for (String label : mCategories) {
+            version = version.put(label, random.nextInt(11));
+        }
+        mWheels = new ArrayList<WheelSnapshot>(VERSIONS);
+        while (mWheels.size() < VERSIONS) {
+            WheelVersion next = version.put(mCategories[random.nextInt(mCategories.length)],
+                    random.nextInt(11));
+            if (next == version) continue;
+            version = next;
+            mWheels.add(version.toSnapshot());
+        }
+    }
+
+    @UiThreadTest
+    public void testBindWhileScrolling() {
+        Context context = getInstrumentation().getTargetContext();
+        MiniWheelRenderer renderer = new MiniWheelRenderer(context.getResources(), CELL_PX,
+                0.5f, POOL);
+        try {
+            WheelHistoryAdapter adapter = new WheelHistoryAdapter(context, mWheels, renderer);
+            GridView parent = new GridView(context);
+            View[] cells = new View[CELLS];
+            long[] micros = new long[VERSIONS];
+            // Scroll from the first version to the last: the cell leaving the top goes to
+            // the scrap heap and comes back bound to the version entering at the bottom.
+            for (int position = 0; position < VERSIONS; position++) {
+                int slot = position % CELLS;
+                long start = System.nanoTime();
+                if (cells[slot] != null) adapter.onMovedToScrapHeap(cells[slot]);
+                View cell = adapter.getView(position, cells[slot], parent);
+                micros[position] = (System.nanoTime() - start) / 1000;
+                assertTrue(cells[slot] == null || cell == cells[slot]);
+                cells[slot] = cell;
+            }
+            Benchmarks.report("history.bind" + VERSIONS, micros, "us");
+        } finally {
+            renderer.shutdown();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.nennig.life.wheel.charting;
+
+import android.test.InstrumentationTestCase;
+import android.test.UiThreadTest;
+import android.view.View;
+
+/**
+ * Checks that {@link PieChart#removeAll()} is a real reset: many resets must neither add
+ * child views nor hold on to memory.
+ */
+public class PieChartResetTest extends InstrumentationTestCase {
+    private static final int RESETS = 10000;
+    private static final int SLICES = 12;
+    private static final int SIZE = 480;
+
+    // Well below what leaking a child view and its paints on every reset would cost, and
+    // well above the noise of a collected heap.
+    private static final long MAX_HEAP_GROWTH = 512 * 1024;
+
+    @UiThreadTest
+    public void testResetsKeepChildCountAndHeapFlat() {
+        PieChart chart = new PieChart(getInstrumentation().getTargetContext());
+        chart.measure(View.MeasureSpec.makeMeasureSpec(SIZE, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(SIZE, View.MeasureSpec.EXACTLY));
+        chart.layout(0, 0, SIZE, SIZE);
+
+        // Warm up first, so the caches and lazily created machinery are in place before
+        // the heap is measured.
+        cycle(chart, 100);
+        int children = chart.getChildCount();
+        long heap = usedHeap();
+
+        cycle(chart, RESETS);
+
+        assertEquals("child count after " + RESETS + " resets", children,
+                chart.getChildCount());
+        long growth = usedHeap() - heap;
+        assertTrue("heap grew by " + growth + " bytes over " + RESETS + " resets",
+                growth < MAX_HEAP_GROWTH);
+    }
+
+    private static void cycle(PieChart chart, int resets) {
+        for (int r = 0; r < resets; r++) {
+            chart.removeAll();
+            for (int i = 0; i < SLICES; i++) {
+                chart.addItem("Slice " + i, i % 11);
+            }
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            runtime.gc();
+            runtime.runFinalization();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
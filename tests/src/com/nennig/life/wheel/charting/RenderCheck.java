@@ -0,0 +1,434 @@
+/* Copyright (C) 2012 The Android Open Source Project
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+*/
+package com.nennig.life.wheel.charting;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.os.Debug;
+import android.view.View;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A render regression check for {@link PieChart}. It draws the chart offscreen for a
+ * fixed set of cases and compares each one against a golden image and a performance
+ * budget:
+ * <ul>
+ * <li>1, 12, 360 and 5,000 slices,</li>
+ * <li>with and without the label,</li>
+ * <li>at 240x240 and 720x720 pixels.</li>
+ * </ul>
+ * A case fails if its image differs from the golden by more than the tolerance, if its
+ * median draw time or its allocations per draw exceed the budget, or if it has no budget.
+ * A case without a golden still has its budget checked; only the image comparison is
+ * skipped, and the result says so.
+ * <p>
+ * Goldens are PNGs named after the case, and the budgets are a text file, all checked in
+ * under {@code assets/render/} of the test project. Fonts and anti-aliasing differ between
+ * devices, so goldens and budgets belong to the reference device or emulator image they
+ * were recorded on. {@link #record(File)} renders every case and writes the images along
+ * with budgets that leave headroom over what was measured, ready to be reviewed and
+ * checked in.
+ * <p>
+ * Until that has been done the check is not armed: a budget file with a
+ * {@code placeholder} line holds hand-written ceilings rather than measurements, and a
+ * case without a golden can't catch a change in how it looks. {@link #isArmed()} says
+ * whether the last run could catch a regression in every case.
+ * <p>
+ * Everything here must run on the UI thread.
+ */
+public class RenderCheck {
+    /**
+     * The asset folder of the goldens and budgets.
+     */
+    public static final String ASSET_DIR = "render";
+    public static final String BUDGET_FILE = "budgets.txt";
+
+    private static final int[] SLICE_COUNTS = {1, 12, 360, 5000};
+    private static final int[] SIZES = {240, 720};
+
+    private static final int WARM_UP_DRAWS = 3;
+    private static final int TIMED_DRAWS = 15;
+
+    // Recorded budgets are the measurement times this, so ordinary noise doesn't fail.
+    private static final int HEADROOM = 2;
+
+    // Used when the budget file doesn't set a tolerance.
+    private static final int DEFAULT_CHANNEL_TOLERANCE = 8;
+    private static final float DEFAULT_PIXEL_TOLERANCE = 0.005f;
+
+    private final Context mContext;
+    private final Context mAssetContext;
+
+    private boolean mPlaceholderBudgets;
+    private boolean mMissingGoldens;
+
+    /**
+     * The outcome of one case.
+     */
+    public static final class Result {
+        public final String name;
+        public long drawMicros;
+        public int allocations;
+        /**
+         * The fraction of pixels that differ from the golden, or -1 if there was none.
+         */
+        public float differingPixels = -1;
+        public final List<String> failures = new ArrayList<String>();
+        /**
+         * Why the image wasn't compared, or null if it was.
+         */
+        public String skipped;
+
+        Result(String name) {
+            this.name = name;
+        }
+
+        public boolean passed() {
+            return failures.isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%s %s: %d us, %d allocs, %s", name,
+                    passed() ? "PASS" : "FAIL", drawMicros, allocations,
+                    skipped != null ? "image skipped (" + skipped + ")"
+                            : String.format(Locale.US, "%.3f%% pixels differ",
+                            differingPixels * 100))
+                    + (passed() ? "" : " " + failures);
+        }
+    }
+
+    private static final class Budget {
+        long drawMicros;
+        int allocations;
+    }
+
+    /**
+     * @param context      The context the charts are created in, that of the app under test.
+     * @param assetContext The context whose assets hold the goldens and budgets, that of the
+     *                     test package.
+     */
+    public RenderCheck(Context context, Context assetContext) {
+        mContext = context;
+        mAssetContext = assetContext;
+    }
+
+    /**
+     * Returns the names of every case, in the order they run.
+     */
+    public static List<String> getCaseNames() {
+        List<String> names = new ArrayList<String>();
+        for (int size : SIZES) {
+            for (int slices : SLICE_COUNTS) {
+                names.add(caseName(slices, size, false));
+                names.add(caseName(slices, size, true));
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Run every case against the checked-in goldens and budgets.
+     */
+    public List<Result> run() throws IOException {
+        mPlaceholderBudgets = false;
+        mMissingGoldens = false;
+        HashMap<String, Budget> budgets = new HashMap<String, Budget>();
+        float[] tolerance = {DEFAULT_CHANNEL_TOLERANCE, DEFAULT_PIXEL_TOLERANCE};
+        readBudgets(budgets, tolerance);
+
+        List<Result> results = new ArrayList<Result>();
+        for (int size : SIZES) {
+            Bitmap bitmap = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+            for (int slices : SLICE_COUNTS) {
+                for (int t = 0; t < 2; t++) {
+                    boolean showText = t == 1;
+                    Result result = measure(slices, size, showText, bitmap);
+                    check(result, bitmap, budgets.get(result.name), (int) tolerance[0],
+                            tolerance[1]);
+                    results.add(result);
+                }
+            }
+            bitmap.recycle();
+        }
+        return results;
+    }
+
+    /**
+     * Returns whether the last {@link #run()} used recorded budgets and had a golden for
+     * every case. If not, it only caught regressions beyond the placeholder ceilings.
+     */
+    public boolean isArmed() {
+        return !mPlaceholderBudgets && !mMissingGoldens;
+    }
+
+    /**
+     * Returns whether the budgets of the last {@link #run()} were hand-written placeholders.
+     */
+    public boolean hasPlaceholderBudgets() {
+        return mPlaceholderBudgets;
+    }
+
+    /**
+     * Render every case and write its image and a budget file to a folder, to be reviewed
+     * and copied to {@code assets/render/}.
+     *
+     * @return The measurements the budgets were made from.
+     */
+    public List<Result> record(File dir) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("can't create " + dir);
+        }
+        List<Result> results = new ArrayList<Result>();
+        Writer budgets = new FileWriter(new File(dir, BUDGET_FILE));
+        try {
+            budgets.write("# Render budgets for RenderCheck, recorded on "
+                    + android.os.Build.MODEL + ".\n"
+                    + "# <case> <max median draw time in microseconds> <max allocations per draw>\n"
+                    + "# tolerance <max channel difference of a matching pixel> "
+                    + "<max fraction of differing pixels>\n");
+            budgets.write(String.format(Locale.US, "tolerance %d %s\n",
+                    DEFAULT_CHANNEL_TOLERANCE, Float.toString(DEFAULT_PIXEL_TOLERANCE)));
+            for (int size : SIZES) {
+                Bitmap bitmap = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+                for (int slices : SLICE_COUNTS) {
+                    for (int t = 0; t < 2; t++) {
+                        Result result = measure(slices, size, t == 1, bitmap);
+                        FileOutputStream png = new FileOutputStream(
+                                new File(dir, result.name + ".png"));
+                        try {
+                            bitmap.compress(Bitmap.CompressFormat.PNG, 100, png);
+                        } finally {
+                            png.close();
+                        }
+                        budgets.write(String.format(Locale.US, "%s %d %d\n", result.name,
+                                Math.max(1, result.drawMicros) * HEADROOM,
+                                result.allocations * HEADROOM));
+                        results.add(result);
+                    }
+                }
+                bitmap.recycle();
+            }
+        } finally {
+            budgets.close();
+        }
+        return results;
+    }
+
+    /**
+     * Lay out a fresh chart for a case, draw it into the bitmap a few times to warm up,
+     * then time the draws and count their allocations. The bitmap is left holding the
+     * last frame.
+     */
+    private Result measure(int slices, int size, boolean showText, Bitmap bitmap) {
+        Result result = new Result(caseName(slices, size, showText));
+        PieChart chart = createChart(slices, showText);
+        chart.measure(View.MeasureSpec.makeMeasureSpec(size, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(size, View.MeasureSpec.EXACTLY));
+        chart.layout(0, 0, size, size);
+
+        Canvas canvas = new Canvas(bitmap);
+        for (int i = 0; i < WARM_UP_DRAWS; i++) {
+            drawFrame(chart, bitmap, canvas);
+        }
+
+        long[] nanos = new long[TIMED_DRAWS];
+        for (int i = 0; i < TIMED_DRAWS; i++) {
+            long start = System.nanoTime();
+            drawFrame(chart, bitmap, canvas);
+            nanos[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(nanos);
+        result.drawMicros = nanos[TIMED_DRAWS / 2] / 1000;
+
+        // Counted in a separate pass so the counting doesn't slow the timed draws.
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        for (int i = 0; i < TIMED_DRAWS; i++) {
+            drawFrame(chart, bitmap, canvas);
+        }
+        Debug.stopAllocCounting();
+        result.allocations = (Debug.getThreadAllocCount() + TIMED_DRAWS - 1) / TIMED_DRAWS;
+        return result;
+    }
+
+    private static void drawFrame(PieChart chart, Bitmap bitmap, Canvas canvas) {
+        bitmap.eraseColor(Color.WHITE);
+        chart.draw(canvas);
+    }
+
+    /**
+     * Build a chart with deterministic data: every slice has its own label, a score that
+     * cycles through the scale and a color from a fixed set, independent of the catalog.
+     */
+    private PieChart createChart(int slices, boolean showText) {
+        PieChart chart = new PieChart(mContext);
+        chart.setShowText(showText);
+        if (showText) {
+            chart.setTextWidth(110);
+            chart.setTextHeight(20);
+            chart.setTextY(85);
+        }
+        int[] colors = {0xffffd700, 0xffff0000, 0xffffa500, 0xff0000cd, 0xff000000,
+                0xff800080, 0xff006400};
+        for (int i = 0; i < slices; i++) {
+            int color = colors[i % colors.length];
+            chart.addItem("Slice " + i, (i * 7 % 11) / 10.0f, color, color | 0xff7f7f7f);
+        }
+        return chart;
+    }
+
+    private void check(Result result, Bitmap bitmap, Budget budget, int channelTolerance,
+                       float pixelTolerance) throws IOException {
+        if (budget == null) {
+            result.failures.add("no budget");
+        } else {
+            if (result.drawMicros > budget.drawMicros) {
+                result.failures.add("draw time over budget of " + budget.drawMicros + " us");
+            }
+            if (result.allocations > budget.allocations) {
+                result.failures.add("allocations over budget of " + budget.allocations);
+            }
+        }
+
+        // Until goldens are recorded on the reference image, the budgets still hold.
+        Bitmap golden = readGolden(result.name);
+        if (golden == null) {
+            result.skipped = "no golden";
+            mMissingGoldens = true;
+            return;
+        }
+        try {
+            if (golden.getWidth() != bitmap.getWidth()
+                    || golden.getHeight() != bitmap.getHeight()) {
+                result.failures.add("golden is " + golden.getWidth() + "x"
+                        + golden.getHeight());
+                return;
+            }
+            result.differingPixels = compare(bitmap, golden, channelTolerance);
+            if (result.differingPixels > pixelTolerance) {
+                result.failures.add("image differs from golden");
+            }
+        } finally {
+            golden.recycle();
+        }
+    }
+
+    /**
+     * Returns the fraction of pixels in which some channel differs by more than the
+     * tolerance. One row is compared at a time to keep the buffers small.
+     */
+    private static float compare(Bitmap a, Bitmap b, int tolerance) {
+        int w = a.getWidth();
+        int h = a.getHeight();
+        int[] rowA = new int[w];
+        int[] rowB = new int[w];
+        long differing = 0;
+        for (int y = 0; y < h; y++) {
+            a.getPixels(rowA, 0, w, 0, y, w, 1);
+            b.getPixels(rowB, 0, w, 0, y, w, 1);
+            for (int x = 0; x < w; x++) {
+                int pa = rowA[x];
+                int pb = rowB[x];
+                if (pa == pb) continue;
+                for (int shift = 0; shift < 32; shift += 8) {
+                    if (Math.abs(((pa >> shift) & 0xff) - ((pb >> shift) & 0xff)) > tolerance) {
+                        differing++;
+                        break;
+                    }
+                }
+            }
+        }
+        return (float) differing / ((long) w * h);
+    }
+
+    private Bitmap readGolden(String name) throws IOException {
+        InputStream in;
+        try {
+            in = mAssetContext.getAssets().open(ASSET_DIR + "/" + name + ".png");
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+        try {
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+            options.inScaled = false;
+            return BitmapFactory.decodeStream(in, null, options);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Read the budget file. Blank lines and lines starting with # are ignored, and a
+     * {@code placeholder} line marks the budgets as not recorded.
+     */
+    private void readBudgets(HashMap<String, Budget> budgets, float[] tolerance)
+            throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(
+                mAssetContext.getAssets().open(ASSET_DIR + "/" + BUDGET_FILE), "UTF-8"));
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = line.trim();
+                if (line.length() == 0 || line.startsWith("#")) continue;
+                if (line.equals("placeholder")) {
+                    mPlaceholderBudgets = true;
+                    continue;
+                }
+                String[] fields = line.split("\\s+");
+                if (fields.length != 3) {
+                    throw new IOException("malformed budget: " + line);
+                }
+                try {
+                    if (fields[0].equals("tolerance")) {
+                        tolerance[0] = Integer.parseInt(fields[1]);
+                        tolerance[1] = Float.parseFloat(fields[2]);
+                    } else {
+                        Budget budget = new Budget();
+                        budget.drawMicros = Long.parseLong(fields[1]);
+                        budget.allocations = Integer.parseInt(fields[2]);
+                        budgets.put(fields[0], budget);
+                    }
+                } catch (NumberFormatException e) {
+                    throw new IOException("malformed budget: " + line);
+                }
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private static String caseName(int slices, int size, boolean showText) {
+        return "slices" + slices + "_" + size + (showText ? "_text" : "");
+    }
+}
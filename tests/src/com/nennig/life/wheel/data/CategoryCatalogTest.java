@@ -0,0 +1,218 @@
+package com.nennig.life.wheel.data;
+
+import android.test.AndroidTestCase;
+
+import com.nennig.life.wheel.Benchmarks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Checks the ids, the prefix search and the saved file of the category catalog.
+ */
+public class CategoryCatalogTest extends AndroidTestCase {
+    private String[] mCategories;
+    private File mDirectory;
+    private File mFile;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mCategories = Benchmarks.categories(getContext());
+        mDirectory = Benchmarks.scratchDirectory(getContext(), "CategoryCatalogTest");
+        mFile = new File(mDirectory, "categories.txt");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        Benchmarks.delete(mDirectory);
+        super.tearDown();
+    }
+
+    public void testBuiltInsKeepTheirPosition() {
+        CategoryCatalog catalog = new CategoryCatalog(mCategories);
+        assertEquals(mCategories.length, catalog.getBuiltInCount());
+        for (int i = 0; i < mCategories.length; i++) {
+            assertEquals(i, catalog.getId(mCategories[i]));
+            assertEquals(mCategories[i], catalog.getLabel(i));
+            assertTrue(catalog.isBuiltIn(i));
+        }
+        assertEquals(-1, catalog.getId("Gardening"));
+        assertEquals(catalog.getId(mCategories[0]),
+                catalog.getId(" " + mCategories[0].toUpperCase() + " "));
+    }
+
+    public void testRemovedIdsAreRetired() {
+        CategoryCatalog catalog = new CategoryCatalog(mCategories);
+        int gardening = catalog.add("Gardening");
+        int reading = catalog.add("Reading");
+        assertEquals(mCategories.length, gardening);
+        assertEquals(gardening + 1, reading);
+        assertEquals(gardening, catalog.add("gardening"));
+
+        assertTrue(catalog.remove(gardening));
+        assertFalse(catalog.remove(gardening));
+        assertNull(catalog.getLabel(gardening));
+        assertEquals(-1, catalog.getId("Gardening"));
+        assertEquals(mCategories.length + 1, catalog.size());
+
+        // Adding it again doesn't bring back the old id.
+        assertEquals(reading + 1, catalog.add("Gardening"));
+        assertEquals(reading + 2, catalog.getIdLimit());
+        try {
+            catalog.remove(0);
+            fail("removed a built-in category");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testPrefixSearch() {
+        CategoryCatalog catalog = new CategoryCatalog(mCategories);
+        int sleepwalking = catalog.add("Sleepwalking");
+        int sleeping = catalog.getId("Sleeping");
+        int social = catalog.getId("Social");
+        int studing = catalog.getId("Studing");
+        int[] ids = new int[mCategories.length + 1];
+
+        assertEquals(2, catalog.search("SLEEP", ids));
+        assertEquals(sleeping, ids[0]);
+        assertEquals(sleepwalking, ids[1]);
+        // In label order, ignoring case and surrounding spaces.
+        assertEquals(4, catalog.search(" s", ids));
+        assertEquals(Arrays.asList(sleeping, sleepwalking, social, studing),
+                Arrays.asList(ids[0], ids[1], ids[2], ids[3]));
+        assertEquals(0, catalog.search("x", ids));
+        assertEquals(catalog.size(), catalog.search("", ids));
+    }
+
+    public void testQueryNarrowsAsTheUserTypes() {
+        CategoryCatalog catalog = new CategoryCatalog(mCategories);
+        catalog.add("Sleepwalking");
+        CategoryCatalog.Query query = new CategoryCatalog.Query(catalog);
+        int[] ids = new int[1];
+
+        // Only the first match fits, but the count has them all.
+        assertEquals(1, query.search("s", ids));
+        assertEquals(4, query.getMatchCount());
+        assertEquals(catalog.getId("Sleeping"), ids[0]);
+        query.search("sl", ids);
+        assertEquals(2, query.getMatchCount());
+        query.search("sleepw", ids);
+        assertEquals(1, query.getMatchCount());
+        assertEquals(catalog.getId("Sleepwalking"), ids[0]);
+
+        // Deleting a character widens the search again.
+        query.search("s", ids);
+        assertEquals(4, query.getMatchCount());
+        query.search("so", ids);
+        assertEquals(1, query.getMatchCount());
+        assertEquals(catalog.getId("Social"), ids[0]);
+        query.search("sx", ids);
+        assertEquals(0, query.getMatchCount());
+    }
+
+    public void testQuerySeesChangesBetweenKeystrokes() {
+        CategoryCatalog catalog = new CategoryCatalog(mCategories);
+        CategoryCatalog.Query query = new CategoryCatalog.Query(catalog);
+        int[] ids = new int[4];
+
+        query.search("s", ids);
+        assertEquals(3, query.getMatchCount());
+        int sleepwalking = catalog.add("Sleepwalking");
+        query.search("sl", ids);
+        assertEquals(2, query.getMatchCount());
+
+        assertTrue(catalog.remove(sleepwalking));
+        assertEquals(1, query.search("sle", ids));
+        assertEquals(catalog.getId("Sleeping"), ids[0]);
+
+        // A category added before the start of the previous run is found too.
+        query.search("s", ids);
+        catalog.add("Sauna");
+        query.search("sa", ids);
+        assertEquals(1, query.getMatchCount());
+        assertEquals(catalog.getId("Sauna"), ids[0]);
+    }
+
+    public void testSaveAndLoad() throws IOException {
+        CategoryCatalog catalog = new CategoryCatalog(mCategories);
+        int gardening = catalog.add("Gardening");
+        int removed = catalog.add("Removed");
+        int reading = catalog.add("Reading");
+        catalog.remove(removed);
+        catalog.save(mFile);
+
+        CategoryCatalog loaded = new CategoryCatalog(mCategories);
+        loaded.load(mFile);
+        assertEquals(catalog.size(), loaded.size());
+        assertEquals(catalog.getIdLimit(), loaded.getIdLimit());
+        assertEquals(gardening, loaded.getId("Gardening"));
+        assertEquals(reading, loaded.getId("Reading"));
+        assertNull(loaded.getLabel(removed));
+        assertEquals(reading + 1, loaded.add("Removed"));
+
+        // No file is no user categories.
+        CategoryCatalog empty = new CategoryCatalog(mCategories);
+        empty.load(new File(mDirectory, "missing.txt"));
+        assertEquals(mCategories.length, empty.size());
+    }
+
+    public void testLoadKeepsCategoriesAfterAConflict() throws IOException {
+        int first = mCategories.length;
+        // Saved when Gardening was a user category at the first user id.
+        write("LifeWheel categories 1\t" + (first + 4) + "\n"
+                + first + "\tGardening\n"
+                + (first + 1) + "\tReading\n"
+                + (first + 3) + "\tSauna\n");
+
+        // A later release makes Gardening and Yoga built in.
+        String[] builtIns = Arrays.copyOf(mCategories, first + 2);
+        builtIns[first] = "Yoga";
+        builtIns[first + 1] = "Gardening";
+        CategoryCatalog catalog = new CategoryCatalog(builtIns);
+        catalog.load(mFile);
+
+        assertEquals(first + 1, catalog.getId("Gardening"));
+        assertEquals(first + 3, catalog.getId("Sauna"));
+        // Its id went to a built-in, so it comes after every saved id.
+        assertEquals(first + 4, catalog.getId("Reading"));
+        assertEquals(first + 5, catalog.getIdLimit());
+        assertEquals(builtIns.length + 2, catalog.size());
+    }
+
+    public void testMalformedFileChangesNothing() throws IOException {
+        CategoryCatalog catalog = new CategoryCatalog(mCategories);
+        int first = mCategories.length;
+        String[] files = {
+                "categories\n",
+                "LifeWheel categories 1\tmany\n",
+                "LifeWheel categories 1\t" + (first + 2) + "\n" + first + "\tGardening\nReading\n",
+                "LifeWheel categories 1\t" + (first + 2) + "\n" + first + "\tGardening\n"
+                        + (first + 5) + "\tReading\n",
+                "LifeWheel categories 1\t" + (first + 2) + "\n" + (first + 1) + "\tGardening\n"
+                        + first + "\tReading\n",
+        };
+        for (String contents : files) {
+            write(contents);
+            try {
+                catalog.load(mFile);
+                fail("loaded " + contents);
+            } catch (IOException expected) {
+            }
+            assertEquals(mCategories.length, catalog.size());
+            assertEquals(mCategories.length, catalog.getIdLimit());
+            assertEquals(-1, catalog.getId("Gardening"));
+        }
+    }
+
+    private void write(String contents) throws IOException {
+        FileOutputStream out = new FileOutputStream(mFile);
+        try {
+            out.write(contents.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.nennig.life.wheel.data;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.nennig.life.wheel.Benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Measures what storing a synthetic history by content hash saves, and what hashing the
+ * wheels costs.
+ */
+public class SnapshotStoreTest extends AndroidTestCase {
+    // A year of daily check-ins, in which a score changes on about one day in five.
+    private static final int DAYS = 365;
+    private static final float CHANGE_CHANCE = 0.2f;
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+
+    private static final int HASHED_WHEELS = 10000;
+
+    private String[] mCategories;
+    private File mDirectory;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mCategories = Benchmarks.categories(getContext());
+        mDirectory = Benchmarks.scratchDirectory(getContext(), "SnapshotStoreTest");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        Benchmarks.delete(mDirectory);
+        super.tearDown();
+    }
+
+    public void testRepeatedWheelsAreStoredOnce() throws IOException {
+        SnapshotStore store = new SnapshotStore(mDirectory);
+        Random random = new Random(1);
+        float[] scores = randomScores(random);
+        int changes = 0;
+        for (int day = 0; day < DAYS; day++) {
+            if (day > 0 && random.nextFloat() < CHANGE_CHANCE) {
+                scores[random.nextInt(scores.length)] = random.nextInt(11);
+                changes++;
+            }
+            store.put(day * DAY_MILLIS, new WheelSnapshot(mCategories, scores));
+        }
+
+        assertEquals(DAYS, store.getHistory().size());
+        // A change can put back a wheel seen before, so there are at most this many.
+        assertTrue(store.getUniqueCount() <= changes + 1);
+        long stored = store.getStoredBytes();
+        long full = store.getUndeduplicatedBytes();
+        Log.i(Benchmarks.TAG, String.format(Locale.US,
+                "SnapshotStore: %d days, %d unique wheels, %d bytes stored of %d (%.1f%%), "
+                        + "hash %d ns",
+                DAYS, store.getUniqueCount(), stored, full, 100.0 * stored / full,
+                store.getAverageHashNanos()));
+        // The stored bytes include the history, one line for every day.
+        assertTrue("stored " + stored + " of " + full + " bytes", stored < full);
+        assertTrue(store.getAverageHashNanos() > 0);
+    }
+
+    public void testHistorySurvivesReopening() throws IOException {
+        SnapshotStore store = new SnapshotStore(mDirectory);
+        Random random = new Random(2);
+        for (int day = 0; day < 30; day++) {
+            store.put(day * DAY_MILLIS, new WheelSnapshot(mCategories, randomScores(random)));
+        }
+
+        SnapshotStore reopened = new SnapshotStore(mDirectory);
+        List<SnapshotStore.Entry> history = store.getHistory();
+        List<SnapshotStore.Entry> reread = reopened.getHistory();
+        assertEquals(history.size(), reread.size());
+        for (int i = 0; i < history.size(); i++) {
+            assertEquals(history.get(i).timeMillis, reread.get(i).timeMillis);
+            assertEquals(history.get(i).hash, reread.get(i).hash);
+        }
+        assertEquals(store.getStoredBytes(), reopened.getStoredBytes());
+        for (SnapshotStore.Entry e : reread) {
+            assertEquals(e.hash, reopened.get(e.hash).getHash());
+        }
+    }
+
+    public void testSliceOrderDoesNotChangeTheHash() {
+        Random random = new Random(3);
+        float[] scores = randomScores(random);
+        String[] labels = mCategories.clone();
+        // Reverse both, so every slice keeps its score but the order is different.
+        for (int i = 0, j = labels.length - 1; i < j; i++, j--) {
+            String label = labels[i];
+            labels[i] = labels[j];
+            labels[j] = label;
+            float score = scores[i];
+            scores[i] = scores[j];
+            scores[j] = score;
+        }
+        WheelSnapshot reversed = new WheelSnapshot(labels, scores);
+        WheelSnapshot wheel = reversed.canonical();
+        assertEquals(wheel.getHash(), reversed.getHash());
+        assertEquals(wheel.getHash(), WheelHash.fromString(wheel.getHash().toString()));
+    }
+
+    public void testHashCost() {
+        Random random = new Random(4);
+        WheelSnapshot[] wheels = new WheelSnapshot[HASHED_WHEELS];
+        for (int i = 0; i < wheels.length; i++) {
+            wheels[i] = new WheelSnapshot(mCategories, randomScores(random));
+        }
+        // Warm up, so the digest and the canonical sort have been compiled.
+        for (int i = 0; i < 1000; i++) {
+            WheelHash.of(wheels[i]);
+        }
+
+        long[] nanos = new long[wheels.length];
+        for (int i = 0; i < wheels.length; i++) {
+            long start = System.nanoTime();
+            WheelHash.of(wheels[i]);
+            nanos[i] = System.nanoTime() - start;
+        }
+        Benchmarks.report("WheelHash.of(" + mCategories.length + " slices)", nanos, "ns");
+    }
+
+    private float[] randomScores(Random random) {
+        float[] scores = new float[mCategories.length];
+        for (int i = 0; i < scores.length; i++) {
+            scores[i] = random.nextInt(11);
+        }
+        return scores;
+    }
+}
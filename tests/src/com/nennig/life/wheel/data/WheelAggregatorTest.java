@@ -0,0 +1,164 @@
+package com.nennig.life.wheel.data;
+
+import android.test.AndroidTestCase;
+
+import com.nennig.life.wheel.Benchmarks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+/**
+ * Checks the parallel aggregation against a sequential pass and measures its throughput
+ * on a large team.
+ */
+public class WheelAggregatorTest extends AndroidTestCase {
+    private static final int WHEELS = 100000;
+    private static final int THREADS = 4;
+    private static final int RUNS = 5;
+
+    private String[] mCategories;
+    private File mDirectory;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mCategories = Benchmarks.categories(getContext());
+        mDirectory = Benchmarks.scratchDirectory(getContext(), "WheelAggregatorTest");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        Benchmarks.delete(mDirectory);
+        super.tearDown();
+    }
+
+    public void testMatchesSequentialPass() throws InterruptedException {
+        ArrayList<WheelSnapshot> wheels = wheels(WHEELS, new Random(1), false);
+        WheelAggregator.Aggregate sequential = new WheelAggregator.Aggregate();
+        for (WheelSnapshot w : wheels) {
+            sequential.add(w);
+        }
+
+        WheelAggregator.Aggregate parallel = new WheelAggregator(THREADS).aggregate(wheels);
+        assertEquals(WHEELS, parallel.getWheelCount());
+        assertTrue(Arrays.equals(sequential.getLabels(), parallel.getLabels()));
+        for (String label : sequential.getLabels()) {
+            assertEquals(label, sequential.getMean(label), parallel.getMean(label));
+            // Whole scores are counted exactly, so the sketches are the same byte for byte.
+            assertTrue(label, Arrays.equals(sequential.getSketch(label).toByteArray(),
+                    parallel.getSketch(label).toByteArray()));
+        }
+    }
+
+    public void testFractionalScoresAreRepeatable() throws InterruptedException {
+        ArrayList<WheelSnapshot> wheels = wheels(WHEELS / 10, new Random(2), true);
+        WheelAggregator.Aggregate first = new WheelAggregator(THREADS).aggregate(wheels);
+        for (int run = 0; run < RUNS; run++) {
+            WheelAggregator.Aggregate again = new WheelAggregator(THREADS).aggregate(wheels);
+            for (String label : first.getLabels()) {
+                assertTrue(label, Arrays.equals(first.getSketch(label).toByteArray(),
+                        again.getSketch(label).toByteArray()));
+            }
+        }
+    }
+
+    public void testThroughput() throws InterruptedException {
+        ArrayList<WheelSnapshot> wheels = wheels(WHEELS, new Random(3), false);
+        // Hash the wheels up front; they cache their hashes, so the runs time aggregation.
+        for (WheelSnapshot w : wheels) {
+            w.getHash();
+        }
+
+        long[] sequential = new long[RUNS];
+        long[] parallel = new long[RUNS];
+        for (int run = 0; run < RUNS; run++) {
+            // A new aggregator every run, so none of them is answered from the cache.
+            sequential[run] = wheelsPerSecond(new WheelAggregator(1).aggregate(wheels));
+            parallel[run] = wheelsPerSecond(new WheelAggregator(THREADS).aggregate(wheels));
+        }
+        Benchmarks.report("WheelAggregator(1) " + WHEELS + " wheels", sequential, "wheels/s");
+        Benchmarks.report("WheelAggregator(" + THREADS + ") " + WHEELS + " wheels", parallel,
+                "wheels/s");
+    }
+
+    public void testRepeatIsAnsweredFromCache() throws InterruptedException {
+        ArrayList<WheelSnapshot> wheels = wheels(WHEELS / 10, new Random(4), false);
+        WheelAggregator aggregator = new WheelAggregator(THREADS);
+        WheelAggregator.Aggregate first = aggregator.aggregate(wheels);
+        assertEquals(0, aggregator.getCacheHitCount());
+
+        ArrayList<WheelSnapshot> reversed = new ArrayList<WheelSnapshot>(wheels);
+        Collections.reverse(reversed);
+        WheelAggregator.Aggregate cached = aggregator.aggregate(reversed);
+        assertEquals(1, aggregator.getCacheHitCount());
+        assertEquals(first.getWheelCount(), cached.getWheelCount());
+        assertEquals(first.toWheel(), cached.toWheel());
+    }
+
+    public void testBadFilesAreSkipped() throws IOException, InterruptedException {
+        ArrayList<WheelSnapshot> wheels = wheels(10, new Random(5), false);
+        for (int i = 0; i < wheels.size(); i++) {
+            WheelFile.write(wheels.get(i), new File(mDirectory, i + WheelFile.EXTENSION));
+        }
+        String[] bad = {"NaN", "Infinity", "-1", "11", "seven"};
+        for (int i = 0; i < bad.length; i++) {
+            FileOutputStream out = new FileOutputStream(new File(mDirectory,
+                    "bad" + i + WheelFile.EXTENSION));
+            try {
+                out.write(("LifeWheel 1\nHealth\t" + bad[i] + "\n").getBytes("UTF-8"));
+            } finally {
+                out.close();
+            }
+        }
+
+        WheelAggregator.Aggregate result = new WheelAggregator(THREADS).aggregate(mDirectory);
+        assertEquals(wheels.size(), result.getWheelCount());
+        assertEquals(bad.length, result.getSkippedCount());
+    }
+
+    public void testFilesAreRepeatable() throws IOException, InterruptedException {
+        ArrayList<WheelSnapshot> wheels = wheels(2000, new Random(6), true);
+        for (int i = 0; i < wheels.size(); i++) {
+            WheelFile.write(wheels.get(i), new File(mDirectory, i + WheelFile.EXTENSION));
+        }
+        WheelAggregator.Aggregate first = new WheelAggregator(THREADS).aggregate(mDirectory);
+        WheelAggregator.Aggregate again = new WheelAggregator(THREADS).aggregate(mDirectory);
+        for (String label : first.getLabels()) {
+            assertTrue(label, Arrays.equals(first.getSketch(label).toByteArray(),
+                    again.getSketch(label).toByteArray()));
+        }
+    }
+
+    private static long wheelsPerSecond(WheelAggregator.Aggregate result) {
+        assertEquals(WHEELS, result.getWheelCount());
+        return WHEELS * 1000000000L / Math.max(1, result.getElapsedNanos());
+    }
+
+    /**
+     * Make wheels with every category, in a different order each time. Scores are whole
+     * from the scale dropdown, or fractional like those of an averaged wheel.
+     */
+    private ArrayList<WheelSnapshot> wheels(int count, Random random, boolean fractional) {
+        ArrayList<WheelSnapshot> wheels = new ArrayList<WheelSnapshot>(count);
+        String[] labels = mCategories.clone();
+        float[] scores = new float[labels.length];
+        for (int w = 0; w < count; w++) {
+            for (int i = labels.length - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                String label = labels[i];
+                labels[i] = labels[j];
+                labels[j] = label;
+            }
+            for (int i = 0; i < scores.length; i++) {
+                scores[i] = fractional ? random.nextInt(101) / 10f : random.nextInt(11);
+            }
+            wheels.add(new WheelSnapshot(labels, scores));
+        }
+        return wheels;
+    }
+}
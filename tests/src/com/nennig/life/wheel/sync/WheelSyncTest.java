@@ -0,0 +1,111 @@
+package com.nennig.life.wheel.sync;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.nennig.life.wheel.Benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Syncs two replicas over each transport and checks that they converge, logging what each
+ * sync costs on the wire.
+ */
+public class WheelSyncTest extends AndroidTestCase {
+    // An exchange is a request and at most two deltas, so a third round finds nothing.
+    private static final int ROUNDS = 3;
+
+    // A request and an empty delta: a tag, the vectors of two replicas and a zero count.
+    private static final long MAX_IDLE_BYTES = 128;
+
+    private String[] mCategories;
+    private File mDirectory;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mCategories = Benchmarks.categories(getContext());
+        mDirectory = Benchmarks.scratchDirectory(getContext(), "WheelSyncTest");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        Benchmarks.delete(mDirectory);
+        super.tearDown();
+    }
+
+    public void testLoopbackConverges() throws IOException {
+        LoopbackTransport[] link = LoopbackTransport.createPair();
+        checkConverges("Loopback", link[0], link[1]);
+    }
+
+    public void testFileDropConverges() throws IOException {
+        File toB = new File(mDirectory, "a-to-b");
+        File toA = new File(mDirectory, "b-to-a");
+        checkConverges("FileDrop", new FileDropTransport(toB, toA),
+                new FileDropTransport(toA, toB));
+    }
+
+    private void checkConverges(String name, SyncTransport ta, SyncTransport tb)
+            throws IOException {
+        WheelSync a = new WheelSync(new WheelReplica(1), ta);
+        WheelSync b = new WheelSync(new WheelReplica(2), tb);
+        Random random = new Random(1);
+
+        // Both fill in a whole wheel on their own, then sync.
+        for (String label : mCategories) {
+            a.getReplica().set(label, random.nextInt(11));
+            b.getReplica().set(label, random.nextInt(11));
+        }
+        long full = sync(a, b);
+        assertConverged(a, b);
+
+        // Concurrent edits on both sides, including one category removed on one side.
+        a.getReplica().set(mCategories[0], 3);
+        b.getReplica().set(mCategories[0], 8);
+        b.getReplica().set(mCategories[1], 5);
+        a.getReplica().remove(mCategories[2]);
+        long edits = sync(a, b);
+        assertConverged(a, b);
+        assertTrue(Float.isNaN(a.getReplica().get(mCategories[2])));
+
+        // One change only sends that change.
+        b.getReplica().set(mCategories[3], 1);
+        long one = sync(a, b);
+        assertConverged(a, b);
+        assertEquals(1f, a.getReplica().get(mCategories[3]));
+
+        long idle = sync(a, b);
+        assertConverged(a, b);
+
+        Log.i(Benchmarks.TAG, String.format(Locale.US,
+                "WheelSync over %s: full %d bytes, 4 edits %d, 1 edit %d, in sync %d",
+                name, full, edits, one, idle));
+        assertTrue("one edit took " + one + " bytes, the full sync " + full, one < full);
+        assertTrue("an idle sync took " + idle + " bytes", idle <= MAX_IDLE_BYTES);
+        assertTrue(idle < one);
+    }
+
+    /**
+     * Run one exchange started by a and return the bytes it put on the wire.
+     */
+    private static long sync(WheelSync a, WheelSync b) throws IOException {
+        long before = a.getTransport().getBytesSent() + b.getTransport().getBytesSent();
+        a.requestSync();
+        for (int round = 0; round < ROUNDS; round++) {
+            b.poll();
+            a.poll();
+        }
+        assertNull(a.getTransport().receive());
+        assertNull(b.getTransport().receive());
+        return a.getTransport().getBytesSent() + b.getTransport().getBytesSent() - before;
+    }
+
+    private static void assertConverged(WheelSync a, WheelSync b) {
+        assertEquals(a.getReplica().getScores(), b.getReplica().getScores());
+        assertEquals(a.getReplica().getVersion(), b.getReplica().getVersion());
+    }
+}